@@ -0,0 +1,72 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares balance lookups and transfers on the memory-mapped {@link AccountIndex} with the same operations on
+ * the heap store, over the same cards. PINs are hashed with a single iteration, so setup stays quick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class AccountIndexBenchmark {
+    private static final int ACCOUNTS = 1 << 18;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+
+    private Path file;
+    private AccountIndex index;
+    private InMemoryAccountStore store;
+    private String[] cards;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("bench-accounts", ".idx");
+        Files.delete(file);
+        index = new AccountIndex(file, 1);
+        store = new InMemoryAccountStore();
+        cards = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            cards[i] = CardGenerator.cardNumberOf(i + 1);
+            index.insert(cards[i], "1234", OPENING_BALANCE);
+            store.insertAccount(new Account(cards[i], "1234", OPENING_BALANCE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long indexBalance() {
+        return index.getBalance(cards[next++ & (ACCOUNTS - 1)]).orElseThrow();
+    }
+
+    @Benchmark
+    public long storeBalance() {
+        return store.getAccount(cards[next++ & (ACCOUNTS - 1)]).orElseThrow().getBalance();
+    }
+
+    @Benchmark
+    public long indexTransfer() {
+        int from = next++ & (ACCOUNTS - 1);
+        return index.transfer(cards[from], cards[(from + ACCOUNTS / 2) & (ACCOUNTS - 1)], 1).orElseThrow();
+    }
+
+    @Benchmark
+    public long storeTransfer() {
+        int from = next++ & (ACCOUNTS - 1);
+        return store.transfer(cards[from], cards[(from + ACCOUNTS / 2) & (ACCOUNTS - 1)], 1).orElseThrow();
+    }
+}
@@ -0,0 +1,83 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the throughput of the {@link BalanceEngine}, with every command journaled and synced to a
+ * temporary directory. Each invocation queues a thousand commands and waits for the last, as a caller
+ * that pipelines its requests would.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class BalanceEngineBenchmark {
+    private static final int ACCOUNTS = 1 << 16;
+    private static final int COMMANDS = 1000;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+
+    private Path directory;
+    private BalanceEngine engine;
+    private String[] cards;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bench-balances");
+        engine = new BalanceEngine(directory);
+        cards = new String[ACCOUNTS];
+        CompletableFuture<Long> last = null;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            cards[i] = CardGenerator.cardNumberOf(i + 1);
+            last = engine.openAccountAsync(cards[i], OPENING_BALANCE);
+        }
+        last.join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        engine.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long deposit() {
+        CompletableFuture<Long> last = null;
+        for (int i = 0; i < COMMANDS; i++) {
+            last = engine.depositAsync(cards[next++ & (ACCOUNTS - 1)], 1);
+        }
+        return last.join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long transfer() {
+        CompletableFuture<Long> last = null;
+        for (int i = 0; i < COMMANDS; i++) {
+            int from = next++ & (ACCOUNTS - 1);
+            last = engine.transferAsync(cards[from], cards[(from + ACCOUNTS / 2) & (ACCOUNTS - 1)], 1);
+        }
+        return last.join();
+    }
+}
@@ -0,0 +1,41 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures what metrics add to every measured operation: recording one call with its validation and database
+ * latencies, and a deposit on the heap store, whose store time is timed and recorded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class BankingMetricsBenchmark {
+    private BankingMetrics metrics;
+    private BankingSystem system;
+    private Account account;
+    private long latency;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        metrics = new BankingMetrics();
+        system = new BankingSystem(new InMemoryAccountStore());
+        account = system.createAccount();
+    }
+
+    @Benchmark
+    public void record() {
+        latency = (latency * 6364136223846793005L + 1442695040888963407L);
+        metrics.record(BankingMetrics.Operation.ADD_INCOME, 1000 + (latency >>> 50), 500 + (latency >>> 52), null);
+    }
+
+    @Benchmark
+    public long addIncome() {
+        return system.addIncome(account, 1);
+    }
+}
@@ -0,0 +1,93 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the BankingSystem hot paths against a temporary SQLite file, an in-memory SQLite database and
+ * the heap store, with one thread and with several threads sharing the same BankingSystem. The heap store
+ * shows what the business logic costs without storage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BankingSystemBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+        @Param({BenchmarkDatabase.FILE, BenchmarkDatabase.MEMORY, BenchmarkDatabase.HEAP})
+        public String storage;
+
+        BenchmarkDatabase database;
+        BankingSystem system;
+        Account[] accounts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = new BenchmarkDatabase(storage);
+            system = new BankingSystem(database.store());
+            accounts = new Account[ACCOUNTS];
+            int[] created = {0};
+            system.createAccounts(ACCOUNTS, account -> accounts[created[0]++] = account);
+            for (Account account : accounts) {
+                system.addIncome(account, OPENING_BALANCE);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) Thread.currentThread().getId() * 7919;
+
+        Account next(Bank bank) {
+            return bank.accounts[next++ & (ACCOUNTS - 1)];
+        }
+    }
+
+    @Benchmark
+    public Account login(Bank bank, Cursor cursor) {
+        Account account = cursor.next(bank);
+        return bank.system.login(account.getNumber(), account.getPin());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Account loginContended(Bank bank, Cursor cursor) {
+        return login(bank, cursor);
+    }
+
+    @Benchmark
+    public long addIncome(Bank bank, Cursor cursor) {
+        return bank.system.addIncome(cursor.next(bank), 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long addIncomeContended(Bank bank, Cursor cursor) {
+        return addIncome(bank, cursor);
+    }
+
+    @Benchmark
+    public Account transferFunds(Bank bank, Cursor cursor) {
+        Account from = cursor.next(bank);
+        Account to = cursor.next(bank);
+        bank.system.transferFunds(from, to.getNumber(), 1);
+        return from;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Account transferFundsContended(Bank bank, Cursor cursor) {
+        return transferFunds(bank, cursor);
+    }
+}
@@ -0,0 +1,87 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens throwaway databases for the benchmarks, either as a temporary SQLite file, as a shared-cache
+ * in-memory SQLite database or as an {@link InMemoryAccountStore}, so no benchmark ever touches the
+ * working directory's cards.s3db.
+ */
+final class BenchmarkDatabase {
+    static final String FILE = "file";
+    static final String MEMORY = "memory";
+    static final String HEAP = "heap";
+
+    private static final AtomicInteger MEMORY_DATABASES = new AtomicInteger();
+
+    private final AccountStore store;
+    private final DatabaseManager db;
+    private final Path file;
+
+    /**
+     * Opens a new, empty benchmark database.
+     *
+     * @param storage {@link #FILE}, {@link #MEMORY} or {@link #HEAP}
+     */
+    BenchmarkDatabase(String storage) {
+        if (FILE.equals(storage)) {
+            try {
+                file = Files.createTempFile("bench-cards", ".s3db");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            db = new DatabaseManager("jdbc:sqlite:" + file, Runtime.getRuntime().availableProcessors());
+        } else if (MEMORY.equals(storage)) {
+            file = null;
+            // A shared-cache in-memory database is only safe behind a single connection
+            String url = "jdbc:sqlite:file:bench" + MEMORY_DATABASES.incrementAndGet() + "?mode=memory&cache=shared";
+            db = new DatabaseManager(url, 1);
+        } else if (HEAP.equals(storage)) {
+            file = null;
+            db = null;
+        } else {
+            throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+        store = db != null ? db : new InMemoryAccountStore();
+    }
+
+    /**
+     * Gets the store of this benchmark database.
+     * @return the store
+     */
+    AccountStore store() {
+        return store;
+    }
+
+    /**
+     * Gets the database manager of this benchmark database.
+     * @return the database manager
+     * @throws IllegalStateException if the benchmark database is not SQLite
+     */
+    DatabaseManager manager() {
+        if (db == null) {
+            throw new IllegalStateException("A heap store has no database manager.");
+        }
+        return db;
+    }
+
+    /**
+     * Disconnects and deletes the benchmark database.
+     */
+    void close() {
+        store.disconnect();
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(Path.of(file + "-wal"));
+                Files.deleteIfExists(Path.of(file + "-shm"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
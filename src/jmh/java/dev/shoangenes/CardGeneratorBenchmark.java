@@ -0,0 +1,41 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures card number allocation, alone and with threads contending for the same generator.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CardGeneratorBenchmark {
+    private BenchmarkDatabase database;
+    private CardGenerator generator;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        database = new BenchmarkDatabase(BenchmarkDatabase.MEMORY);
+        generator = new CardGenerator(database.manager());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public String generateCardNumber() {
+        return generator.generateCardNumber();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String generateCardNumberContended() {
+        return generator.generateCardNumber();
+    }
+}
@@ -0,0 +1,82 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures what the login throttles add to a successful login: a lockout check of the card and of the client,
+ * and clearing the card's failures, against a table already tracking many failing keys. Recording a failure,
+ * which only wrong PINs pay for, is measured separately.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class LoginThrottleBenchmark {
+    private static final int CAPACITY = 65_536;
+    private static final int KEYS = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Throttles {
+        LoginThrottle cards;
+        LoginThrottle sources;
+        String[] cardNumbers;
+        String[] addresses;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cards = new LoginThrottle(CAPACITY, 5, 15, 15, TimeUnit.MINUTES);
+            sources = new LoginThrottle(CAPACITY, 50, 1, 5, TimeUnit.MINUTES);
+            for (int i = 0; i < CAPACITY / 2; i++) {
+                fail(cards, "4000009" + String.format("%09d", i));
+                fail(sources, "10.1." + (i >> 8) + "." + (i & 255));
+            }
+            cardNumbers = new String[KEYS];
+            addresses = new String[KEYS];
+            for (int i = 0; i < KEYS; i++) {
+                cardNumbers[i] = "4000001" + String.format("%09d", i);
+                addresses[i] = "10.2." + (i >> 8) + "." + (i & 255);
+            }
+        }
+    }
+
+    /**
+     * Makes one failed attempt for a key, unless it is turned away.
+     *
+     * @param throttle the throttle
+     * @param key      the key
+     * @return true if the failure locked the key out
+     */
+    static boolean fail(LoginThrottle throttle, String key) {
+        return throttle.tryAcquire(key) == 0 && throttle.recordFailure(key);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) Thread.currentThread().getId() * 7919;
+
+        int next() {
+            return next++ & (KEYS - 1);
+        }
+    }
+
+    @Benchmark
+    public long successfulLogin(Throttles throttles, Cursor cursor) {
+        int i = cursor.next();
+        long lockedFor = Math.max(throttles.cards.tryAcquire(throttles.cardNumbers[i]),
+                throttles.sources.tryAcquire(throttles.addresses[i]));
+        throttles.cards.release(throttles.cardNumbers[i]);
+        throttles.sources.release(throttles.addresses[i]);
+        return lockedFor;
+    }
+
+    @Benchmark
+    public boolean failedLogin(Throttles throttles, Cursor cursor) {
+        int i = cursor.next();
+        return fail(throttles.cards, throttles.cardNumbers[i])
+                | fail(throttles.sources, throttles.addresses[i]);
+    }
+}
@@ -0,0 +1,60 @@
+package dev.shoangenes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures Luhn validation of 16-digit card numbers through each of the validator's entry points.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LuhnValidatorBenchmark {
+    private static final int CARDS = 1024;
+    private static final int CARD_LENGTH = 16;
+
+    private final String[] cards = new String[CARDS];
+    private final long[] packedCards = new long[CARDS];
+    private final byte[] cardBytes = new byte[CARDS * CARD_LENGTH];
+    private ByteBuffer cardBuffer;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < CARDS; i++) {
+            long base = 400000_000000000L + ThreadLocalRandom.current().nextLong(1_000_000_000L);
+            packedCards[i] = LuhnValidator.generateCardNumber(base);
+            cards[i] = Long.toString(packedCards[i]);
+            System.arraycopy(cards[i].getBytes(StandardCharsets.US_ASCII), 0, cardBytes, i * CARD_LENGTH, CARD_LENGTH);
+        }
+        cardBuffer = ByteBuffer.allocateDirect(cardBytes.length).put(cardBytes);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return LuhnValidator.validate(cards[next++ & (CARDS - 1)]);
+    }
+
+    @Benchmark
+    public boolean validateBytes() {
+        return LuhnValidator.validate(cardBytes, (next++ & (CARDS - 1)) * CARD_LENGTH, CARD_LENGTH);
+    }
+
+    @Benchmark
+    public boolean validateBuffer() {
+        int start = (next++ & (CARDS - 1)) * CARD_LENGTH;
+        return LuhnValidator.validate(cardBuffer, start, start + CARD_LENGTH);
+    }
+
+    @Benchmark
+    public boolean validatePacked() {
+        return LuhnValidator.validate(packedCards[next++ & (CARDS - 1)]);
+    }
+}
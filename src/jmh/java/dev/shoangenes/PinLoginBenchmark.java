@@ -0,0 +1,65 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures login throughput against the PBKDF2 iteration count, with the verified-session cache off
+ * (every login hashes) and on (repeat logins skip the hash), from several threads sharing one BankingSystem.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(4)
+public class PinLoginBenchmark {
+    private static final int ACCOUNTS = 64;
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+        @Param({"1000", "10000", "100000"})
+        public int iterations;
+
+        @Param({"off", "on"})
+        public String sessions;
+
+        BenchmarkDatabase database;
+        PinVerifier verifier;
+        BankingSystem system;
+        Account[] accounts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = new BenchmarkDatabase(BenchmarkDatabase.MEMORY);
+            verifier = new PinVerifier(new Pbkdf2PinHasher(iterations), Runtime.getRuntime().availableProcessors(),
+                    "on".equals(sessions) ? PinVerifier.DEFAULT_SESSION_TTL_SECONDS : 0, TimeUnit.SECONDS);
+            system = new BankingSystem(database.manager(), 1024, verifier);
+            accounts = new Account[ACCOUNTS];
+            int[] created = {0};
+            system.createAccounts(ACCOUNTS, account -> accounts[created[0]++] = account);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            verifier.close();
+            database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) Thread.currentThread().getId() * 7919;
+
+        Account next(Bank bank) {
+            return bank.accounts[next++ & (ACCOUNTS - 1)];
+        }
+    }
+
+    @Benchmark
+    public Account login(Bank bank, Cursor cursor) {
+        Account account = cursor.next(bank);
+        return bank.system.login(account.getNumber(), account.getPin());
+    }
+}
@@ -0,0 +1,57 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures account provisioning, in accounts per second, through {@link BankingSystem#createAccounts} against
+ * a loop of {@link BankingSystem#createAccount()}, which commits once per account. PINs are hashed with a
+ * single PBKDF2 iteration, so the numbers show the storage cost rather than the hashing cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ProvisioningBenchmark.ACCOUNTS)
+public class ProvisioningBenchmark {
+    static final int ACCOUNTS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+        @Param({BenchmarkDatabase.FILE, BenchmarkDatabase.MEMORY})
+        public String storage;
+
+        BenchmarkDatabase database;
+        PinVerifier verifier;
+        BankingSystem system;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = new BenchmarkDatabase(storage);
+            verifier = new PinVerifier(new Pbkdf2PinHasher(1), 1, PinVerifier.DEFAULT_SESSION_TTL_SECONDS,
+                    TimeUnit.SECONDS);
+            system = new BankingSystem(database.store(), 1024, verifier);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            verifier.close();
+            database.close();
+        }
+    }
+
+    @Benchmark
+    public void createAccounts(Bank bank, Blackhole blackhole) {
+        bank.system.createAccounts(ACCOUNTS, blackhole::consume);
+    }
+
+    @Benchmark
+    public void createAccountLoop(Bank bank, Blackhole blackhole) {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            blackhole.consume(bank.system.createAccount());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package dev.shoangenes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures settling a synthetic file of transfers with the {@link SettlementJob}, in rows per second, against
+ * a temporary SQLite file and the heap store. Every tenth row names one of a few hot accounts, so waves stay
+ * small around them, and one row in a hundred names an unknown card.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(1)
+@OperationsPerInvocation(SettlementJobBenchmark.ROWS)
+@State(Scope.Benchmark)
+public class SettlementJobBenchmark {
+    static final int ROWS = 100_000;
+    private static final int ACCOUNTS = 10_000;
+    private static final int HOT_ACCOUNTS = 8;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+
+    @Param({"file", "heap"})
+    public String storage;
+
+    @Param({"1"})
+    public int threads;
+
+    @Param({"10000"})
+    public int batchSize;
+
+    private BenchmarkDatabase database;
+    private Path input;
+    private SettlementJob job;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new BenchmarkDatabase(storage);
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account(CardGenerator.cardNumberOf(i + 1), "1234", OPENING_BALANCE));
+        }
+        database.store().insertAccounts(accounts);
+
+        input = Files.createTempFile("bench-settlement", ".csv");
+        Random random = new Random(42);
+        try (BufferedWriter out = Files.newBufferedWriter(input)) {
+            for (int i = 0; i < ROWS; i++) {
+                int from = i % 10 == 0 ? random.nextInt(HOT_ACCOUNTS) : random.nextInt(ACCOUNTS);
+                int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                long toNumber = i % 100 == 1 ? ACCOUNTS + 1 + to : to + 1;
+                out.write(CardGenerator.cardNumberOf(from + 1) + "," + CardGenerator.cardNumberOf(toNumber) + ","
+                        + Money.format(1 + random.nextInt(10_000)));
+                out.newLine();
+            }
+        }
+        job = new SettlementJob(database.store(), threads, batchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    public SettlementJob.Report settle() {
+        return job.settle(input, null);
+    }
+}
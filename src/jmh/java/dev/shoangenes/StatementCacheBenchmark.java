@@ -0,0 +1,123 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures account lookup throughput with the per-connection statement cache of {@link PooledConnection}
+ * against preparing and closing the statement on every lookup, as was done before the cache existed.
+ * Each lookup leases a connection from a {@link ConnectionPool}, like {@link DatabaseManager#getAccount}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementCacheBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final String SELECT_ACCOUNT = "SELECT * FROM cards WHERE card_number = ?";
+    private static final AtomicInteger MEMORY_DATABASES = new AtomicInteger();
+
+    @State(Scope.Benchmark)
+    public static class Lookup {
+        @Param({BenchmarkDatabase.FILE, BenchmarkDatabase.MEMORY})
+        public String storage;
+
+        @Param({"cached", "uncached"})
+        public String statements;
+
+        Path file;
+        DatabaseManager db;
+        ConnectionPool pool;
+        boolean cached;
+        String[] cards;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            String url;
+            if (BenchmarkDatabase.FILE.equals(storage)) {
+                file = Files.createTempFile("bench-statements", ".s3db");
+                url = "jdbc:sqlite:" + file;
+            } else {
+                url = "jdbc:sqlite:file:bench-statements" + MEMORY_DATABASES.incrementAndGet()
+                        + "?mode=memory&cache=shared";
+            }
+            // The database manager creates the schema and keeps a shared-cache in-memory database alive
+            db = new DatabaseManager(url, 1);
+            cards = new String[ACCOUNTS];
+            List<Account> accounts = new ArrayList<>(ACCOUNTS);
+            for (int i = 0; i < ACCOUNTS; i++) {
+                cards[i] = CardGenerator.cardNumberOf(i + 1);
+                accounts.add(new Account(cards[i], "1234", 1_000));
+            }
+            db.insertAccounts(accounts);
+            pool = new ConnectionPool(url, 1, 5000);
+            cached = "cached".equals(statements);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.close();
+            db.disconnect();
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(Path.of(file + "-wal"));
+                    Files.deleteIfExists(Path.of(file + "-shm"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        String next(Lookup lookup) {
+            return lookup.cards[next++ & (ACCOUNTS - 1)];
+        }
+    }
+
+    @Benchmark
+    public long lookup(Lookup lookup, Cursor cursor) throws SQLException {
+        String card = cursor.next(lookup);
+        try (PooledConnection pc = lookup.pool.acquire()) {
+            if (lookup.cached) {
+                PreparedStatement statement = pc.prepare(SELECT_ACCOUNT);
+                statement.setString(1, card);
+                return read(pc.executeQuery(statement));
+            }
+            try (PreparedStatement statement = pc.connection().prepareStatement(SELECT_ACCOUNT)) {
+                statement.setString(1, card);
+                return read(statement.executeQuery());
+            }
+        }
+    }
+
+    /**
+     * Reads the balance of the single row of a lookup and closes the result set.
+     *
+     * @param rs the result set of the lookup
+     * @return the balance, in cents
+     * @throws SQLException if the row cannot be read
+     */
+    private static long read(ResultSet rs) throws SQLException {
+        try (rs) {
+            rs.next();
+            return rs.getLong("balance");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures contention on the account locks of BankingSystem across stripe counts, with eight threads
+ * working on random pairs of accounts: the bare locks alone, and whole transfers.
+ * One stripe behaves like a single global lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StripedLocksBenchmark {
+    private static final int ACCOUNTS = 4096;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+    private static final long CRITICAL_SECTION_TOKENS = 500;
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+        @Param({"1", "16", "256", "4096"})
+        public int stripes;
+
+        BenchmarkDatabase database;
+        BankingSystem system;
+        StripedLocks locks;
+        Account[] accounts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = new BenchmarkDatabase(BenchmarkDatabase.FILE);
+            system = new BankingSystem(database.manager(), stripes);
+            locks = new StripedLocks(stripes);
+            accounts = new Account[ACCOUNTS];
+            int[] created = {0};
+            system.createAccounts(ACCOUNTS, account -> accounts[created[0]++] = account);
+            for (Account account : accounts) {
+                system.addIncome(account, OPENING_BALANCE);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) Thread.currentThread().getId() * 7919;
+    }
+
+    @Benchmark
+    public Account transferFunds(Bank bank, Cursor cursor) {
+        Account from = bank.accounts[cursor.next++ & (ACCOUNTS - 1)];
+        Account to = bank.accounts[cursor.next++ & (ACCOUNTS - 1)];
+        bank.system.transferFunds(from, to.getNumber(), 1);
+        return from;
+    }
+
+    @Benchmark
+    public boolean lockBoth(Bank bank, Cursor cursor) {
+        String from = bank.accounts[cursor.next++ & (ACCOUNTS - 1)].getNumber();
+        String to = bank.accounts[cursor.next++ & (ACCOUNTS - 1)].getNumber();
+        bank.locks.lockBoth(from, to);
+        try {
+            Blackhole.consumeCPU(CRITICAL_SECTION_TOKENS);
+            return from.equals(to);
+        } finally {
+            bank.locks.unlockBoth(from, to);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares durable transfers committed one transaction each with transfers committed in groups by the
+ * {@link TransferEngine}, both against a temporary SQLite file and with many threads transferring at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class TransferEngineBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+        @Param({"256"})
+        public int maxBatchSize;
+
+        @Param({"0", "1000"})
+        public long maxDelayMicros;
+
+        BenchmarkDatabase database;
+        Path journal;
+        TransferEngine engine;
+        String[] cards;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            database = new BenchmarkDatabase(BenchmarkDatabase.FILE);
+            BankingSystem system = new BankingSystem(database.manager());
+            cards = new String[ACCOUNTS];
+            int[] created = {0};
+            system.createAccounts(ACCOUNTS, account -> {
+                system.addIncome(account, OPENING_BALANCE);
+                cards[created[0]++] = account.getNumber();
+            });
+            journal = Files.createTempFile("bench-transfers", ".journal");
+            engine = new TransferEngine(database.manager(), journal, maxBatchSize, maxDelayMicros, TimeUnit.MICROSECONDS);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.close();
+            database.close();
+            try {
+                Files.deleteIfExists(journal);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) Thread.currentThread().getId() * 7919;
+
+        String next(Bank bank) {
+            return bank.cards[next++ & (ACCOUNTS - 1)];
+        }
+    }
+
+    @Benchmark
+    public long perTransferCommit(Bank bank, Cursor cursor) {
+        return bank.database.manager().transfer(cursor.next(bank), cursor.next(bank), 1).orElseThrow();
+    }
+
+    @Benchmark
+    public long groupCommit(Bank bank, Cursor cursor) {
+        return bank.engine.transfer(cursor.next(bank), cursor.next(bank), 1);
+    }
+}
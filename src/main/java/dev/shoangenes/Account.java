@@ -2,20 +2,21 @@ package dev.shoangenes;
 
 /**
  * Represents a bank account with a number, pin, and balance.
+ * The balance is kept in cents.
  */
 public class Account {
     private String number;
     private String pin;
-    private double balance;
+    private long balance;
 
     /**
      * Constructs a new Account with the specified number, pin, and balance.
      *
      * @param number the account number
      * @param pin the account pin
-     * @param balance the initial balance
+     * @param balance the initial balance, in cents
      */
-    public Account(String number, String pin, double balance) {
+    public Account(String number, String pin, long balance) {
         this.number = number;
         this.pin = pin;
         this.balance = balance;
@@ -30,26 +31,34 @@ public class Account {
     }
 
     /**
-     * Gets the account pin.
+     * Gets the account pin. Accounts read from the database hold the stored PIN hash instead.
      * @return the account pin
      */
     public String getPin() {
         return pin;
     }
 
+    /**
+     * Sets the account pin.
+     * @param pin the new pin, or its hash
+     */
+    public void setPin(String pin) {
+        this.pin = pin;
+    }
+
     /**
      * Gets the account balance.
-     * @return the account balance
+     * @return the account balance, in cents
      */
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
     /**
      * Sets the account balance.
-     * @param balance the new balance
+     * @param balance the new balance, in cents
      */
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
@@ -58,7 +67,7 @@ public class Account {
         return "Account{" +
                 "number='" + number + '\'' +
                 ", pin='" + pin + '\'' +
-                ", balance=" + balance +
+                ", balance=" + Money.format(balance) +
                 '}';
     }
 }
@@ -0,0 +1,228 @@
+package dev.shoangenes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache of accounts keyed by card number. Entries are evicted in least-recently-used
+ * order once the cache is full, and expire after a fixed time to live.
+ * <p>
+ * Card numbers are spread over a fixed number of segments, each an access-ordered map behind its own lock
+ * holding an equal share of the capacity, so lookups of accounts in different segments never contend.
+ * Eviction is least-recently-used within each segment, which approximates it across the whole cache.
+ * <p>
+ * The cache keeps its own copy of each account, so callers can freely mutate the Account objects
+ * they get back without affecting cached state.
+ */
+public class AccountCache {
+    private static final int MAX_SEGMENTS = 64;
+
+    private final long ttlNanos;
+    private final Segment[] segments;
+    private final int mask;
+    // Lets fills detect writes that raced with their database read
+    private final AtomicLong writes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Cached state of a single account.
+     */
+    private record Entry(String pin, long balance, long expiresAt) {
+    }
+
+    /**
+     * One share of the cache, in least-recently-used order. Every access must synchronize on the segment.
+     */
+    private final class Segment extends LinkedHashMap<String, Entry> {
+        private final int capacity;
+
+        /**
+         * Constructs a new, empty segment.
+         *
+         * @param capacity the maximum number of accounts the segment keeps
+         */
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Constructs a new AccountCache.
+     *
+     * @param maxSize the maximum number of accounts to keep
+     * @param ttl     how long an entry stays valid
+     * @param unit    the time unit of the ttl
+     * @throws IllegalArgumentException if the size or ttl is not positive
+     */
+    public AccountCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("Cache size and ttl must be positive.");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        // A power of two no larger than the cache, so every segment holds at least one account
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+        this.segments = new AccountCache.Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxSize / count);
+        }
+        this.mask = count - 1;
+    }
+
+    /**
+     * Looks up an account by card number.
+     *
+     * @param cardNumber the card number of the account
+     * @return a copy of the cached account, or an empty Optional if it is not cached or has expired
+     */
+    public Optional<Account> get(String cardNumber) {
+        Segment segment = segmentOf(cardNumber);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(cardNumber);
+            if (entry != null && entry.expiresAt() - System.nanoTime() < 0) {
+                segment.remove(cardNumber);
+                evictions.increment();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(new Account(cardNumber, entry.pin(), entry.balance()));
+    }
+
+    /**
+     * Stores an account that was just written to the database, replacing any cached copy.
+     *
+     * @param account the account to store
+     */
+    public void put(Account account) {
+        Entry entry = newEntry(account);
+        Segment segment = segmentOf(account.getNumber());
+        synchronized (segment) {
+            writes.incrementAndGet();
+            segment.put(account.getNumber(), entry);
+        }
+    }
+
+    /**
+     * Takes a stamp to be passed to {@link #fill(Account, long)} before reading an account from the database.
+     *
+     * @return the current write stamp
+     */
+    public long stamp() {
+        return writes.get();
+    }
+
+    /**
+     * Stores an account that was just read from the database, unless any write went through the cache
+     * since the stamp was taken, in which case the read may already be stale and is not cached.
+     * A write to the same account counts its stamp and changes the cache under the same segment lock the
+     * fill checks the stamp under, so a stale read is either refused here or removed by the write.
+     *
+     * @param account the account to store
+     * @param stamp   the stamp taken before the database read
+     */
+    public void fill(Account account, long stamp) {
+        Entry entry = newEntry(account);
+        Segment segment = segmentOf(account.getNumber());
+        synchronized (segment) {
+            if (writes.get() == stamp) {
+                segment.putIfAbsent(account.getNumber(), entry);
+            }
+        }
+    }
+
+    /**
+     * Removes an account from the cache.
+     *
+     * @param cardNumber the card number of the account
+     */
+    public void invalidate(String cardNumber) {
+        Segment segment = segmentOf(cardNumber);
+        synchronized (segment) {
+            writes.incrementAndGet();
+            segment.remove(cardNumber);
+        }
+    }
+
+    /**
+     * Removes every account from the cache.
+     */
+    public void clear() {
+        writes.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to go to the database.
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries dropped because the cache was full or the entry expired.
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Creates a fresh cache entry for the given account.
+     *
+     * @param account the account to cache
+     * @return the entry, valid for one time to live from now
+     */
+    private Entry newEntry(Account account) {
+        return new Entry(account.getPin(), account.getBalance(), System.nanoTime() + ttlNanos);
+    }
+
+    /**
+     * Maps a card number to its segment. The hash is spread first because sequential card numbers
+     * differ mostly in their low digits.
+     *
+     * @param cardNumber the card number
+     * @return the segment
+     */
+    private Segment segmentOf(String cardNumber) {
+        int h = cardNumber.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return segments[h & mask];
+    }
+}
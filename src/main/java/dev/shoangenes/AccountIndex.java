@@ -0,0 +1,423 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact account index in a memory-mapped file, with one fixed 24-byte record per account number, so an account
+ * is found by arithmetic instead of a lookup and no account is ever a heap object. Opening an index maps the
+ * file instead of reading it, so startup takes the same time for any number of accounts, and only the pages
+ * of accounts actually used are brought into memory.
+ * <p>
+ * A record holds {@code [balance][state][PIN key]}: the balance in cents, the state of the slot (unused, closed,
+ * or the PBKDF2 iteration count of an open account), and the first 96 bits of the PBKDF2 key of the PIN. Keys are
+ * salted with a random value kept in the file header and the account number, which is unique because closed
+ * account numbers are never reused.
+ * <p>
+ * Changes are serialized per account by {@link StripedLocks}, and balances are read without locking. Writes land
+ * in the page cache, so they survive a crash of the process, but only those made before {@link #force()}
+ * survive a crash of the machine.
+ */
+public class AccountIndex implements AutoCloseable {
+    public static final int RECORD_BYTES = 24;
+
+    private static final int MAGIC = 0x41494458;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 8;
+    private static final int SALT_OFFSET = 16;
+    private static final int SALT_BYTES = 16;
+    private static final int STATE_OFFSET = 8;
+    private static final int KEY_OFFSET = 12;
+    private static final int KEY_BYTES = 12;
+    private static final int CHUNK_SHIFT = 22;
+    private static final long CHUNK_RECORDS = 1L << CHUNK_SHIFT;
+    private static final long ACCOUNT_NUMBER_RANGE = 1_000_000_000L;
+    private static final int LOCK_STRIPES = 1024;
+
+    // Slot states; positive states are the iteration counts of open accounts
+    private static final int UNUSED = 0;
+    private static final int CLOSED = -1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final byte[] salt = new byte[SALT_BYTES];
+    private final AtomicReferenceArray<MappedByteBuffer> chunks;
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    private final int iterations;
+
+    /**
+     * Opens the index in the given file with the default PBKDF2 iteration count, creating it if it does not exist.
+     *
+     * @param path the index file
+     * @throws UncheckedIOException if the file cannot be opened or is not an account index
+     */
+    public AccountIndex(Path path) {
+        this(path, Pbkdf2PinHasher.DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Opens the index in the given file, creating it if it does not exist.
+     *
+     * @param path       the index file
+     * @param iterations the number of PBKDF2 iterations new PIN keys are derived with
+     * @throws IllegalArgumentException if the iteration count is not positive
+     * @throws UncheckedIOException     if the file cannot be opened or is not an account index
+     */
+    public AccountIndex(Path path, int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iteration count must be positive.");
+        }
+        this.path = path;
+        this.iterations = iterations;
+        this.chunks = new AtomicReferenceArray<>((int) ((ACCOUNT_NUMBER_RANGE + CHUNK_RECORDS - 1) >> CHUNK_SHIFT));
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean created = channel.size() == 0;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                new SecureRandom().nextBytes(salt);
+                header.putInt(0, MAGIC);
+                header.putInt(4, RECORD_BYTES);
+                header.put(SALT_OFFSET, salt);
+                header.force();
+            } else if (header.getInt(0) != MAGIC || header.getInt(4) != RECORD_BYTES) {
+                channel.close();
+                throw new IOException("Not an account index.");
+            } else {
+                header.get(SALT_OFFSET, salt);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open account index " + path + ".", e);
+        }
+    }
+
+    /**
+     * Adds an account. Its card number must never have been used in this index, not even by a closed account.
+     *
+     * @param cardNumber the card number of the account
+     * @param pin        the PIN of the account, of which only a PBKDF2 key is stored
+     * @param balance    the opening balance, in cents
+     * @return true if the account was added, false if its card number was used before
+     * @throws IllegalArgumentException if the card number was not issued by {@link CardGenerator}
+     * @throws UncheckedIOException     if the index cannot be grown
+     */
+    public boolean insert(String cardNumber, String pin, long balance) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        if (accountNumber < 0) {
+            throw new IllegalArgumentException("Invalid card number.");
+        }
+        ByteBuffer chunk = chunk(accountNumber, true);
+        int offset = offsetOf(accountNumber);
+        // Derived before locking, so a slow hash never holds up other accounts of the stripe
+        byte[] key = deriveKey(pin, accountNumber, iterations);
+
+        locks.lock(cardNumber);
+        try {
+            if ((int) INTS.getVolatile(chunk, offset + STATE_OFFSET) != UNUSED) {
+                return false;
+            }
+            chunk.put(offset + KEY_OFFSET, key);
+            LONGS.setVolatile(chunk, offset, balance);
+            // Written last, so readers that see the account open also see its key and balance
+            INTS.setVolatile(chunk, offset + STATE_OFFSET, iterations);
+        } finally {
+            locks.unlock(cardNumber);
+        }
+        LONGS.getAndAdd(header, COUNT_OFFSET, 1L);
+        return true;
+    }
+
+    /**
+     * Checks whether an open account has the given card number.
+     *
+     * @param cardNumber the card number
+     * @return true if the account exists
+     */
+    public boolean contains(String cardNumber) {
+        return stateOf(cardNumber) > 0;
+    }
+
+    /**
+     * Reads the balance of an account, without locking.
+     *
+     * @param cardNumber the card number of the account
+     * @return the balance in cents, or an empty OptionalLong if the account does not exist
+     */
+    public OptionalLong getBalance(String cardNumber) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        ByteBuffer chunk = accountNumber < 0 ? null : chunk(accountNumber, false);
+        if (chunk == null) {
+            return OptionalLong.empty();
+        }
+        int offset = offsetOf(accountNumber);
+        if ((int) INTS.getVolatile(chunk, offset + STATE_OFFSET) <= 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of((long) LONGS.getVolatile(chunk, offset));
+    }
+
+    /**
+     * Checks a PIN against the stored key of an account. Takes as long as deriving one PBKDF2 key.
+     *
+     * @param cardNumber the card number of the account
+     * @param pin        the PIN to check
+     * @return true if the account exists and the PIN matches
+     */
+    public boolean verifyPin(String cardNumber, String pin) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        ByteBuffer chunk = accountNumber < 0 ? null : chunk(accountNumber, false);
+        if (chunk == null) {
+            return false;
+        }
+        int offset = offsetOf(accountNumber);
+        int state = (int) INTS.getVolatile(chunk, offset + STATE_OFFSET);
+        if (state <= 0) {
+            return false;
+        }
+        byte[] stored = new byte[KEY_BYTES];
+        chunk.get(offset + KEY_OFFSET, stored);
+        return MessageDigest.isEqual(stored, deriveKey(pin, accountNumber, state));
+    }
+
+    /**
+     * Adds an amount to the balance of an account.
+     *
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to add, in cents
+     * @return the balance after the deposit, or an empty OptionalLong if the account does not exist
+     */
+    public OptionalLong deposit(String cardNumber, long amount) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        ByteBuffer chunk = accountNumber < 0 ? null : chunk(accountNumber, false);
+        if (chunk == null) {
+            return OptionalLong.empty();
+        }
+        int offset = offsetOf(accountNumber);
+        locks.lock(cardNumber);
+        try {
+            if ((int) INTS.getVolatile(chunk, offset + STATE_OFFSET) <= 0) {
+                return OptionalLong.empty();
+            }
+            long balance = (long) LONGS.getVolatile(chunk, offset) + amount;
+            LONGS.setVolatile(chunk, offset, balance);
+            return OptionalLong.of(balance);
+        } finally {
+            locks.unlock(cardNumber);
+        }
+    }
+
+    /**
+     * Subtracts an amount from the balance of an account, provided the balance covers it.
+     *
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to subtract, in cents
+     * @return the balance after the withdrawal, or an empty OptionalLong if the account does not exist
+     *         or has insufficient funds
+     */
+    public OptionalLong withdraw(String cardNumber, long amount) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        ByteBuffer chunk = accountNumber < 0 ? null : chunk(accountNumber, false);
+        if (chunk == null) {
+            return OptionalLong.empty();
+        }
+        int offset = offsetOf(accountNumber);
+        locks.lock(cardNumber);
+        try {
+            long balance = (long) LONGS.getVolatile(chunk, offset);
+            if ((int) INTS.getVolatile(chunk, offset + STATE_OFFSET) <= 0 || balance < amount) {
+                return OptionalLong.empty();
+            }
+            LONGS.setVolatile(chunk, offset, balance - amount);
+            return OptionalLong.of(balance - amount);
+        } finally {
+            locks.unlock(cardNumber);
+        }
+    }
+
+    /**
+     * Transfers funds between two accounts, provided the balance of the source covers them.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return the balance of the source account after the transfer, or an empty OptionalLong if the source
+     *         has insufficient funds or either account does not exist, in which case nothing is changed
+     */
+    public OptionalLong transfer(String fromCard, String toCard, long amount) {
+        long fromNumber = CardGenerator.parseAccountNumber(fromCard);
+        long toNumber = CardGenerator.parseAccountNumber(toCard);
+        ByteBuffer from = fromNumber < 0 ? null : chunk(fromNumber, false);
+        ByteBuffer to = toNumber < 0 ? null : chunk(toNumber, false);
+        if (from == null || to == null || fromNumber == toNumber) {
+            return OptionalLong.empty();
+        }
+        int fromOffset = offsetOf(fromNumber);
+        int toOffset = offsetOf(toNumber);
+        locks.lockBoth(fromCard, toCard);
+        try {
+            long fromBalance = (long) LONGS.getVolatile(from, fromOffset);
+            if ((int) INTS.getVolatile(from, fromOffset + STATE_OFFSET) <= 0
+                    || (int) INTS.getVolatile(to, toOffset + STATE_OFFSET) <= 0
+                    || fromBalance < amount) {
+                return OptionalLong.empty();
+            }
+            LONGS.setVolatile(from, fromOffset, fromBalance - amount);
+            LONGS.setVolatile(to, toOffset, (long) LONGS.getVolatile(to, toOffset) + amount);
+            return OptionalLong.of(fromBalance - amount);
+        } finally {
+            locks.unlockBoth(fromCard, toCard);
+        }
+    }
+
+    /**
+     * Closes an account. Its record is cleared, and its card number cannot be inserted again.
+     *
+     * @param cardNumber the card number of the account
+     * @return the balance the account held, or an empty OptionalLong if it did not exist
+     */
+    public OptionalLong delete(String cardNumber) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        ByteBuffer chunk = accountNumber < 0 ? null : chunk(accountNumber, false);
+        if (chunk == null) {
+            return OptionalLong.empty();
+        }
+        int offset = offsetOf(accountNumber);
+        locks.lock(cardNumber);
+        try {
+            if ((int) INTS.getVolatile(chunk, offset + STATE_OFFSET) <= 0) {
+                return OptionalLong.empty();
+            }
+            long balance = (long) LONGS.getVolatile(chunk, offset);
+            INTS.setVolatile(chunk, offset + STATE_OFFSET, CLOSED);
+            LONGS.setVolatile(chunk, offset, 0L);
+            chunk.put(offset + KEY_OFFSET, new byte[KEY_BYTES]);
+            LONGS.getAndAdd(header, COUNT_OFFSET, -1L);
+            return OptionalLong.of(balance);
+        } finally {
+            locks.unlock(cardNumber);
+        }
+    }
+
+    /**
+     * Gets the number of open accounts.
+     * @return the account count
+     */
+    public long getAccountCount() {
+        return (long) LONGS.getVolatile(header, COUNT_OFFSET);
+    }
+
+    /**
+     * Writes every change made so far to disk.
+     */
+    public void force() {
+        header.force();
+        for (int i = 0; i < chunks.length(); i++) {
+            MappedByteBuffer chunk = chunks.get(i);
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+    }
+
+    /**
+     * Writes every change to disk and closes the file. The index must not be used afterwards; the mappings are
+     * released once they are garbage collected.
+     */
+    @Override
+    public void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Reads the state of the slot of a card number.
+     *
+     * @param cardNumber the card number
+     * @return the state, or {@link #UNUSED} if the card number is invalid or its slot was never written
+     */
+    private int stateOf(String cardNumber) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        ByteBuffer chunk = accountNumber < 0 ? null : chunk(accountNumber, false);
+        return chunk == null ? UNUSED : (int) INTS.getVolatile(chunk, offsetOf(accountNumber) + STATE_OFFSET);
+    }
+
+    /**
+     * Gets the mapped chunk of records holding an account number, mapping it first if needed. Mapping past the
+     * end of the file grows it; the file stays sparse, so unused chunks take no disk space.
+     *
+     * @param accountNumber the account number
+     * @param create        whether to grow the file if the chunk lies past its end
+     * @return the chunk, or null if it lies past the end of the file and create is false
+     * @throws UncheckedIOException if the chunk cannot be mapped
+     */
+    private MappedByteBuffer chunk(long accountNumber, boolean create) {
+        int index = (int) (accountNumber >> CHUNK_SHIFT);
+        MappedByteBuffer chunk = chunks.get(index);
+        if (chunk != null) {
+            return chunk;
+        }
+        synchronized (chunks) {
+            chunk = chunks.get(index);
+            if (chunk != null) {
+                return chunk;
+            }
+            long start = HEADER_BYTES + index * CHUNK_RECORDS * RECORD_BYTES;
+            long length = CHUNK_RECORDS * RECORD_BYTES;
+            try {
+                if (!create && channel.size() < start + length) {
+                    return null;
+                }
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map account index " + path + ".", e);
+            }
+            chunks.set(index, chunk);
+            return chunk;
+        }
+    }
+
+    /**
+     * Gets the offset of the record of an account number within its chunk.
+     *
+     * @param accountNumber the account number
+     * @return the byte offset
+     */
+    private static int offsetOf(long accountNumber) {
+        return (int) (accountNumber & (CHUNK_RECORDS - 1)) * RECORD_BYTES;
+    }
+
+    /**
+     * Derives the stored PIN key of an account.
+     *
+     * @param pin           the PIN
+     * @param accountNumber the account number, which salts the key together with the index salt
+     * @param iterations    the PBKDF2 iteration count
+     * @return the first {@link #KEY_BYTES} bytes of the PBKDF2 key
+     */
+    private byte[] deriveKey(String pin, long accountNumber, int iterations) {
+        byte[] accountSalt = ByteBuffer.allocate(SALT_BYTES + Long.BYTES).put(salt).putLong(accountNumber).array();
+        return Pbkdf2PinHasher.derive(pin, accountSalt, iterations, KEY_BYTES * 8);
+    }
+}
@@ -0,0 +1,179 @@
+package dev.shoangenes;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Storage for accounts and the ledger of their balance changes, as used by {@link BankingSystem}.
+ * Implementations are safe to use from many threads at once, and every balance change is atomic:
+ * it either happens in full, ledger entries included, or not at all.
+ * <p>
+ * {@link DatabaseManager} keeps accounts in SQLite; {@link InMemoryAccountStore} keeps them on the heap
+ * for benchmarks and throwaway environments.
+ */
+public interface AccountStore {
+
+    /**
+     * A stored PIN to replace, e.g. a plaintext PIN by its hash.
+     *
+     * @param cardNumber the card number of the account
+     * @param oldPin     the value currently stored; the change is skipped if the account no longer has it
+     * @param newPin     the value to store
+     */
+    record PinChange(String cardNumber, String oldPin, String newPin) {
+    }
+
+    /**
+     * Releases the resources of the store. The store must not be used afterwards.
+     *
+     * @throws DatabaseException if the store cannot be closed
+     */
+    void disconnect();
+
+    /**
+     * Retrieves the highest row id assigned to an account. Stores that do not number their rows return "0".
+     *
+     * @return the last assigned id as a String
+     * @throws DatabaseException if the store cannot be read
+     */
+    String getLastId();
+
+    /**
+     * Retrieves the highest card number ever stored, including closed accounts, so it is never issued again.
+     *
+     * @return the highest card number, or an empty Optional if no account was ever stored
+     * @throws DatabaseException if the store cannot be read
+     */
+    Optional<String> getLastCardNumber();
+
+    /**
+     * Retrieves every stored card number packed into a long, in ascending order.
+     *
+     * @return the sorted card numbers
+     * @throws DatabaseException if the store cannot be read
+     */
+    long[] getPackedCardNumbers();
+
+    /**
+     * Inserts a new account, recording its balance in the ledger if it opens with funds.
+     *
+     * @param account the account to insert
+     * @throws DatabaseException if the account cannot be stored, e.g. because its card number is taken
+     */
+    void insertAccount(Account account);
+
+    /**
+     * Inserts a batch of new accounts. Either every account is inserted or none is.
+     *
+     * @param accounts the accounts to insert
+     * @throws DatabaseException if the accounts cannot be stored; none of them is
+     */
+    void insertAccounts(List<Account> accounts);
+
+    /**
+     * Retrieves an account by card number.
+     *
+     * @param cardNumber the card number of the account
+     * @return the account if found, otherwise an empty Optional
+     * @throws DatabaseException if the store cannot be read
+     */
+    Optional<Account> getAccount(String cardNumber);
+
+    /**
+     * Sets the balance of an account, recording the difference in the ledger as an adjustment.
+     *
+     * @param cardNumber the card number of the account
+     * @param newBalance the new balance, in cents
+     * @throws DatabaseException if the store cannot be written
+     */
+    void updateBalance(String cardNumber, long newBalance);
+
+    /**
+     * Deletes an account, recording the funds it held as a closing entry in the ledger.
+     *
+     * @param cardNumber the card number of the account
+     * @return true if an account was deleted, false if it did not exist
+     * @throws DatabaseException if the store cannot be written
+     */
+    boolean deleteAccount(String cardNumber);
+
+    /**
+     * Retrieves accounts whose PIN is still stored in plaintext, in card number order, one page at a time.
+     *
+     * @param afterCard only accounts with a greater card number are returned; "" for the first page
+     * @param limit     the maximum number of accounts to return
+     * @return the accounts, with their plaintext PINs
+     * @throws DatabaseException if the store cannot be read
+     */
+    List<Account> getAccountsWithPlainPins(String afterCard, int limit);
+
+    /**
+     * Replaces stored PINs. Each change only applies if the account still has the expected old value.
+     *
+     * @param changes the changes to apply
+     * @return the number of changes applied
+     * @throws DatabaseException if the store cannot be written; no change is applied
+     */
+    int replacePins(List<PinChange> changes);
+
+    /**
+     * Atomically adds an amount to the balance of an account.
+     *
+     * @param cardNumber the card number of the account to credit
+     * @param amount     the amount to add, in cents
+     * @return the balance after the deposit, or an empty OptionalLong if the account does not exist
+     * @throws DatabaseException if the store cannot be written
+     */
+    OptionalLong deposit(String cardNumber, long amount);
+
+    /**
+     * Atomically subtracts an amount from the balance of an account, provided the balance covers it.
+     *
+     * @param cardNumber the card number of the account to debit
+     * @param amount     the amount to subtract, in cents
+     * @return the balance after the withdrawal, or an empty OptionalLong if the account does not exist
+     *         or has insufficient funds
+     * @throws DatabaseException if the store cannot be written
+     */
+    OptionalLong withdraw(String cardNumber, long amount);
+
+    /**
+     * Atomically transfers funds between two accounts, provided the balance of the source covers them.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return the balance of the source account after the transfer, or an empty OptionalLong if the source
+     *         has insufficient funds or either account does not exist, in which case nothing is changed
+     * @throws DatabaseException if the store cannot be written; nothing is changed
+     */
+    OptionalLong transfer(String fromCard, String toCard, long amount);
+
+    /**
+     * Applies transfers in order, each accepted or rejected on its own, so one transfer failing for insufficient
+     * funds or an unknown account does not affect the rest. Transactional stores apply the whole list in one
+     * transaction, paying for a single commit.
+     *
+     * @param transfers the transfers to apply, in order, each between two different accounts
+     * @return the result of every transfer, in the same order
+     * @throws DatabaseException if the store cannot be written; a transactional store then changes nothing
+     */
+    List<TransferResult> transferAll(List<Transfer> transfers);
+
+    /**
+     * Retrieves one page of the ledger entries of an account, newest first. The history of a deleted account
+     * can still be read, ending with its closing entry.
+     * <p>
+     * Stores keep the full history unless configured otherwise. A store may opt in to retaining only recent
+     * entries, such as a {@link DatabaseManager} run with a {@link LedgerCompactor}, which archives older ones,
+     * or an {@link InMemoryAccountStore} given a history limit; paging then ends at the oldest retained entry.
+     *
+     * @param cardNumber the card number of the account
+     * @param cursor     where the page starts: {@link LedgerPage.Cursor#FIRST} or the next cursor of the previous page
+     * @param limit      the maximum number of entries in the page
+     * @return the page
+     * @throws DatabaseException if the store cannot be read
+     */
+    LedgerPage getHistory(String cardNumber, LedgerPage.Cursor cursor, int limit);
+}
@@ -0,0 +1,210 @@
+package dev.shoangenes;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over a {@link BankingSystem}. Every operation runs on a dedicated pool of database
+ * threads and returns a future right away, so a caller can have many operations in flight without
+ * a thread of its own per operation.
+ * <p>
+ * Operations wait in a bounded queue. Once it is full, new operations are not queued: their futures fail
+ * right away with a {@link RejectedExecutionException}, so an overloaded database pushes back on callers
+ * instead of piling up work. Otherwise futures fail with the same exceptions the blocking methods throw,
+ * unwrapped: {@link IllegalArgumentException} for rejected operations and {@link DatabaseException}
+ * for database errors.
+ */
+public class AsyncBankingSystem implements AutoCloseable {
+    private static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final BankingSystem bankingSystem;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Constructs a new AsyncBankingSystem with one database thread per core and the default queue capacity.
+     *
+     * @param bankingSystem the banking system operations run against
+     */
+    public AsyncBankingSystem(BankingSystem bankingSystem) {
+        this(bankingSystem, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a new AsyncBankingSystem.
+     *
+     * @param bankingSystem the banking system operations run against
+     * @param threads       the number of database threads
+     * @param queueCapacity the number of operations that may wait for a database thread
+     * @throws IllegalArgumentException if the thread count or the queue capacity is not positive
+     */
+    public AsyncBankingSystem(BankingSystem bankingSystem, int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Thread count and queue capacity must be positive.");
+        }
+        this.bankingSystem = bankingSystem;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "bank-db-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Creates a new account.
+     *
+     * @return a future completed with the new account
+     * @see BankingSystem#createAccount()
+     */
+    public CompletableFuture<Account> createAccountAsync() {
+        return submit(bankingSystem::createAccount);
+    }
+
+    /**
+     * Logs in to an account.
+     *
+     * @param cardNumber the card number of the account
+     * @param pin        the PIN of the account
+     * @return a future completed with the account
+     * @see BankingSystem#login(String, String)
+     */
+    public CompletableFuture<Account> loginAsync(String cardNumber, String pin) {
+        return submit(() -> bankingSystem.login(cardNumber, pin));
+    }
+
+    /**
+     * Logs in to an account on behalf of a client whose failed logins are limited.
+     *
+     * @param cardNumber the card number of the account
+     * @param pin        the PIN of the account
+     * @param source     the address of the client, or null if unknown
+     * @return a future completed with the account
+     * @see BankingSystem#login(String, String, String)
+     */
+    public CompletableFuture<Account> loginAsync(String cardNumber, String pin, String source) {
+        return submit(() -> bankingSystem.login(cardNumber, pin, source));
+    }
+
+    /**
+     * Transfers funds from one account to another.
+     *
+     * @param fromAccount the account to transfer funds from
+     * @param toAccount   the card number of the account to transfer funds to
+     * @param amount      the amount to transfer, in cents
+     * @return a future completed with the new balance of {@code fromAccount}, in cents
+     * @see BankingSystem#transferFunds(Account, String, long)
+     */
+    public CompletableFuture<Long> transferFundsAsync(Account fromAccount, String toAccount, long amount) {
+        return submit(() -> {
+            bankingSystem.transferFunds(fromAccount, toAccount, amount);
+            return fromAccount.getBalance();
+        });
+    }
+
+    /**
+     * Subtracts income from an account.
+     *
+     * @param account the account to subtract income from
+     * @param amount  the amount to subtract, in cents
+     * @return a future completed with the new balance of the account, in cents
+     * @see BankingSystem#subtractIncome(Account, long)
+     */
+    public CompletableFuture<Long> subtractIncomeAsync(Account account, long amount) {
+        return submit(() -> bankingSystem.subtractIncome(account, amount));
+    }
+
+    /**
+     * Adds income to an account.
+     *
+     * @param account the account to add income to
+     * @param amount  the amount to add, in cents
+     * @return a future completed with the new balance of the account, in cents
+     * @see BankingSystem#addIncome(Account, long)
+     */
+    public CompletableFuture<Long> addIncomeAsync(Account account, long amount) {
+        return submit(() -> bankingSystem.addIncome(account, amount));
+    }
+
+    /**
+     * Closes an account.
+     *
+     * @param account the account to close
+     * @return a future completed once the account is closed
+     * @see BankingSystem#closeAccount(Account)
+     */
+    public CompletableFuture<Void> closeAccountAsync(Account account) {
+        return submit(() -> {
+            bankingSystem.closeAccount(account);
+            return null;
+        });
+    }
+
+    /**
+     * Gets the number of operations waiting for a database thread.
+     * @return the queued operation count
+     */
+    public int getQueuedOperations() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of operations turned away because the queue was full.
+     * @return the rejected operation count
+     */
+    public long getRejectedOperations() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting operations and waits for queued ones to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues an operation on the database threads.
+     *
+     * @param operation the blocking operation
+     * @param <T>       the result type of the operation
+     * @return a future completed with the result of the operation or failed with the exception or error it threw,
+     *         or failed with a RejectedExecutionException if the queue is full or the facade is closed
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(operation.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } catch (Throwable t) {
+                    // Fail the future before the error reaches the pool, or its caller would wait forever
+                    result.completeExceptionally(t);
+                    throw t;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(new RejectedExecutionException(executor.isShutdown()
+                    ? "The banking system is closed."
+                    : "The banking system is overloaded."));
+        }
+        return result;
+    }
+}
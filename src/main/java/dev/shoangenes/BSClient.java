@@ -1,20 +1,48 @@
 package dev.shoangenes;
 
+import java.io.PrintStream;
 import java.util.Optional;
 
 public class BSClient {
     private final BankingSystem bankingSystem;
     private final InputReader reader;
+    private final PrintStream out;
+    private final String source;
 
     /**
-     * Constructs a new BSClient with the specified BankingSystem and InputReader.
+     * Constructs a new BSClient with the specified BankingSystem and InputReader, printing to the console.
      *
      * @param bankingSystem the banking system to interact with
      * @param reader        the input reader for user input
      */
     public BSClient(BankingSystem bankingSystem, InputReader reader) {
+        this(bankingSystem, reader, System.out);
+    }
+
+    /**
+     * Constructs a new BSClient with the specified BankingSystem and InputReader, printing to the given stream.
+     *
+     * @param bankingSystem the banking system to interact with
+     * @param reader        the input reader for user input
+     * @param out           the stream to print menus and messages to
+     */
+    public BSClient(BankingSystem bankingSystem, InputReader reader, PrintStream out) {
+        this(bankingSystem, reader, out, null);
+    }
+
+    /**
+     * Constructs a new BSClient for a remote terminal, printing to the given stream.
+     *
+     * @param bankingSystem the banking system to interact with
+     * @param reader        the input reader for user input
+     * @param out           the stream to print menus and messages to
+     * @param source        the address of the terminal, whose failed logins are limited; null if unknown
+     */
+    public BSClient(BankingSystem bankingSystem, InputReader reader, PrintStream out, String source) {
         this.bankingSystem = bankingSystem;
         this.reader = reader;
+        this.out = out;
+        this.source = source;
     }
 
     /**
@@ -28,10 +56,10 @@ public class BSClient {
                 case "1" -> createAccountFlow();
                 case "2" -> loginFlow();
                 case "3" -> exit = true;
-                default -> System.out.println("Invalid option.");
+                default -> out.println("Invalid option.");
             }
         }
-        System.out.println("Exiting application...");
+        out.println("Exiting application...");
     }
 
     /**
@@ -39,9 +67,9 @@ public class BSClient {
      */
     private void createAccountFlow() {
         try {
-            System.out.println("Your account: " + bankingSystem.createAccount());
+            out.println("Your account: " + bankingSystem.createAccount());
         } catch (DatabaseException e) {
-            System.out.println("Failed to create account: " + e.getMessage());
+            out.println("Failed to create account: " + e.getMessage());
         }
     }
 
@@ -54,13 +82,13 @@ public class BSClient {
         if (cardOpt.isEmpty() || pinOpt.isEmpty()) return;
 
         try {
-            Account current = bankingSystem.login(cardOpt.get(), pinOpt.get());
-            System.out.println("Logged in successfully!");
+            Account current = bankingSystem.login(cardOpt.get(), pinOpt.get(), source);
+            out.println("Logged in successfully!");
             accountMenu(current);
         } catch (IllegalArgumentException e) {
-            System.out.println("Login failed: " + e.getMessage());
+            out.println("Login failed: " + e.getMessage());
         } catch (DatabaseException e) {
-            System.out.println("Database error: " + e.getMessage());
+            out.println("Database error: " + e.getMessage());
         }
     }
 
@@ -79,7 +107,7 @@ public class BSClient {
                 case "3" -> transferFunds(current);
                 case "4" -> logout = closeAccount(current);
                 case "5", "0" -> logout = true;
-                default -> System.out.println("Invalid option.");
+                default -> out.println("Invalid option.");
             }
         }
     }
@@ -90,7 +118,7 @@ public class BSClient {
      * @param current the currently logged-in account
      */
     private void showBalance(Account current) {
-        System.out.println("Balance: " + current.getBalance());
+        out.println("Balance: " + Money.format(current.getBalance()));
     }
 
     /**
@@ -102,11 +130,11 @@ public class BSClient {
         reader.readAmount("Enter income:").ifPresent(amount -> {
             try {
                 bankingSystem.addIncome(current, amount);
-                System.out.println("Income added!");
+                out.println("Income added!");
             } catch (IllegalArgumentException e) {
-                System.out.println("Invalid amount: " + e.getMessage());
+                out.println("Invalid amount: " + e.getMessage());
             } catch (DatabaseException e) {
-                System.out.println("Database error: " + e.getMessage());
+                out.println("Database error: " + e.getMessage());
             }
         });
     }
@@ -122,11 +150,11 @@ public class BSClient {
             reader.readAmount("Enter amount:").ifPresent(amount -> {
                 try {
                     bankingSystem.transferFunds(current, to, amount);
-                    System.out.println("Transfer successful!");
+                    out.println("Transfer successful!");
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Transfer failed: " + e.getMessage());
+                    out.println("Transfer failed: " + e.getMessage());
                 } catch (DatabaseException e) {
-                    System.out.println("Database error: " + e.getMessage());
+                    out.println("Database error: " + e.getMessage());
                 }
             });
         });
@@ -141,13 +169,13 @@ public class BSClient {
     private boolean closeAccount(Account current) {
         try {
             bankingSystem.closeAccount(current);
-            System.out.println("Account closed.");
+            out.println("Account closed.");
             return true;
         } catch (IllegalArgumentException e) {
-            System.out.println("Close failed: " + e.getMessage());
+            out.println("Close failed: " + e.getMessage());
             return false;
         } catch (DatabaseException e) {
-            System.out.println("Database error: " + e.getMessage());
+            out.println("Database error: " + e.getMessage());
             return false;
         }
     }
@@ -160,7 +188,7 @@ public class BSClient {
      */
     private String menu(Runnable printer) {
         printer.run();
-        System.out.println("Enter your choice:");
+        out.println("Enter your choice:");
         return reader.readLine("");
     }
 
@@ -168,22 +196,22 @@ public class BSClient {
      * Prints the main menu options to the console.
      */
     private void printMainMenu() {
-        System.out.println("=== Main menu ===");
-        System.out.println("1. Create an account");
-        System.out.println("2. Log into account");
-        System.out.println("3. Exit");
+        out.println("=== Main menu ===");
+        out.println("1. Create an account");
+        out.println("2. Log into account");
+        out.println("3. Exit");
     }
 
     /**
      * Prints the logged-in account menu options to the console.
      */
     private void printLoggedInMenu() {
-        System.out.println("=== Account menu ===");
-        System.out.println("1. Balance");
-        System.out.println("2. Add income");
-        System.out.println("3. Do transfer");
-        System.out.println("4. Close account");
-        System.out.println("5. Log out");
-        System.out.println("0. Exit");
+        out.println("=== Account menu ===");
+        out.println("1. Balance");
+        out.println("2. Add income");
+        out.println("3. Do transfer");
+        out.println("4. Close account");
+        out.println("5. Log out");
+        out.println("0. Exit");
     }
 }
\ No newline at end of file
@@ -0,0 +1,752 @@
+package dev.shoangenes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Keeps every balance in memory, in primitive arrays indexed by the nine-digit account number embedded in
+ * the card number, and changes them from a single writer thread, so balance operations need no locks and
+ * no database round trip. The arrays are pages of 65,536 accounts, allocated when the first account of their
+ * range opens, so a few account numbers spread across the whole range stay cheap.
+ * <p>
+ * Callers queue commands on a {@link CommandRing} and get a future back. The writer takes whatever commands
+ * are queued as one batch, applies them in order, appends the batch to a {@link CommandJournal} and syncs
+ * it, and only then completes the futures, so an acknowledged command survives a crash. Every balance is
+ * written to a snapshot file whenever the journal grows past a size limit, on request and on close, after
+ * which the journal is emptied. On startup, the snapshot is loaded and the journaled commands after it are
+ * applied again, in their original order, so each is accepted or rejected exactly as it was the first time.
+ * <p>
+ * If neither the journal nor a snapshot can be written, or the writer fails unexpectedly, the engine fails
+ * its pending commands and stops accepting new ones, since it could no longer make them durable.
+ */
+public class BalanceEngine implements AutoCloseable {
+    private static final int DEFAULT_RING_CAPACITY = 64 * 1024;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 4096;
+    private static final long SNAPSHOT_JOURNAL_BYTES = 64L * 1024 * 1024;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final Logger LOG = Logger.getLogger(BalanceEngine.class.getName());
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int SNAPSHOT_MAGIC = 0x42414C31;
+    private static final String SNAPSHOT_FILE = "balances.snapshot";
+    private static final String JOURNAL_FILE = "commands.journal";
+    // Marks an account number that has no account
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    // Command operation codes, as stored in the journal
+    private static final byte OPEN = 1;
+    private static final byte CLOSE = 2;
+    private static final byte DEPOSIT = 3;
+    private static final byte WITHDRAW = 4;
+    private static final byte TRANSFER = 5;
+    private static final byte SNAPSHOT = 6;
+
+    // Command outcomes
+    private static final byte APPLIED = 0;
+    private static final byte UNKNOWN_ACCOUNT = 1;
+    private static final byte INSUFFICIENT_FUNDS = 2;
+    private static final byte ACCOUNT_EXISTS = 3;
+
+    private final Path snapshotPath;
+    private final CommandJournal journal;
+    private final CommandRing ring;
+    private final int maxBatchSize;
+    private final Thread writer;
+    private final LongAdder submitting = new LongAdder();
+    private volatile boolean closed;
+    private volatile long stopAt = -1;
+    private volatile RuntimeException failure;
+
+    // Owned by the writer thread
+    private long[][] pages = new long[0][];
+    private int accountCount;
+    private long lastCommand;
+    private long result;
+
+    // Republished by the writer after every batch, for readers on other threads
+    private volatile long[][] publishedPages;
+    private volatile int publishedAccountCount;
+
+    /**
+     * Constructs a new BalanceEngine with the default ring capacity and batch size, recovering the state
+     * kept in the given directory first.
+     *
+     * @param directory the directory holding the snapshot and the journal; created if missing
+     * @throws UncheckedIOException if the snapshot or the journal cannot be read, or the directory created
+     */
+    public BalanceEngine(Path directory) {
+        this(directory, DEFAULT_RING_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a new BalanceEngine, recovering the state kept in the given directory first.
+     *
+     * @param directory    the directory holding the snapshot and the journal; created if missing
+     * @param ringCapacity the number of commands that may wait for the writer before callers block
+     * @param maxBatchSize the maximum number of commands journaled together
+     * @throws IllegalArgumentException if the capacity or the batch size is not positive
+     * @throws UncheckedIOException     if the snapshot or the journal cannot be read, or the directory created
+     */
+    public BalanceEngine(Path directory, int ringCapacity, int maxBatchSize) {
+        if (ringCapacity <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Ring capacity and batch size must be positive.");
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create balance engine directory " + directory + ".", e);
+        }
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.ring = new CommandRing(ringCapacity);
+        this.maxBatchSize = maxBatchSize;
+
+        loadSnapshot();
+        this.journal = new CommandJournal(directory.resolve(JOURNAL_FILE));
+        recover();
+
+        this.publishedPages = pages;
+        this.publishedAccountCount = accountCount;
+        this.writer = new Thread(this::writeLoop, "balance-engine-writer");
+        writer.start();
+    }
+
+    /**
+     * Opens an account.
+     *
+     * @param cardNumber     the card number of the new account
+     * @param openingBalance the balance the account opens with, in cents
+     * @return a future completed with the opening balance once the account is durable, or failed with an
+     *         IllegalArgumentException if the card number is invalid or taken or the balance is negative
+     */
+    public CompletableFuture<Long> openAccountAsync(String cardNumber, long openingBalance) {
+        if (openingBalance < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("The opening balance must not be negative."));
+        }
+        return submit(OPEN, cardNumber, null, openingBalance);
+    }
+
+    /**
+     * Closes an account.
+     *
+     * @param cardNumber the card number of the account
+     * @return a future completed with the balance the account held once its closing is durable,
+     *         or failed with an IllegalArgumentException if the account does not exist
+     */
+    public CompletableFuture<Long> closeAccountAsync(String cardNumber) {
+        return submit(CLOSE, cardNumber, null, 0);
+    }
+
+    /**
+     * Adds an amount to the balance of an account.
+     *
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to add, in cents
+     * @return a future completed with the new balance once the deposit is durable, or failed with an
+     *         IllegalArgumentException if the amount is not positive or the account does not exist
+     */
+    public CompletableFuture<Long> depositAsync(String cardNumber, long amount) {
+        if (amount <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("The amount must be positive."));
+        }
+        return submit(DEPOSIT, cardNumber, null, amount);
+    }
+
+    /**
+     * Subtracts an amount from the balance of an account, provided the balance covers it.
+     *
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to subtract, in cents
+     * @return a future completed with the new balance once the withdrawal is durable, or failed with an
+     *         IllegalArgumentException if the amount is not positive, the account does not exist or has
+     *         insufficient funds
+     */
+    public CompletableFuture<Long> withdrawAsync(String cardNumber, long amount) {
+        if (amount <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("The amount must be positive."));
+        }
+        return submit(WITHDRAW, cardNumber, null, amount);
+    }
+
+    /**
+     * Transfers funds from one account to another, provided the balance of the source covers them.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return a future completed with the balance of the source account after the transfer once the transfer
+     *         is durable, or failed with an IllegalArgumentException if the transfer is invalid, either account
+     *         does not exist or the source has insufficient funds
+     */
+    public CompletableFuture<Long> transferAsync(String fromCard, String toCard, long amount) {
+        if (fromCard.equals(toCard)) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("You can't transfer money to the same account."));
+        }
+        if (amount <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("The amount must be positive."));
+        }
+        return submit(TRANSFER, fromCard, toCard, amount);
+    }
+
+    /**
+     * Writes every balance to the snapshot file and empties the journal, after every command queued before.
+     *
+     * @return a future completed with the number of the last command the snapshot covers, or failed with
+     *         an UncheckedIOException if the snapshot cannot be written
+     */
+    public CompletableFuture<Long> snapshotAsync() {
+        return submit(SNAPSHOT, null, null, 0);
+    }
+
+    /**
+     * Opens an account and waits until it is durable.
+     *
+     * @param cardNumber     the card number of the new account
+     * @param openingBalance the balance the account opens with, in cents
+     * @return the opening balance, in cents
+     * @throws IllegalArgumentException if the card number is invalid or taken or the balance is negative
+     * @see #openAccountAsync(String, long)
+     */
+    public long openAccount(String cardNumber, long openingBalance) {
+        return await(openAccountAsync(cardNumber, openingBalance));
+    }
+
+    /**
+     * Closes an account and waits until its closing is durable.
+     *
+     * @param cardNumber the card number of the account
+     * @return the balance the account held, in cents
+     * @throws IllegalArgumentException if the account does not exist
+     * @see #closeAccountAsync(String)
+     */
+    public long closeAccount(String cardNumber) {
+        return await(closeAccountAsync(cardNumber));
+    }
+
+    /**
+     * Adds an amount to the balance of an account and waits until the deposit is durable.
+     *
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to add, in cents
+     * @return the new balance, in cents
+     * @throws IllegalArgumentException if the amount is not positive or the account does not exist
+     * @see #depositAsync(String, long)
+     */
+    public long deposit(String cardNumber, long amount) {
+        return await(depositAsync(cardNumber, amount));
+    }
+
+    /**
+     * Subtracts an amount from the balance of an account and waits until the withdrawal is durable.
+     *
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to subtract, in cents
+     * @return the new balance, in cents
+     * @throws IllegalArgumentException if the amount is not positive, the account does not exist
+     *                                  or has insufficient funds
+     * @see #withdrawAsync(String, long)
+     */
+    public long withdraw(String cardNumber, long amount) {
+        return await(withdrawAsync(cardNumber, amount));
+    }
+
+    /**
+     * Transfers funds from one account to another and waits until the transfer is durable.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return the balance of the source account after the transfer, in cents
+     * @throws IllegalArgumentException if the transfer is invalid, either account does not exist
+     *                                  or the source has insufficient funds
+     * @see #transferAsync(String, String, long)
+     */
+    public long transfer(String fromCard, String toCard, long amount) {
+        return await(transferAsync(fromCard, toCard, amount));
+    }
+
+    /**
+     * Writes a snapshot and waits until it is on disk.
+     *
+     * @return the number of the last command the snapshot covers
+     * @throws UncheckedIOException if the snapshot cannot be written
+     * @see #snapshotAsync()
+     */
+    public long snapshot() {
+        return await(snapshotAsync());
+    }
+
+    /**
+     * Reads the balance of an account without queuing a command. The balance reflects at least every command
+     * acknowledged before the call, and may reflect commands of the batch the writer is journaling.
+     *
+     * @param cardNumber the card number of the account
+     * @return the balance in cents, or an empty OptionalLong if the account does not exist
+     */
+    public OptionalLong getBalance(String cardNumber) {
+        long accountNumber = CardGenerator.parseAccountNumber(cardNumber);
+        long[][] current = publishedPages;
+        if (accountNumber < 0 || accountNumber >>> PAGE_SHIFT >= current.length) {
+            return OptionalLong.empty();
+        }
+        long[] page = current[(int) (accountNumber >>> PAGE_SHIFT)];
+        long balance = page == null ? ABSENT : page[(int) accountNumber & PAGE_MASK];
+        return balance == ABSENT ? OptionalLong.empty() : OptionalLong.of(balance);
+    }
+
+    /**
+     * Gets the number of open accounts, as of the last batch.
+     * @return the account count
+     */
+    public int getAccountCount() {
+        return publishedAccountCount;
+    }
+
+    /**
+     * Applies every queued command, stops the writer, writes a final snapshot and closes the journal.
+     *
+     * @throws UncheckedIOException if the final snapshot cannot be written; the journal still holds every command
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        // Once no caller is between its closed check and its publish, nothing more can be queued
+        while (submitting.sum() != 0) {
+            Thread.yield();
+        }
+        stopAt = ring.claimed();
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (failure == null) {
+                writeSnapshot();
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Validates the card numbers of a command and queues it.
+     *
+     * @param op           the operation code
+     * @param cardNumber   the card number of the account, or null for a snapshot
+     * @param counterparty the card number of the other account of a transfer, or null
+     * @param amount       the amount, in cents
+     * @return the future of the command
+     */
+    private CompletableFuture<Long> submit(byte op, String cardNumber, String counterparty, long amount) {
+        long account = cardNumber == null ? 0 : CardGenerator.parseAccountNumber(cardNumber);
+        long other = counterparty == null ? 0 : CardGenerator.parseAccountNumber(counterparty);
+        if (account < 0 || other < 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid card number."));
+        }
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        submitting.increment();
+        try {
+            if (closed || failure != null) {
+                future.completeExceptionally(new IllegalStateException("The balance engine is closed.", failure));
+            } else {
+                ring.publish(op, (int) account, (int) other, amount, future);
+            }
+        } finally {
+            submitting.decrement();
+        }
+        return future;
+    }
+
+    /**
+     * Waits for a command and unwraps its failure.
+     *
+     * @param future the future of the command
+     * @return the result of the command
+     */
+    private static long await(CompletableFuture<Long> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes batches off the ring and applies, journals and acknowledges them until the engine is closed
+     * and every queued command is handled. If a batch fails unexpectedly, the engine is failed along with
+     * the futures of the batch, and the writer keeps draining the ring, failing every later command.
+     */
+    private void writeLoop() {
+        byte[] ops = new byte[maxBatchSize];
+        int[] accounts = new int[maxBatchSize];
+        int[] counterparties = new int[maxBatchSize];
+        long[] amounts = new long[maxBatchSize];
+        byte[] outcomes = new byte[maxBatchSize];
+        long[] results = new long[maxBatchSize];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<Long>[] futures = new CompletableFuture[maxBatchSize];
+
+        long next = 0;
+        while (true) {
+            long stop = stopAt;
+            if (stop >= 0 && next >= stop) break;
+            if (!ring.await(next, IDLE_WAIT_NANOS)) continue;
+
+            int count = 0;
+            while (count < maxBatchSize && ring.isPublished(next + count)) {
+                long sequence = next + count;
+                ops[count] = ring.op(sequence);
+                accounts[count] = ring.account(sequence);
+                counterparties[count] = ring.counterparty(sequence);
+                amounts[count] = ring.amount(sequence);
+                futures[count] = ring.takeFuture(sequence);
+                count++;
+            }
+            next += count;
+
+            try {
+                boolean snapshotRequested = false;
+                long firstCommand = lastCommand + 1;
+                for (int i = 0; i < count; i++) {
+                    if (failure == null) {
+                        outcomes[i] = execute(ops[i], accounts[i], counterparties[i], amounts[i]);
+                        results[i] = result;
+                    }
+                    snapshotRequested |= ops[i] == SNAPSHOT;
+                }
+
+                RuntimeException batchFailure = failure;
+                if (batchFailure == null) {
+                    lastCommand += count;
+                    batchFailure = commit(firstCommand, count, ops, accounts, counterparties, amounts);
+                }
+                ring.release(next);
+                publishedPages = pages;
+                publishedAccountCount = accountCount;
+
+                UncheckedIOException snapshotFailure = null;
+                if (batchFailure == null && (snapshotRequested || journal.size() > SNAPSHOT_JOURNAL_BYTES)) {
+                    try {
+                        writeSnapshot();
+                    } catch (UncheckedIOException e) {
+                        snapshotFailure = e;
+                        LOG.log(Level.WARNING, "Failed to snapshot balances.", e);
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (batchFailure != null) {
+                        futures[i].completeExceptionally(batchFailure);
+                    } else if (ops[i] == SNAPSHOT && snapshotFailure != null) {
+                        futures[i].completeExceptionally(snapshotFailure);
+                    } else {
+                        complete(futures[i], ops[i] == SNAPSHOT ? firstCommand + i : results[i], outcomes[i]);
+                    }
+                    futures[i] = null;
+                }
+            } catch (Throwable t) {
+                RuntimeException stopped = fail(t);
+                ring.release(next);
+                for (int i = 0; i < count; i++) {
+                    if (futures[i] != null) {
+                        futures[i].completeExceptionally(stopped);
+                        futures[i] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails the engine after the writer hit an unexpected error, unless it has failed already.
+     *
+     * @param cause the error
+     * @return the failure the engine stopped with
+     */
+    private RuntimeException fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause instanceof RuntimeException e
+                    ? e
+                    : new IllegalStateException("The balance engine writer failed.", cause);
+            LOG.log(Level.SEVERE, "Balance engine failed.", cause);
+        }
+        return failure;
+    }
+
+    /**
+     * Makes a batch durable in the journal. If the journal cannot be written, the batch is made durable
+     * with a snapshot instead; if that fails too, the engine is failed.
+     *
+     * @return null if the batch is durable, otherwise the failure it was not made durable with
+     */
+    private RuntimeException commit(long firstCommand, int count, byte[] ops, int[] accounts,
+                                    int[] counterparties, long[] amounts) {
+        try {
+            journal.append(firstCommand, count, ops, accounts, counterparties, amounts);
+            return null;
+        } catch (UncheckedIOException e) {
+            // A partly written record would hide every later batch from replay, so replace the journal
+            try {
+                writeSnapshot();
+                return null;
+            } catch (UncheckedIOException snapshotFailure) {
+                failure = snapshotFailure;
+                LOG.log(Level.SEVERE, "Balance engine failed.", snapshotFailure);
+                return snapshotFailure;
+            }
+        }
+    }
+
+    /**
+     * Completes the future of one command with its outcome.
+     *
+     * @param future  the future of the command
+     * @param value   the result of the command
+     * @param outcome the outcome of the command
+     */
+    private static void complete(CompletableFuture<Long> future, long value, byte outcome) {
+        switch (outcome) {
+            case APPLIED -> future.complete(value);
+            case UNKNOWN_ACCOUNT -> future.completeExceptionally(
+                    new IllegalArgumentException("The account does not exist."));
+            case INSUFFICIENT_FUNDS -> future.completeExceptionally(new IllegalArgumentException("Insufficient funds."));
+            case ACCOUNT_EXISTS -> future.completeExceptionally(
+                    new IllegalArgumentException("The account already exists."));
+            default -> future.completeExceptionally(new IllegalStateException("Unknown outcome " + outcome + "."));
+        }
+    }
+
+    /**
+     * Applies one command to the balances. Called by the writer thread, or during recovery.
+     * The resulting balance is left in {@link #result}.
+     *
+     * @param op           the operation code
+     * @param account      the account the command acts on
+     * @param counterparty the other account of a transfer
+     * @param amount       the amount, in cents
+     * @return the outcome of the command
+     */
+    private byte execute(byte op, int account, int counterparty, long amount) {
+        switch (op) {
+            case OPEN -> {
+                if (exists(account)) return ACCOUNT_EXISTS;
+                ensurePage(account);
+                pages[account >>> PAGE_SHIFT][account & PAGE_MASK] = amount;
+                accountCount++;
+                result = amount;
+            }
+            case CLOSE -> {
+                if (!exists(account)) return UNKNOWN_ACCOUNT;
+                result = balance(account);
+                pages[account >>> PAGE_SHIFT][account & PAGE_MASK] = ABSENT;
+                accountCount--;
+            }
+            case DEPOSIT -> {
+                if (!exists(account)) return UNKNOWN_ACCOUNT;
+                result = add(account, amount);
+            }
+            case WITHDRAW -> {
+                if (!exists(account)) return UNKNOWN_ACCOUNT;
+                if (balance(account) < amount) return INSUFFICIENT_FUNDS;
+                result = add(account, -amount);
+            }
+            case TRANSFER -> {
+                if (!exists(account) || !exists(counterparty)) return UNKNOWN_ACCOUNT;
+                if (balance(account) < amount) return INSUFFICIENT_FUNDS;
+                add(counterparty, amount);
+                result = add(account, -amount);
+            }
+            case SNAPSHOT -> result = 0;
+            default -> throw new IllegalStateException("Unknown balance engine command " + op + ".");
+        }
+        return APPLIED;
+    }
+
+    /**
+     * Checks whether an account number has an open account.
+     *
+     * @param account the account number
+     * @return true if the account exists
+     */
+    private boolean exists(int account) {
+        int index = account >>> PAGE_SHIFT;
+        return index < pages.length && pages[index] != null && pages[index][account & PAGE_MASK] != ABSENT;
+    }
+
+    /**
+     * Gets the balance of an open account.
+     *
+     * @param account the account number
+     * @return the balance, in cents
+     */
+    private long balance(int account) {
+        return pages[account >>> PAGE_SHIFT][account & PAGE_MASK];
+    }
+
+    /**
+     * Adds an amount to the balance of an open account.
+     *
+     * @param account the account number
+     * @param amount  the amount to add, in cents; negative to subtract
+     * @return the new balance, in cents
+     */
+    private long add(int account, long amount) {
+        return pages[account >>> PAGE_SHIFT][account & PAGE_MASK] += amount;
+    }
+
+    /**
+     * Allocates the page holding an account number, unless it has one. The page table is copied rather than
+     * changed in place, so readers of the published table never see a page before it is filled.
+     *
+     * @param account the account number
+     */
+    private void ensurePage(int account) {
+        int index = account >>> PAGE_SHIFT;
+        if (index < pages.length && pages[index] != null) return;
+        long[] page = new long[PAGE_SIZE];
+        Arrays.fill(page, ABSENT);
+        long[][] grown = Arrays.copyOf(pages, Math.max(pages.length, index + 1));
+        grown[index] = page;
+        pages = grown;
+    }
+
+    /**
+     * Applies every journaled command the snapshot does not cover, then snapshots and empties the journal.
+     *
+     * @throws UncheckedIOException if the journal cannot be read or the snapshot written
+     */
+    private void recover() {
+        long covered = lastCommand;
+        journal.replay((command, op, account, counterparty, amount) -> {
+            if (command > covered) {
+                execute(op, account, counterparty, amount);
+                lastCommand = command;
+            }
+        });
+        if (journal.size() > 0) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Loads the snapshot file, if there is one.
+     *
+     * @throws UncheckedIOException if the snapshot cannot be read or is corrupt
+     */
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) return;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotPath), 64 * 1024), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a balance snapshot.");
+            }
+            lastCommand = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int account = in.readInt();
+                long balance = in.readLong();
+                ensurePage(account);
+                pages[account >>> PAGE_SHIFT][account & PAGE_MASK] = balance;
+            }
+            accountCount = count;
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Checksum mismatch.");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load balance snapshot " + snapshotPath + ".", e);
+        }
+    }
+
+    /**
+     * Writes every balance to the snapshot file and empties the journal. The snapshot is written to a temporary
+     * file, which is synced and then renamed into place, so a crash leaves either the old or the new snapshot.
+     * The directory is synced after the rename, so the journal is only emptied once the new snapshot is sure
+     * to be found after a crash.
+     *
+     * @throws UncheckedIOException if the snapshot cannot be written
+     */
+    private void writeSnapshot() {
+        Path temp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), crc));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(lastCommand);
+                out.writeInt(accountCount);
+                for (int index = 0; index < pages.length; index++) {
+                    long[] page = pages[index];
+                    if (page == null) continue;
+                    for (int offset = 0; offset < PAGE_SIZE; offset++) {
+                        if (page[offset] != ABSENT) {
+                            out.writeInt(index << PAGE_SHIFT | offset);
+                            out.writeLong(page[offset]);
+                        }
+                    }
+                }
+                out.writeInt((int) crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(snapshotPath.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write balance snapshot " + snapshotPath + ".", e);
+        }
+        journal.reset();
+    }
+
+    /**
+     * Syncs a directory, making the renames in it durable. Skipped on platforms that cannot open a directory,
+     * such as Windows, whose file systems make renames durable without it.
+     *
+     * @param directory the directory to sync
+     * @throws IOException if the directory was opened but cannot be synced
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package dev.shoangenes;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact one-line-per-operation text protocol for machine clients, mapped directly onto
+ * {@link BankingSystem} methods. Every request is a single line of space-separated words and gets a
+ * single line back, either {@code OK ...} or {@code ERR <message>}. Requests carry the card and PIN,
+ * so no session state is kept between them. Amounts and balances are decimals with two places.
+ *
+ * <pre>
+ * CREATE                               -> OK &lt;card&gt; &lt;pin&gt;
+ * LOGIN    &lt;card&gt; &lt;pin&gt;                -> OK &lt;balance&gt;
+ * BALANCE  &lt;card&gt; &lt;pin&gt;                -> OK &lt;balance&gt;
+ * INCOME   &lt;card&gt; &lt;pin&gt; &lt;amount&gt;       -> OK &lt;balance&gt;
+ * TRANSFER &lt;card&gt; &lt;pin&gt; &lt;to&gt; &lt;amount&gt;  -> OK &lt;balance&gt;
+ * CLOSE    &lt;card&gt; &lt;pin&gt;                -> OK
+ * </pre>
+ */
+public class BankProtocol {
+    private static final Logger LOG = Logger.getLogger(BankProtocol.class.getName());
+
+    private final BankingSystem bankingSystem;
+
+    /**
+     * Constructs a new BankProtocol on top of the given banking system.
+     *
+     * @param bankingSystem the banking system to run requests against
+     */
+    public BankProtocol(BankingSystem bankingSystem) {
+        this.bankingSystem = bankingSystem;
+    }
+
+    /**
+     * Handles one request line from a client of unknown address.
+     *
+     * @param request the request, without its line terminator
+     * @return the response, without its line terminator
+     */
+    public String handle(String request) {
+        return handle(request, null);
+    }
+
+    /**
+     * Handles one request line. Unexpected failures are logged and answered with {@code ERR Request failed.},
+     * so every request gets a response.
+     *
+     * @param request the request, without its line terminator
+     * @param source  the address of the client, whose failed logins are limited; null if unknown
+     * @return the response, without its line terminator
+     */
+    public String handle(String request, String source) {
+        String[] words = request.trim().split(" +");
+        try {
+            return switch (words[0].toUpperCase()) {
+                case "CREATE" -> {
+                    expect(words, 1);
+                    Account account = bankingSystem.createAccount();
+                    yield "OK " + account.getNumber() + " " + account.getPin();
+                }
+                case "LOGIN", "BALANCE" -> {
+                    expect(words, 3);
+                    yield ok(login(words, source).getBalance());
+                }
+                case "INCOME" -> {
+                    expect(words, 4);
+                    yield ok(bankingSystem.addIncome(login(words, source), Money.parse(words[3])));
+                }
+                case "TRANSFER" -> {
+                    expect(words, 5);
+                    Account from = login(words, source);
+                    bankingSystem.transferFunds(from, words[3], Money.parse(words[4]));
+                    yield ok(from.getBalance());
+                }
+                case "CLOSE" -> {
+                    expect(words, 3);
+                    bankingSystem.closeAccount(login(words, source));
+                    yield "OK";
+                }
+                default -> "ERR Unknown command.";
+            };
+        } catch (NumberFormatException e) {
+            return "ERR Invalid amount.";
+        } catch (IllegalArgumentException | DatabaseException e) {
+            return "ERR " + e.getMessage();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Request failed: " + words[0], e);
+            return "ERR Request failed.";
+        }
+    }
+
+    /**
+     * Logs in with the card and PIN of a request.
+     *
+     * @param words  the words of the request
+     * @param source the address of the client, or null if unknown
+     * @return the logged-in account
+     * @throws IllegalArgumentException if the login is locked out, the account does not exist or the PIN is wrong
+     */
+    private Account login(String[] words, String source) {
+        return bankingSystem.login(words[1], words[2], source);
+    }
+
+    /**
+     * Checks the number of words in a request.
+     *
+     * @param words    the words of the request
+     * @param expected the number of words the command takes, itself included
+     * @throws IllegalArgumentException if the count differs
+     */
+    private static void expect(String[] words, int expected) {
+        if (words.length != expected) {
+            throw new IllegalArgumentException("Expected " + (expected - 1) + " arguments.");
+        }
+    }
+
+    /**
+     * Formats a successful response carrying a balance.
+     *
+     * @param balance the balance, in cents
+     * @return the response
+     */
+    private static String ok(long balance) {
+        return "OK " + Money.format(balance);
+    }
+}
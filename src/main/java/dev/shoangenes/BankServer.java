@@ -0,0 +1,187 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the interactive banking menus over TCP. Every connection gets its own {@link BSClient} session
+ * running on its own thread, while all sessions share one thread-safe {@link BankingSystem}.
+ * <p>
+ * Sessions run on virtual threads when the JVM supports them (Java 21+), so thousands of mostly idle
+ * terminals cost little more than their sockets; older JVMs fall back to one platform thread per session.
+ */
+public class BankServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(BankServer.class.getName());
+
+    private final BankingSystem bankingSystem;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new BankServer and binds it to the given port on all interfaces.
+     * Call {@link #start()} to begin accepting connections.
+     *
+     * @param bankingSystem the banking system shared by all sessions
+     * @param port          the port to listen on, or 0 for any free port
+     * @throws UncheckedIOException if the port cannot be bound
+     */
+    public BankServer(BankingSystem bankingSystem, int port) {
+        this(bankingSystem, new InetSocketAddress(port));
+    }
+
+    /**
+     * Constructs a new BankServer and binds it to the given address.
+     * Call {@link #start()} to begin accepting connections.
+     *
+     * @param bankingSystem the banking system shared by all sessions
+     * @param address       the address to listen on
+     * @throws UncheckedIOException if the address cannot be bound
+     */
+    public BankServer(BankingSystem bankingSystem, InetSocketAddress address) {
+        this.bankingSystem = bankingSystem;
+        try {
+            this.serverSocket = new ServerSocket();
+            serverSocket.bind(address, 4096);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bind server to " + address + ".", e);
+        }
+        this.sessions = newSessionExecutor();
+        this.acceptor = new Thread(this::acceptLoop, "bank-server-acceptor");
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void awaitClose() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of sessions currently connected.
+     * @return the active session count
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Stops accepting connections and disconnects every open session.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+    }
+
+    /**
+     * Accepts connections until the server is closed, handing each to a new session.
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                openSockets.add(socket);
+                sessions.execute(() -> runSession(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.log(Level.WARNING, "Failed to accept connection.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the interactive menus for one connection until the user exits or disconnects.
+     *
+     * @param socket the connection of the session
+     */
+    private void runSession(Socket socket) {
+        activeSessions.incrementAndGet();
+        try (socket) {
+            Scanner scanner = new Scanner(socket.getInputStream(), StandardCharsets.UTF_8);
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            new BSClient(bankingSystem, new InputReader(scanner, out), out,
+                    socket.getInetAddress().getHostAddress()).run();
+        } catch (NoSuchElementException | IOException e) {
+            // The terminal disconnected
+        } finally {
+            openSockets.remove(socket);
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Creates the executor sessions run on: one virtual thread per session when available,
+     * one platform thread per session otherwise.
+     *
+     * @return the session executor
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "bank-session-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     *
+     * @param socket the socket to close
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
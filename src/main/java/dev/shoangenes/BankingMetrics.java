@@ -0,0 +1,143 @@
+package dev.shoangenes;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Throughput, error counts and latency histograms of the operations of one {@link BankingSystem}.
+ * Recording a call takes a few uncontended {@code LongAdder} updates and no lock. The metrics can be read
+ * in code, dumped as text, or registered as an MXBean and read with any JMX client, e.g. JConsole.
+ */
+public class BankingMetrics implements BankingMetricsMXBean {
+    public static final String OBJECT_NAME = "dev.shoangenes:type=BankingMetrics";
+
+    /**
+     * The operations whose calls are measured.
+     */
+    public enum Operation {
+        CREATE_ACCOUNT("createAccount"),
+        LOGIN("login"),
+        TRANSFER_FUNDS("transferFunds"),
+        ADD_INCOME("addIncome"),
+        SUBTRACT_INCOME("subtractIncome"),
+        CLOSE_ACCOUNT("closeAccount");
+
+        private final String label;
+
+        /**
+         * Constructs an Operation.
+         * @param label the name of the BankingSystem method
+         */
+        Operation(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Gets the name of the BankingSystem method.
+         * @return the label
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final OperationMetrics[] operations = new OperationMetrics[Operation.values().length];
+
+    /**
+     * Constructs a new BankingMetrics with every count at zero.
+     */
+    public BankingMetrics() {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new OperationMetrics();
+        }
+    }
+
+    /**
+     * Gets the metrics of one operation.
+     *
+     * @param operation the operation
+     * @return its metrics
+     */
+    public OperationMetrics get(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    @Override
+    public OperationMetrics getCreateAccount() {
+        return get(Operation.CREATE_ACCOUNT);
+    }
+
+    @Override
+    public OperationMetrics getLogin() {
+        return get(Operation.LOGIN);
+    }
+
+    @Override
+    public OperationMetrics getTransferFunds() {
+        return get(Operation.TRANSFER_FUNDS);
+    }
+
+    @Override
+    public OperationMetrics getAddIncome() {
+        return get(Operation.ADD_INCOME);
+    }
+
+    @Override
+    public OperationMetrics getSubtractIncome() {
+        return get(Operation.SUBTRACT_INCOME);
+    }
+
+    @Override
+    public OperationMetrics getCloseAccount() {
+        return get(Operation.CLOSE_ACCOUNT);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder report = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = get(operation);
+            report.append(operation.getLabel())
+                    .append(": calls=").append(metrics.getCalls())
+                    .append(" rejected=").append(metrics.getRejections())
+                    .append(" failed=").append(metrics.getFailures())
+                    .append(System.lineSeparator())
+                    .append("  validation ").append(metrics.getValidation()).append(System.lineSeparator())
+                    .append("  database   ").append(metrics.getDatabase()).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (OperationMetrics metrics : operations) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under {@link #OBJECT_NAME}.
+     *
+     * @throws IllegalStateException if the metrics cannot be registered, e.g. because other metrics already are
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register banking metrics.", e);
+        }
+    }
+
+    /**
+     * Records one call of an operation.
+     *
+     * @param operation     the operation
+     * @param totalNanos    the duration of the call, in nanoseconds
+     * @param databaseNanos the part of it spent in the account store, in nanoseconds
+     * @param failure       the exception the call threw, or null if it succeeded
+     */
+    void record(Operation operation, long totalNanos, long databaseNanos, RuntimeException failure) {
+        operations[operation.ordinal()].record(totalNanos, databaseNanos, failure);
+    }
+}
@@ -0,0 +1,55 @@
+package dev.shoangenes;
+
+/**
+ * JMX view of {@link BankingMetrics}. Each operation is exposed as composite data holding its counters
+ * and its validation and database latencies.
+ */
+public interface BankingMetricsMXBean {
+
+    /**
+     * Gets the metrics of account creation.
+     * @return the createAccount metrics
+     */
+    OperationMetrics getCreateAccount();
+
+    /**
+     * Gets the metrics of logins.
+     * @return the login metrics
+     */
+    OperationMetrics getLogin();
+
+    /**
+     * Gets the metrics of transfers.
+     * @return the transferFunds metrics
+     */
+    OperationMetrics getTransferFunds();
+
+    /**
+     * Gets the metrics of deposits.
+     * @return the addIncome metrics
+     */
+    OperationMetrics getAddIncome();
+
+    /**
+     * Gets the metrics of withdrawals.
+     * @return the subtractIncome metrics
+     */
+    OperationMetrics getSubtractIncome();
+
+    /**
+     * Gets the metrics of account closures.
+     * @return the closeAccount metrics
+     */
+    OperationMetrics getCloseAccount();
+
+    /**
+     * Formats the metrics of every operation as text, one block per operation.
+     * @return the report
+     */
+    String dump();
+
+    /**
+     * Discards every count and recorded latency.
+     */
+    void reset();
+}
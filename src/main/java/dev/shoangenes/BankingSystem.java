@@ -1,86 +1,346 @@
 package dev.shoangenes;
 
-import java.util.function.BiFunction;
-import java.util.function.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 
-public class BankingSystem {
-    private final DatabaseManager db;
+public class BankingSystem implements AutoCloseable {
+    private static final int PROVISIONING_CHUNK_SIZE = 5_000;
+    private static final int DEFAULT_LOCK_STRIPES = 1024;
+    // System property choosing the store at startup: "memory", or the JDBC URL of a SQLite database
+    private static final String STORE_PROPERTY = "bank.store";
+    private static final String MEMORY_STORE = "memory";
+    private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+    private static final int PIN_MIGRATION_BATCH_SIZE = 1000;
+    private static final int LOGIN_THROTTLE_CAPACITY = 65_536;
+    private static final int CARD_MAX_FAILURES = 5;
+    private static final long CARD_FAILURE_WINDOW_MINUTES = 15;
+    private static final long CARD_LOCKOUT_MINUTES = 15;
+    private static final int SOURCE_MAX_FAILURES = 50;
+    private static final long SOURCE_FAILURE_WINDOW_MINUTES = 1;
+    private static final long SOURCE_LOCKOUT_MINUTES = 5;
+
+    private final TimedAccountStore db;
     private final CardGenerator cg;
+    private final StripedLocks locks;
+    private final PinVerifier pins;
+    private final boolean ownsPins;
+    private final LoginThrottle cardLogins;
+    private final LoginThrottle sourceLogins;
+    private final BankingMetrics metrics = new BankingMetrics();
 
     /**
-     * Constructs a new BankingSystem with a DatabaseManager and CardGenerator.
+     * Constructs a new BankingSystem on the store chosen by the {@code bank.store} system property:
+     * {@code memory} for an in-memory store, or the JDBC URL of a SQLite database. Without the property,
+     * accounts are stored in the default database file.
      *
      * @throws DatabaseException if a database access error occurs during initialization
      */
     public BankingSystem() {
+        this(openDefaultStore());
+    }
+
+    /**
+     * Constructs a new BankingSystem on top of the given store.
+     *
+     * @param db the store to keep accounts in
+     * @throws DatabaseException if a database access error occurs during initialization
+     */
+    public BankingSystem(AccountStore db) {
+        this(db, DEFAULT_LOCK_STRIPES);
+    }
+
+    /**
+     * Constructs a new BankingSystem on top of the given store, with the given number of lock stripes.
+     * Balance operations on the same account are serialized by the stripe its card number hashes to.
+     * The system creates its own PIN verifier, which {@link #close()} stops.
+     *
+     * @param db          the store to keep accounts in
+     * @param lockStripes the number of lock stripes accounts are spread over
+     * @throws DatabaseException if a database access error occurs during initialization
+     */
+    public BankingSystem(AccountStore db, int lockStripes) {
+        this(db, lockStripes, new PinVerifier(), true);
+    }
+
+    /**
+     * Constructs a new BankingSystem on top of the given store, with the given number of lock stripes
+     * and the given PIN verifier.
+     *
+     * @param db          the store to keep accounts in
+     * @param lockStripes the number of lock stripes accounts are spread over
+     * @param pins        the verifier PINs are hashed and checked with; left open by {@link #close()}
+     * @throws DatabaseException if a database access error occurs during initialization
+     */
+    public BankingSystem(AccountStore db, int lockStripes, PinVerifier pins) {
+        this(db, lockStripes, pins, false);
+    }
+
+    /**
+     * Constructs a new BankingSystem with the default limits on failed logins.
+     *
+     * @param db          the store to keep accounts in
+     * @param lockStripes the number of lock stripes accounts are spread over
+     * @param pins        the verifier PINs are hashed and checked with
+     * @param ownsPins    whether the verifier was created for this system, and is stopped by {@link #close()}
+     * @throws DatabaseException if a database access error occurs during initialization
+     */
+    private BankingSystem(AccountStore db, int lockStripes, PinVerifier pins, boolean ownsPins) {
+        this(db, lockStripes, pins, ownsPins,
+                new LoginThrottle(LOGIN_THROTTLE_CAPACITY, CARD_MAX_FAILURES,
+                        CARD_FAILURE_WINDOW_MINUTES, CARD_LOCKOUT_MINUTES, TimeUnit.MINUTES),
+                new LoginThrottle(LOGIN_THROTTLE_CAPACITY, SOURCE_MAX_FAILURES,
+                        SOURCE_FAILURE_WINDOW_MINUTES, SOURCE_LOCKOUT_MINUTES, TimeUnit.MINUTES));
+    }
+
+    /**
+     * Constructs a new BankingSystem on top of the given store, with the given number of lock stripes,
+     * the given PIN verifier and the given limits on failed logins.
+     *
+     * @param db           the store to keep accounts in
+     * @param lockStripes  the number of lock stripes accounts are spread over
+     * @param pins         the verifier PINs are hashed and checked with; left open by {@link #close()}
+     * @param cardLogins   the limit on failed logins per card number
+     * @param sourceLogins the limit on failed logins per client address
+     * @throws DatabaseException if a database access error occurs during initialization
+     */
+    public BankingSystem(AccountStore db, int lockStripes, PinVerifier pins,
+                         LoginThrottle cardLogins, LoginThrottle sourceLogins) {
+        this(db, lockStripes, pins, false, cardLogins, sourceLogins);
+    }
+
+    /**
+     * Constructs a new BankingSystem. A verifier created for this system is stopped again if initialization fails.
+     *
+     * @param db           the store to keep accounts in
+     * @param lockStripes  the number of lock stripes accounts are spread over
+     * @param pins         the verifier PINs are hashed and checked with
+     * @param ownsPins     whether the verifier was created for this system, and is stopped by {@link #close()}
+     * @param cardLogins   the limit on failed logins per card number
+     * @param sourceLogins the limit on failed logins per client address
+     * @throws DatabaseException if a database access error occurs during initialization
+     */
+    private BankingSystem(AccountStore db, int lockStripes, PinVerifier pins, boolean ownsPins,
+                          LoginThrottle cardLogins, LoginThrottle sourceLogins) {
         try {
-            db = new DatabaseManager();
-            cg = new CardGenerator();
+            this.db = new TimedAccountStore(db);
+            this.locks = new StripedLocks(lockStripes);
+            this.pins = pins;
+            this.ownsPins = ownsPins;
+            this.cardLogins = cardLogins;
+            this.sourceLogins = sourceLogins;
+            cg = new CardGenerator(db);
+        } catch (DatabaseException e) {
+            if (ownsPins) {
+                pins.close();
+            }
+            throw new DatabaseException("Failed to initialize the banking system.", e);
+        } catch (RuntimeException e) {
+            if (ownsPins) {
+                pins.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the store chosen by the {@code bank.store} system property, or the default database file.
+     *
+     * @return the store
+     * @throws DatabaseException if a database access error occurs
+     */
+    private static AccountStore openDefaultStore() {
+        String store = System.getProperty(STORE_PROPERTY);
+        try {
+            if (MEMORY_STORE.equals(store)) {
+                return new InMemoryAccountStore();
+            }
+            return store == null ? new DatabaseManager() : new DatabaseManager(store);
         } catch (DatabaseException e) {
             throw new DatabaseException("Failed to initialize the banking system.", e);
         }
     }
 
     // Functional interfaces for validation
-    private final BiFunction<Account, Double, Boolean> hasFunds = (account, amount) -> account.getBalance() >= amount;
-    private final Predicate<Double> isPositiveAmount = amount -> amount > 0;
+    private final LongPredicate isPositiveAmount = amount -> amount > 0;
 
     /**
-     * Creates a new account with a unique card number and PIN, and stores it in the database.
+     * Creates a new account with a unique card number and PIN, and stores it in the database
+     * with its PIN hashed.
      *
-     * @return the newly created Account
+     * @return the newly created Account, holding its plaintext PIN so it can be shown to the user
      * @throws DatabaseException if a database access error occurs during account creation
      */
     public Account createAccount() {
+        return timed(BankingMetrics.Operation.CREATE_ACCOUNT, () -> {
+            try {
+                String cardNumber = cg.generateCardNumber();
+                String pin = cg.generatePin();
+                db.insertAccount(new Account(cardNumber, pins.hash(pin), 0));
+                return new Account(cardNumber, pin, 0);
+            } catch (DatabaseException e) {
+                throw new DatabaseException("Failed to create account.", e);
+            }
+        });
+    }
+
+    /**
+     * Creates many accounts at once. Card numbers are reserved in contiguous ranges and each chunk of accounts
+     * is written with one batched transaction. Accounts are handed to the sink as soon as their chunk is committed,
+     * so callers can stream them out without holding the whole batch in memory.
+     * The PINs of a chunk are hashed in parallel on the PIN verifier's pool.
+     *
+     * @param count the number of accounts to create
+     * @param sink  receives every created account with its plaintext PIN, in card number order
+     * @return the number of accounts created
+     * @throws IllegalArgumentException if the count is not positive
+     * @throws DatabaseException        if a database access error occurs; chunks already handed to the sink stay committed
+     */
+    public int createAccounts(int count, Consumer<Account> sink) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("The number of accounts must be positive.");
+        }
+
+        int created = 0;
         try {
-            String cardNumber = cg.generateCardNumber(db);
-            String pin = cg.generatePin();
-            Account newAccount = new Account(cardNumber, pin, 0.0);
-            db.insertAccount(newAccount);
-            return newAccount;
+            while (created < count) {
+                int chunkSize = Math.min(PROVISIONING_CHUNK_SIZE, count - created);
+                String[] cardNumbers = cg.generateCardNumbers(chunkSize);
+                List<String> chunkPins = new ArrayList<>(chunkSize);
+                for (int i = 0; i < chunkSize; i++) {
+                    chunkPins.add(cg.generatePin());
+                }
+                List<String> hashes = pins.hashAll(chunkPins);
+
+                List<Account> stored = new ArrayList<>(chunkSize);
+                for (int i = 0; i < chunkSize; i++) {
+                    stored.add(new Account(cardNumbers[i], hashes.get(i), 0));
+                }
+                db.insertAccounts(stored);
+                for (int i = 0; i < chunkSize; i++) {
+                    sink.accept(new Account(cardNumbers[i], chunkPins.get(i), 0));
+                }
+                created += chunkSize;
+            }
+            return created;
         } catch (DatabaseException e) {
-            throw new DatabaseException("Failed to create account.", e);
+            throw new DatabaseException("Failed to create accounts after " + created + " of " + count + ".", e);
         }
     }
 
     /**
-     * Logs in to an account using the provided card number and PIN.
+     * Logs in to an account using the provided card number and PIN, without a known client address.
      *
      * @param cardNumber the card number of the account
      * @param pin        the PIN of the account
      * @return the Account if login is successful
-     * @throws IllegalArgumentException if the account does not exist or the PIN is incorrect
+     * @throws IllegalArgumentException if the card is locked out, the account does not exist or the PIN is incorrect
      * @throws DatabaseException        if a database access error occurs during login
+     * @see #login(String, String, String)
      */
     public Account login(String cardNumber, String pin) {
-        try {
-            Account account = db.getAccount(cardNumber)
-                    .orElseThrow(() -> new IllegalArgumentException("The account does not exist."));
-            if (!account.getPin().equals(pin)) {
-                throw new IllegalArgumentException("Wrong PIN.");
+        return login(cardNumber, pin, null);
+    }
+
+    /**
+     * Logs in to an account using the provided card number and PIN. The PIN is checked against its stored hash
+     * on the PIN verifier's bounded pool, or against a recent successful login of the same session.
+     * A PIN still stored in plaintext, or hashed with outdated settings, is rehashed on a successful login.
+     * <p>
+     * Cards and client addresses that failed too often recently are locked out for a while. Their attempts are
+     * turned away before the database is queried or a PIN is hashed, so guessing PINs cannot load either.
+     * Each attempt reserves its place under both limits before the PIN is checked, so concurrent guesses
+     * cannot run past them; the reservation is given back unless the attempt fails.
+     *
+     * @param cardNumber the card number of the account
+     * @param pin        the PIN of the account
+     * @param source     the address of the client logging in, or null if unknown
+     * @return the Account if login is successful
+     * @throws IllegalArgumentException if the card or the client is locked out, the account does not exist
+     *                                  or the PIN is incorrect
+     * @throws DatabaseException        if a database access error occurs during login
+     */
+    public Account login(String cardNumber, String pin, String source) {
+        return timed(BankingMetrics.Operation.LOGIN, () -> {
+            long lockedFor = cardLogins.tryAcquire(cardNumber);
+            if (lockedFor == 0) {
+                lockedFor = sourceLogins.tryAcquire(source);
+                if (lockedFor > 0) {
+                    cardLogins.release(cardNumber);
+                }
             }
-            return account;
-        } catch (DatabaseException e) {
-            throw new DatabaseException("Failed to login.", e);
-        }
+            if (lockedFor > 0) {
+                throw new IllegalArgumentException("Too many failed logins. Try again in "
+                        + TimeUnit.MILLISECONDS.toSeconds(lockedFor + 999) + " seconds.");
+            }
+
+            boolean failed = false;
+            try {
+                Account account = db.getAccount(cardNumber).orElse(null);
+                if (account == null || !pins.verify(cardNumber, pin, account.getPin())) {
+                    failed = true;
+                    cardLogins.recordFailure(cardNumber);
+                    sourceLogins.recordFailure(source);
+                    throw new IllegalArgumentException(account == null ? "The account does not exist." : "Wrong PIN.");
+                }
+                if (pins.needsRehash(account.getPin())) {
+                    String hash = pins.hash(pin);
+                    db.replacePins(List.of(new AccountStore.PinChange(cardNumber, account.getPin(), hash)));
+                    account.setPin(hash);
+                }
+                return account;
+            } catch (DatabaseException e) {
+                throw new DatabaseException("Failed to login.", e);
+            } finally {
+                if (!failed) {
+                    cardLogins.release(cardNumber);
+                    sourceLogins.release(source);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the limit on failed logins per card number, e.g. to read its metrics.
+     * @return the per-card login throttle
+     */
+    public LoginThrottle getCardLogins() {
+        return cardLogins;
+    }
+
+    /**
+     * Gets the limit on failed logins per client address, e.g. to read its metrics.
+     * @return the per-client login throttle
+     */
+    public LoginThrottle getSourceLogins() {
+        return sourceLogins;
+    }
+
+    /**
+     * Gets the throughput, error counts and latencies of the operations of this system.
+     * @return the metrics
+     */
+    public BankingMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Transfers funds from one account to another.
+     * Transfers funds from one account to another. The funds check and both balance changes happen atomically
+     * in the database, so concurrent transfers cannot overdraw the source account.
+     * On success the balance of {@code fromAccount} is refreshed from the database.
      *
      * @param fromAccount the account to transfer funds from
      * @param toAccount   the card number of the account to transfer funds to
-     * @param amount      the amount to transfer
+     * @param amount      the amount to transfer, in cents
      * @throws IllegalArgumentException if the destination account does not exist, if transferring to the same account,
      *                                  if the amount is not positive, or if there are insufficient funds
      * @throws DatabaseException        if a database access error occurs during the transfer
      */
-    public void transferFunds(Account fromAccount, String toAccount, double amount) {
-        try {
-            Account toAccountObj = db.getAccount(toAccount)
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "The account with card " + toAccount + " does not exist."));
-
+    public void transferFunds(Account fromAccount, String toAccount, long amount) {
+        timed(BankingMetrics.Operation.TRANSFER_FUNDS, () -> {
             if (fromAccount.getNumber().equals(toAccount)) {
                 throw new IllegalArgumentException("You can't transfer money to the same account.");
             }
@@ -89,66 +349,136 @@ public class BankingSystem {
                 throw new IllegalArgumentException("The amount must be positive.");
             }
 
-            if (!hasFunds.apply(fromAccount, amount)) {
-                throw new IllegalArgumentException("Insufficient funds.");
-            }
+            locks.lockBoth(fromAccount.getNumber(), toAccount);
+            try {
+                if (db.getAccount(toAccount).isEmpty()) {
+                    throw new IllegalArgumentException("The account with card " + toAccount + " does not exist.");
+                }
 
-            fromAccount.setBalance(fromAccount.getBalance() - amount);
-            db.transfer(fromAccount, toAccountObj, amount);
+                long newBalance = db.transfer(fromAccount.getNumber(), toAccount, amount)
+                        .orElseThrow(() -> new IllegalArgumentException("Insufficient funds."));
+                fromAccount.setBalance(newBalance);
 
-        } catch (DatabaseException e) {
-            throw new DatabaseException("Failed to transfer funds.", e);
-        }
+            } catch (DatabaseException e) {
+                throw new DatabaseException("Failed to transfer funds.", e);
+            } finally {
+                locks.unlockBoth(fromAccount.getNumber(), toAccount);
+            }
+        });
     }
 
     /**
-     * Subtracts income from the specified account.
+     * Subtracts income from the specified account. The funds check and the update happen atomically
+     * in the database, and the account is refreshed with the resulting balance.
      *
      * @param account the account to subtract income from
-     * @param amount  the amount to subtract
-     * @return the new balance of the account
+     * @param amount  the amount to subtract, in cents
+     * @return the new balance of the account, in cents
      * @throws IllegalArgumentException if the amount is not positive or if there are insufficient funds
      * @throws DatabaseException        if a database access error occurs during the operation
      */
-    public double subtractIncome(Account account, double amount) {
-        if (!isPositiveAmount.test(amount)) {
-            throw new IllegalArgumentException("Transfer amount must be positive.");
-        }
-        if (!hasFunds.apply(account, amount)) {
-            throw new IllegalArgumentException("Insufficient funds for transfer.");
-        }
-
-        account.setBalance(account.getBalance() - amount);
+    public long subtractIncome(Account account, long amount) {
+        return timed(BankingMetrics.Operation.SUBTRACT_INCOME, () -> {
+            if (!isPositiveAmount.test(amount)) {
+                throw new IllegalArgumentException("Transfer amount must be positive.");
+            }
 
-        try {
-            db.updateBalance(account.getNumber(), account.getBalance());
-            return account.getBalance();
-        } catch (DatabaseException e) {
-            throw new DatabaseException("Failed to subtract income.", e);
-        }
+            locks.lock(account.getNumber());
+            try {
+                long newBalance = db.withdraw(account.getNumber(), amount)
+                        .orElseThrow(() -> new IllegalArgumentException("Insufficient funds for transfer."));
+                account.setBalance(newBalance);
+                return newBalance;
+            } catch (DatabaseException e) {
+                throw new DatabaseException("Failed to subtract income.", e);
+            } finally {
+                locks.unlock(account.getNumber());
+            }
+        });
     }
 
     /**
-     * Adds income to the specified account.
+     * Adds income to the specified account. The update happens atomically in the database,
+     * and the account is refreshed with the resulting balance.
      *
      * @param account the account to add income to
-     * @param amount  the amount to add
-     * @return the new balance of the account
-     * @throws IllegalArgumentException if the amount is not positive
+     * @param amount  the amount to add, in cents
+     * @return the new balance of the account, in cents
+     * @throws IllegalArgumentException if the amount is not positive or if the account does not exist
      * @throws DatabaseException        if a database access error occurs during the operation
      */
-    public double addIncome(Account account, double amount) {
-        if (!isPositiveAmount.test(amount)) {
-            throw new IllegalArgumentException("Income amount must be positive.");
+    public long addIncome(Account account, long amount) {
+        return timed(BankingMetrics.Operation.ADD_INCOME, () -> {
+            if (!isPositiveAmount.test(amount)) {
+                throw new IllegalArgumentException("Income amount must be positive.");
+            }
+
+            locks.lock(account.getNumber());
+            try {
+                long newBalance = db.deposit(account.getNumber(), amount)
+                        .orElseThrow(() -> new IllegalArgumentException("The account does not exist."));
+                account.setBalance(newBalance);
+                return newBalance;
+            } catch (DatabaseException e) {
+                throw new DatabaseException("Failed to add income.", e);
+            } finally {
+                locks.unlock(account.getNumber());
+            }
+        });
+    }
+
+    /**
+     * Retrieves one page of the history of an account, newest entries first. Pass
+     * {@link LedgerPage.Cursor#FIRST} for the first page and the next cursor of each page for the one after it.
+     *
+     * @param account  the account whose history to read
+     * @param cursor   where the page starts
+     * @param pageSize the maximum number of entries in the page
+     * @return the page
+     * @throws IllegalArgumentException if the page size is not between 1 and 1000
+     * @throws DatabaseException        if a database access error occurs
+     */
+    public LedgerPage getHistory(Account account, LedgerPage.Cursor cursor, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_HISTORY_PAGE_SIZE) {
+            throw new IllegalArgumentException("The page size must be between 1 and " + MAX_HISTORY_PAGE_SIZE + ".");
         }
 
-        account.setBalance(account.getBalance() + amount);
+        try {
+            return db.getHistory(account.getNumber(), cursor, pageSize);
+        } catch (DatabaseException e) {
+            throw new DatabaseException("Failed to retrieve history.", e);
+        }
+    }
 
+    /**
+     * Hashes every PIN still stored in plaintext, a page of accounts at a time, each page in one transaction.
+     * Safe to run while the system is in use: a PIN rehashed by a login in the meantime is left alone.
+     *
+     * @return the number of PINs hashed
+     * @throws DatabaseException if a database access error occurs; pages already committed stay hashed
+     */
+    public long migratePins() {
+        long migrated = 0;
+        String after = "";
         try {
-            db.updateBalance(account.getNumber(), account.getBalance());
-            return account.getBalance();
+            List<Account> page;
+            while (!(page = db.getAccountsWithPlainPins(after, PIN_MIGRATION_BATCH_SIZE)).isEmpty()) {
+                List<String> plain = new ArrayList<>(page.size());
+                for (Account account : page) {
+                    plain.add(account.getPin());
+                }
+                List<String> hashes = pins.hashAll(plain);
+
+                List<AccountStore.PinChange> changes = new ArrayList<>(page.size());
+                for (int i = 0; i < page.size(); i++) {
+                    changes.add(new AccountStore.PinChange(page.get(i).getNumber(), plain.get(i), hashes.get(i)));
+                }
+                migrated += db.replacePins(changes);
+                after = page.get(page.size() - 1).getNumber();
+            }
+            return migrated;
         } catch (DatabaseException e) {
-            throw new DatabaseException("Failed to add income.", e);
+            throw new DatabaseException("Failed to migrate PINs after " + migrated + ".", e);
         }
     }
 
@@ -160,12 +490,67 @@ public class BankingSystem {
      * @throws DatabaseException        if a database access error occurs during the operation
      */
     public void closeAccount(Account account) {
+        timed(BankingMetrics.Operation.CLOSE_ACCOUNT, () -> {
+            locks.lock(account.getNumber());
+            try {
+                if (!db.deleteAccount(account.getNumber())) {
+                    throw new IllegalArgumentException("The account does not exist.");
+                }
+                pins.forget(account.getNumber());
+            } catch (DatabaseException e) {
+                throw new DatabaseException("Failed to close account.", e);
+            } finally {
+                locks.unlock(account.getNumber());
+            }
+        });
+    }
+
+    /**
+     * Stops the PIN verifier if this system created it. A verifier passed in, like the store, belongs to the
+     * caller and is left open.
+     */
+    @Override
+    public void close() {
+        if (ownsPins) {
+            pins.close();
+        }
+    }
+
+    /**
+     * Runs an operation and records it in the metrics, with its duration, the time spent in the store
+     * and the exception it threw, if any.
+     *
+     * @param operation the operation
+     * @param body      the work of the operation
+     * @param <T>       the type of the result
+     * @return the result of the work
+     */
+    private <T> T timed(BankingMetrics.Operation operation, Supplier<T> body) {
+        // Drop store time left over from unmeasured calls on this thread
+        db.takeNanos();
+        long started = System.nanoTime();
+        RuntimeException failure = null;
         try {
-            db.getAccount(account.getNumber())
-                    .orElseThrow(() -> new IllegalArgumentException("The account does not exist."));
-            db.deleteAccount(account.getNumber());
-        } catch (DatabaseException e) {
-            throw new DatabaseException("Failed to close account.", e);
+            return body.get();
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.record(operation, System.nanoTime() - started, db.takeNanos(), failure);
         }
     }
+
+    /**
+     * Runs an operation without a result and records it in the metrics.
+     *
+     * @param operation the operation
+     * @param body      the work of the operation
+     * @see #timed(BankingMetrics.Operation, Supplier)
+     */
+    private void timed(BankingMetrics.Operation operation, Runnable body) {
+        timed(operation, () -> {
+            body.run();
+            return null;
+        });
+    }
 }
@@ -0,0 +1,259 @@
+package dev.shoangenes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Screens files of card numbers, one per line, before they are imported. The file is memory-mapped and
+ * split across a fork/join pool; every line is checked in place with the Luhn algorithm and looked up
+ * among the cards already stored, without creating a String per line.
+ */
+public class CardFileScreener {
+    private static final long CHUNK_SIZE = 32L * 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 256;
+    private static final int MAX_PACKED_DIGITS = 18;
+
+    private final AccountStore db;
+    private final ForkJoinPool pool;
+
+    /**
+     * Outcome of screening a file.
+     *
+     * @param valid   lines holding a valid card number that exists in the database
+     * @param invalid lines that are not a valid card number
+     * @param unknown lines holding a valid card number that does not exist in the database
+     */
+    public record Report(long valid, long invalid, long unknown) {
+        private static final Report EMPTY = new Report(0, 0, 0);
+
+        private Report plus(Report other) {
+            return new Report(valid + other.valid, invalid + other.invalid, unknown + other.unknown);
+        }
+    }
+
+    /**
+     * Constructs a new CardFileScreener that runs on the common fork/join pool.
+     *
+     * @param db the store holding the known cards
+     */
+    public CardFileScreener(AccountStore db) {
+        this(db, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new CardFileScreener that runs on the given fork/join pool.
+     *
+     * @param db   the store holding the known cards
+     * @param pool the pool to split the work across
+     */
+    public CardFileScreener(AccountStore db, ForkJoinPool pool) {
+        this.db = db;
+        this.pool = pool;
+    }
+
+    /**
+     * Screens a file of card numbers. Blank lines are ignored.
+     *
+     * @param input the file to screen
+     * @return the number of valid, invalid and unknown lines
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws DatabaseException    if a database access error occurs
+     */
+    public Report screen(Path input) {
+        return screen(input, null);
+    }
+
+    /**
+     * Screens a file of card numbers and writes every rejected line to a rejects file, followed by a tab and
+     * either INVALID or UNKNOWN. Rejected lines are written in no particular order. Blank lines are ignored.
+     *
+     * @param input   the file to screen
+     * @param rejects the file to write rejected lines to, replaced if it exists; null to skip writing rejects
+     * @return the number of valid, invalid and unknown lines
+     * @throws UncheckedIOException if a file cannot be read or written
+     * @throws DatabaseException    if a database access error occurs
+     */
+    public Report screen(Path input, Path rejects) {
+        long[] known = db.getPackedCardNumbers();
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = rejects == null ? null : FileChannel.open(rejects, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (size == 0) {
+                return Report.EMPTY;
+            }
+            return pool.invoke(new ScreenTask(in, size, 0, size, known, out));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to screen card file " + input + ".", e);
+        }
+    }
+
+    /**
+     * Screens one byte range of the file, splitting it in half until it is small enough to map.
+     * A line belongs to the range holding its first byte, so split points need not fall on line breaks.
+     */
+    private static class ScreenTask extends RecursiveTask<Report> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel in;
+        private final long size;
+        private final long start;
+        private final long end;
+        private final long[] known;
+        private final FileChannel rejects;
+
+        ScreenTask(FileChannel in, long size, long start, long end, long[] known, FileChannel rejects) {
+            this.in = in;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.known = known;
+            this.rejects = rejects;
+        }
+
+        @Override
+        protected Report compute() {
+            if (end - start > CHUNK_SIZE) {
+                long middle = start + (end - start) / 2;
+                ScreenTask left = new ScreenTask(in, size, start, middle, known, rejects);
+                ScreenTask right = new ScreenTask(in, size, middle, end, known, rejects);
+                left.fork();
+                Report rightReport = right.compute();
+                return left.join().plus(rightReport);
+            }
+            try {
+                return screenChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Maps the range, plus one byte before it and enough bytes after it to finish its last line,
+         * and classifies every line starting inside the range.
+         *
+         * @return the counts for this range
+         * @throws IOException if the file cannot be mapped or the rejects cannot be written
+         */
+        private Report screenChunk() throws IOException {
+            long mapStart = start == 0 ? 0 : start - 1;
+            long mapEnd = Math.min(size, end + MAX_LINE_LENGTH);
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            int limit = buffer.limit();
+            int rangeEnd = (int) (end - mapStart);
+            int pos = (int) (start - mapStart);
+
+            // The line running into this range belongs to the previous one
+            if (start > 0 && buffer.get(0) != '\n') {
+                while (pos < limit && buffer.get(pos) != '\n') pos++;
+                pos++;
+            }
+
+            long valid = 0, invalid = 0, unknown = 0;
+            ByteArrayOutputStream rejected = rejects == null ? null : new ByteArrayOutputStream();
+
+            while (pos < rangeEnd) {
+                int lineEnd = pos;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') lineEnd++;
+                boolean truncated = lineEnd == limit && mapEnd < size;
+
+                if (!truncated && isBlank(buffer, pos, lineEnd)) {
+                    pos = lineEnd + 1;
+                    continue;
+                }
+
+                long card = truncated || !LuhnValidator.validate(buffer, pos, lineEnd) ? -1 : pack(buffer, pos, lineEnd);
+                if (card < 0) {
+                    invalid++;
+                    reject(rejected, buffer, pos, lineEnd, "INVALID");
+                } else if (Arrays.binarySearch(known, card) < 0) {
+                    unknown++;
+                    reject(rejected, buffer, pos, lineEnd, "UNKNOWN");
+                } else {
+                    valid++;
+                }
+                pos = lineEnd + 1;
+            }
+
+            if (rejected != null && rejected.size() > 0) {
+                ByteBuffer bytes = ByteBuffer.wrap(rejected.toByteArray());
+                synchronized (rejects) {
+                    while (bytes.hasRemaining()) {
+                        rejects.write(bytes);
+                    }
+                }
+            }
+            return new Report(valid, invalid, unknown);
+        }
+    }
+
+    /**
+     * Checks whether a line holds nothing but whitespace.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the index of the first byte, inclusive
+     * @param end    the index of the last byte, exclusive
+     * @return true if the line is blank
+     */
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t' && b != '\r') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Packs the digits of a line into a long, skipping whitespace. The line must already have passed
+     * Luhn validation, so it holds only digits and whitespace.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the index of the first byte, inclusive
+     * @param end    the index of the last byte, exclusive
+     * @return the packed card number, or -1 if it has too many digits to pack
+     */
+    private static long pack(ByteBuffer buffer, int start, int end) {
+        long card = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_PACKED_DIGITS) return -1;
+                card = card * 10 + (b - '0');
+            }
+        }
+        return card;
+    }
+
+    /**
+     * Appends a rejected line and its reason to the rejects of a chunk.
+     *
+     * @param rejected the rejects of the chunk, or null if rejects are not written
+     * @param buffer   the buffer holding the line
+     * @param start    the index of the first byte, inclusive
+     * @param end      the index of the last byte, exclusive
+     * @param reason   why the line was rejected
+     */
+    private static void reject(ByteArrayOutputStream rejected, ByteBuffer buffer, int start, int end, String reason) {
+        if (rejected == null) return;
+        int lineEnd = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+        for (int i = start; i < lineEnd; i++) {
+            rejected.write(buffer.get(i));
+        }
+        rejected.write('\t');
+        for (int i = 0; i < reason.length(); i++) {
+            rejected.write(reason.charAt(i));
+        }
+        rejected.write('\n');
+    }
+}
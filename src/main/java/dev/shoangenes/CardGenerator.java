@@ -1,22 +1,64 @@
 package dev.shoangenes;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CardGenerator {
-    private final String BIN = "400000";
-    private final Random rand = new Random();
+    private static final String BIN = "400000";
+    private static final long ACCOUNT_NUMBER_RANGE = 1_000_000_000L;
+    private static final long BIN_PREFIX = Long.parseLong(BIN) * ACCOUNT_NUMBER_RANGE;
+    private static final long MAX_ACCOUNT_NUMBER = ACCOUNT_NUMBER_RANGE - 1;
+
+    private final AtomicLong lastAccountNumber;
+
+    /**
+     * Constructs a new CardGenerator, reading the high-water mark of issued account numbers once.
+     * Afterwards account numbers are handed out from an in-memory counter without touching the database.
+     *
+     * @param dbManager the store to retrieve the last issued numbers from
+     * @throws DatabaseException if a database access error occurs
+     */
+    public CardGenerator(AccountStore dbManager) {
+        long lastId = Long.parseLong(dbManager.getLastId());
+        long lastIssued = dbManager.getLastCardNumber()
+                .map(CardGenerator::accountNumberOf)
+                .orElse(0L);
+        this.lastAccountNumber = new AtomicLong(Math.max(lastId, lastIssued));
+    }
 
     /**
      * Generates a new card number using the BIN and the next available account number.
-     * @param dbManager the database manager to retrieve the last card number
+     * Safe to call from many threads at once; every call gets a distinct number.
+     *
      * @return a new valid card number
+     * @throws IllegalStateException if all account numbers have been issued
      */
-    public String generateCardNumber(DatabaseManager dbManager) {
-        long nextAccountNumber = Long.parseLong(dbManager.getLastId()) + 1;
-        String accountNumber = String.format("%09d", nextAccountNumber);
-        String fullNumber = BIN + accountNumber;
-        int checkDigit = LuhnValidator.calculateCheckDigit(fullNumber);
-        return fullNumber + checkDigit;
+    public String generateCardNumber() {
+        long nextAccountNumber = lastAccountNumber.incrementAndGet();
+        if (nextAccountNumber > MAX_ACCOUNT_NUMBER) {
+            throw new IllegalStateException("No account numbers left to issue.");
+        }
+        return cardNumberOf(nextAccountNumber);
+    }
+
+    /**
+     * Generates a batch of new card numbers from one contiguous range of account numbers,
+     * reserved with a single atomic update.
+     *
+     * @param count the number of card numbers to generate
+     * @return the new valid card numbers, in ascending order
+     * @throws IllegalStateException if not enough account numbers are left to issue
+     */
+    public String[] generateCardNumbers(int count) {
+        long first = lastAccountNumber.getAndAdd(count) + 1;
+        if (first + count - 1 > MAX_ACCOUNT_NUMBER) {
+            throw new IllegalStateException("No account numbers left to issue.");
+        }
+        String[] cardNumbers = new String[count];
+        for (int i = 0; i < count; i++) {
+            cardNumbers[i] = cardNumberOf(first + i);
+        }
+        return cardNumbers;
     }
 
     /**
@@ -24,6 +66,66 @@ public class CardGenerator {
      * @return a 4-digit PIN as a String
      */
     public String generatePin() {
-        return String.format("%04d", rand.nextInt(10000));
+        return zeroPad(ThreadLocalRandom.current().nextInt(10000), 4);
+    }
+
+    /**
+     * Builds the full card number for an account number.
+     *
+     * @param accountNumber the 9-digit account number
+     * @return the card number including BIN and check digit
+     */
+    static String cardNumberOf(long accountNumber) {
+        return Long.toString(LuhnValidator.generateCardNumber(BIN_PREFIX + accountNumber));
+    }
+
+    /**
+     * Formats a non-negative number with leading zeros, without the parsing cost of String.format.
+     *
+     * @param value  the number to format
+     * @param digits the width of the result
+     * @return the zero-padded number
+     */
+    private static String zeroPad(long value, int digits) {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Extracts the account number of a string that is a card number this generator could have issued:
+     * the BIN, nine digits and a valid check digit.
+     *
+     * @param cardNumber the string to check
+     * @return the account number, or -1 if the string is not such a card number
+     */
+    static long parseAccountNumber(String cardNumber) {
+        if (cardNumber.length() != BIN.length() + 10 || !cardNumber.startsWith(BIN)) {
+            return -1;
+        }
+        long accountNumber = 0;
+        for (int i = BIN.length(); i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            if (i < cardNumber.length() - 1) {
+                accountNumber = accountNumber * 10 + (c - '0');
+            }
+        }
+        return LuhnValidator.validate(cardNumber) ? accountNumber : -1;
+    }
+
+    /**
+     * Extracts the account number embedded in a card number issued by this generator.
+     *
+     * @param cardNumber the full card number
+     * @return the account number between the BIN and the check digit
+     */
+    private static long accountNumberOf(String cardNumber) {
+        return Long.parseLong(cardNumber.substring(BIN.length(), cardNumber.length() - 1));
     }
 }
@@ -0,0 +1,182 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of {@link BalanceEngine} command batches, synced to disk once per batch. Every record is
+ * framed as {@code [length][first command][count][op account counterparty amount]...[crc32]}, with fixed-size
+ * commands, so a record torn by a crash in the middle of a write is detected on replay and dropped together
+ * with anything after it.
+ */
+public class CommandJournal implements AutoCloseable {
+    private static final int HEADER_BYTES = 12;
+    private static final int COMMAND_BYTES = 17;
+
+    private final Path path;
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    /**
+     * Receives the commands read back by {@link #replay(CommandConsumer)}.
+     */
+    @FunctionalInterface
+    public interface CommandConsumer {
+        void accept(long command, byte op, int account, int counterparty, long amount);
+    }
+
+    /**
+     * Opens the journal at the given path, creating it if it does not exist.
+     *
+     * @param path the journal file
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    public CommandJournal(Path path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open command journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Appends a batch of commands to the end of the journal and waits until it is on disk.
+     *
+     * @param firstCommand   the number of the first command of the batch; the others follow consecutively
+     * @param count          the number of commands in the batch
+     * @param ops            the operation codes
+     * @param accounts       the accounts the commands act on
+     * @param counterparties the other accounts of transfers
+     * @param amounts        the amounts, in cents
+     * @throws UncheckedIOException if the batch cannot be written or synced
+     */
+    public void append(long firstCommand, int count, byte[] ops, int[] accounts, int[] counterparties, long[] amounts) {
+        int payloadLength = HEADER_BYTES + count * COMMAND_BYTES;
+        if (buffer.capacity() < payloadLength + 8) {
+            buffer = ByteBuffer.allocate(Math.max(payloadLength + 8, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.putInt(payloadLength);
+        buffer.putLong(firstCommand);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.put(ops[i]);
+            buffer.putInt(accounts[i]);
+            buffer.putInt(counterparties[i]);
+            buffer.putLong(amounts[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, payloadLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to command journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Reads every command of every complete batch from the start of the journal, in the order they were
+     * appended. A torn or corrupt record at the end is cut off, so later appends follow the last good batch.
+     *
+     * @param consumer receives each command
+     * @return the number of the last command read, or 0 if the journal holds none
+     * @throws UncheckedIOException if the journal cannot be read
+     */
+    public long replay(CommandConsumer consumer) {
+        long lastCommand = 0;
+        try {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (position + 4 <= size) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    channel.read(header, position + header.position());
+                }
+                int payloadLength = header.getInt(0);
+                if (payloadLength < HEADER_BYTES || (payloadLength - HEADER_BYTES) % COMMAND_BYTES != 0
+                        || position + 4 + payloadLength + 4 > size) break;
+
+                ByteBuffer record = ByteBuffer.allocate(payloadLength + 4);
+                while (record.hasRemaining()) {
+                    channel.read(record, position + 4 + record.position());
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record.array(), 0, payloadLength);
+                if ((int) crc.getValue() != record.getInt(payloadLength)) break;
+
+                record.flip();
+                long firstCommand = record.getLong();
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    consumer.accept(firstCommand + i, record.get(), record.getInt(), record.getInt(), record.getLong());
+                }
+
+                lastCommand = firstCommand + count - 1;
+                position += 4 + payloadLength + 4;
+            }
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(false);
+            }
+            channel.position(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay command journal " + path + ".", e);
+        }
+        return lastCommand;
+    }
+
+    /**
+     * Empties the journal. Only safe once every command in it is durable elsewhere.
+     *
+     * @throws UncheckedIOException if the journal cannot be truncated
+     */
+    public void reset() {
+        try {
+            channel.truncate(0);
+            channel.force(false);
+            channel.position(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reset command journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Gets the current size of the journal.
+     * @return the size in bytes
+     * @throws UncheckedIOException if the size cannot be read
+     */
+    public long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read size of command journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package dev.shoangenes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring of {@link BalanceEngine} commands, filled by any number of threads and drained by one.
+ * Commands are written into preallocated primitive slots, so queuing one allocates nothing but its future.
+ * <p>
+ * A producer claims the next sequence number with one atomic increment, waits until its slot has been
+ * released by the consumer, fills the slot and publishes it by storing the sequence number in it. The consumer
+ * takes slots strictly in sequence order, and releases them in bulk once it has handled a whole batch.
+ */
+final class CommandRing {
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final int capacity;
+    private final int mask;
+    private final byte[] ops;
+    private final int[] accounts;
+    private final int[] counterparties;
+    private final long[] amounts;
+    private final Object[] futures;
+    // Holds sequence + 1 once the slot's command is written, so the initial zeros mean "empty"
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting;
+
+    /**
+     * Constructs a new CommandRing with at least the given number of slots, rounded up to a power of two.
+     *
+     * @param capacity the minimum number of slots
+     * @throws IllegalArgumentException if the capacity is not positive or too large
+     */
+    CommandRing(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Ring capacity must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.ops = new byte[size];
+        this.accounts = new int[size];
+        this.counterparties = new int[size];
+        this.amounts = new long[size];
+        this.futures = new Object[size];
+        this.published = new AtomicLongArray(size);
+    }
+
+    /**
+     * Queues a command, waiting while the ring is full.
+     *
+     * @param op           the operation code
+     * @param account      the account the command acts on
+     * @param counterparty the other account of a transfer, or 0
+     * @param amount       the amount, in cents
+     * @param future       the future to complete with the result of the command
+     */
+    void publish(byte op, int account, int counterparty, long amount, CompletableFuture<Long> future) {
+        long sequence = claimed.getAndIncrement();
+        int spins = 0;
+        while (sequence - released.get() >= capacity) {
+            if (++spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        int slot = (int) sequence & mask;
+        ops[slot] = op;
+        accounts[slot] = account;
+        counterparties[slot] = counterparty;
+        amounts[slot] = amount;
+        futures[slot] = future;
+        published.set(slot, sequence + 1);
+
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Waits until the command with the given sequence number is published. Called by the consumer only.
+     *
+     * @param sequence     the sequence number
+     * @param timeoutNanos the longest to wait
+     * @return true if the command is published, false if the wait timed out
+     */
+    boolean await(long sequence, long timeoutNanos) {
+        if (isPublished(sequence)) {
+            return true;
+        }
+        for (int i = 0; i < SPINS_BEFORE_YIELD; i++) {
+            Thread.onSpinWait();
+            if (isPublished(sequence)) {
+                return true;
+            }
+        }
+        consumer = Thread.currentThread();
+        consumerWaiting = true;
+        try {
+            if (isPublished(sequence)) {
+                return true;
+            }
+            LockSupport.parkNanos(this, timeoutNanos);
+            return isPublished(sequence);
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    /**
+     * Checks whether the command with the given sequence number is published.
+     *
+     * @param sequence the sequence number
+     * @return true if the command can be read
+     */
+    boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == sequence + 1;
+    }
+
+    /**
+     * Gets the number of sequence numbers claimed by producers so far.
+     * @return the claimed count
+     */
+    long claimed() {
+        return claimed.get();
+    }
+
+    /**
+     * Gets the operation code of a published command.
+     * @param sequence the sequence number
+     * @return the operation code
+     */
+    byte op(long sequence) {
+        return ops[(int) sequence & mask];
+    }
+
+    /**
+     * Gets the account of a published command.
+     * @param sequence the sequence number
+     * @return the account number
+     */
+    int account(long sequence) {
+        return accounts[(int) sequence & mask];
+    }
+
+    /**
+     * Gets the counterparty of a published command.
+     * @param sequence the sequence number
+     * @return the account number of the counterparty, or 0
+     */
+    int counterparty(long sequence) {
+        return counterparties[(int) sequence & mask];
+    }
+
+    /**
+     * Gets the amount of a published command.
+     * @param sequence the sequence number
+     * @return the amount, in cents
+     */
+    long amount(long sequence) {
+        return amounts[(int) sequence & mask];
+    }
+
+    /**
+     * Takes the future out of a published command's slot.
+     *
+     * @param sequence the sequence number
+     * @return the future of the command
+     */
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Long> takeFuture(long sequence) {
+        int slot = (int) sequence & mask;
+        CompletableFuture<Long> future = (CompletableFuture<Long>) futures[slot];
+        futures[slot] = null;
+        return future;
+    }
+
+    /**
+     * Hands every slot before the given sequence number back to the producers. Called by the consumer only.
+     *
+     * @param sequence the first sequence number still in use
+     */
+    void release(long sequence) {
+        released.set(sequence);
+    }
+}
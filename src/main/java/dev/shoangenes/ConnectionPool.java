@@ -0,0 +1,225 @@
+package dev.shoangenes;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.sqlite.BusyHandler;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * Fixed-size pool of SQLite connections. Each connection is leased to a single caller at a time,
+ * so transactions started on a lease never interfere with other threads.
+ * <p>
+ * A connection that finds the database locked by another waits and retries, with the same backoff as SQLite's
+ * busy timeout, through a busy handler that counts the waits in the pool's {@link StorageTelemetry}.
+ */
+public class ConnectionPool {
+    // Delays between retries on a locked database, as used by SQLite's own busy timeout handler
+    private static final int[] BUSY_DELAYS_MILLIS = {1, 2, 5, 10, 15, 20, 25, 25, 25, 50, 50, 100};
+
+    private final StorageTelemetry telemetry;
+    private final List<PooledConnection> connections;
+    private final BlockingQueue<PooledConnection> idle;
+    private final long acquireTimeoutMillis;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new ConnectionPool and opens all of its connections up front.
+     *
+     * @param url                the JDBC URL of the SQLite database
+     * @param size               the number of connections to keep open
+     * @param busyTimeoutMillis  how long SQLite waits on a locked database before failing
+     * @throws IllegalArgumentException if the size is not positive
+     * @throws DatabaseException        if a connection cannot be established
+     */
+    public ConnectionPool(String url, int size, int busyTimeoutMillis) {
+        this(url, size, busyTimeoutMillis, new StorageTelemetry());
+    }
+
+    /**
+     * Constructs a new ConnectionPool reporting to the given telemetry, and opens all of its connections up front.
+     *
+     * @param url                the JDBC URL of the SQLite database
+     * @param size               the number of connections to keep open
+     * @param busyTimeoutMillis  how long SQLite waits on a locked database before failing
+     * @param telemetry          where connection waits, statements and lock waits are recorded
+     * @throws IllegalArgumentException if the size is not positive
+     * @throws DatabaseException        if a connection cannot be established
+     */
+    public ConnectionPool(String url, int size, int busyTimeoutMillis, StorageTelemetry telemetry) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        this.telemetry = telemetry;
+        this.connections = new ArrayList<>(size);
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.acquireTimeoutMillis = Math.max(busyTimeoutMillis, 1000);
+
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl(url);
+
+        for (int i = 0; i < size; i++) {
+            PooledConnection pooled = new PooledConnection(this, open(dataSource, busyTimeoutMillis), telemetry);
+            connections.add(pooled);
+            idle.add(pooled);
+        }
+    }
+
+    /**
+     * Opens a connection and applies the pragmas every pooled connection needs.
+     *
+     * @param dataSource        the data source to open the connection from
+     * @param busyTimeoutMillis the SQLite busy timeout in milliseconds
+     * @return the configured connection
+     * @throws DatabaseException if the connection cannot be established or configured
+     */
+    private Connection open(SQLiteDataSource dataSource, int busyTimeoutMillis) {
+        try {
+            Connection conn = dataSource.getConnection();
+            if (!conn.isValid(5)) {
+                throw new SQLException("Database connection is invalid.");
+            }
+            // Takes the place of PRAGMA busy_timeout, which would replace the handler
+            BusyHandler.setHandler(conn, new CountingBusyHandler(busyTimeoutMillis, telemetry));
+            try (Statement stmt = conn.createStatement()) {
+                // WAL lets readers proceed while a writer holds the database.
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
+            return conn;
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to establish database connection.", e);
+        }
+    }
+
+    /**
+     * Leases a connection from the pool, waiting if all of them are in use.
+     * The lease must be closed to give the connection back.
+     *
+     * @return a leased connection
+     * @throws DatabaseException if the pool is closed or no connection becomes available in time
+     */
+    public PooledConnection acquire() {
+        if (closed) {
+            throw new DatabaseException("Connection pool is closed.");
+        }
+        long started = System.nanoTime();
+        try {
+            PooledConnection pooled = idle.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            telemetry.recordAcquire(System.nanoTime() - started);
+            if (pooled == null) {
+                throw new DatabaseException("Timed out waiting for a database connection.");
+            }
+            return pooled;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for a database connection.", e);
+        }
+    }
+
+    /**
+     * Gets the telemetry this pool reports to.
+     * @return the telemetry
+     */
+    public StorageTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Returns a leased connection to the pool.
+     *
+     * @param pooled the connection to return
+     */
+    void release(PooledConnection pooled) {
+        if (!idle.offer(pooled)) {
+            throw new IllegalStateException("Connection returned to a full pool.");
+        }
+    }
+
+    /**
+     * Gets the number of connections managed by this pool.
+     *
+     * @return the pool size
+     */
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * Closes every connection in the pool along with its cached statements.
+     *
+     * @throws DatabaseException if a connection cannot be closed
+     */
+    public void close() {
+        closed = true;
+        DatabaseException failure = null;
+        for (PooledConnection pooled : connections) {
+            try {
+                pooled.closeStatements();
+                pooled.connection().close();
+            } catch (SQLException e) {
+                failure = new DatabaseException("Failed to close database connection.", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Busy handler of one connection: sleeps with SQLite's backoff until the database is free or the timeout
+     * is spent, and records every wait. SQLite calls it on the thread running the blocked statement.
+     */
+    private static final class CountingBusyHandler extends BusyHandler {
+        private final long timeoutNanos;
+        private final StorageTelemetry telemetry;
+        private long waitStarted;
+
+        /**
+         * Constructs a new CountingBusyHandler.
+         *
+         * @param timeoutMillis how long to keep waiting on a locked database
+         * @param telemetry     where waits are recorded
+         */
+        CountingBusyHandler(int timeoutMillis, StorageTelemetry telemetry) {
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.telemetry = telemetry;
+        }
+
+        /**
+         * Decides whether to retry a statement blocked by a locked database, sleeping first.
+         *
+         * @param previousCalls how often the handler was called before for the same statement
+         * @return 1 to retry, 0 to give up and fail the statement as busy
+         */
+        @Override
+        protected int callback(int previousCalls) {
+            long now = System.nanoTime();
+            if (previousCalls == 0) {
+                waitStarted = now;
+                telemetry.recordBusy();
+            }
+            long remaining = timeoutNanos - (now - waitStarted);
+            if (remaining <= 0) {
+                telemetry.recordBusyTimeout();
+                return 0;
+            }
+            long delay = Math.min(TimeUnit.MILLISECONDS.toNanos(
+                    BUSY_DELAYS_MILLIS[Math.min(previousCalls, BUSY_DELAYS_MILLIS.length - 1)]), remaining);
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                telemetry.recordBusyTimeout();
+                return 0;
+            }
+            telemetry.recordBusyRetry(System.nanoTime() - now);
+            return 1;
+        }
+    }
+}
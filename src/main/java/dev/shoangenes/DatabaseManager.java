@@ -1,204 +1,1352 @@
 package dev.shoangenes;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
 
-import org.sqlite.SQLiteDataSource;
+public class DatabaseManager implements AccountStore {
+    private static final String DEFAULT_URL = "jdbc:sqlite:cards.s3db";
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private static final int CACHE_SIZE = 10_000;
+    private static final long CACHE_TTL_SECONDS = 60;
+    // How far a ledger timestamp may run behind the entry before it, e.g. after a clock adjustment
+    private static final long LEDGER_CLOCK_SKEW_MILLIS = 60_000;
 
-public class DatabaseManager {
-    private Connection conn;
-    private final String URL = "jdbc:sqlite:cards.s3db";
+    // Schema versions, tracked in SQLite's user_version pragma:
+    // 0 - balances stored as FLOAT; 1 - balances stored as INTEGER cents; 2 - ledger of balance changes;
+    // 3 - balance checkpoints over the ledger
+    private static final int SCHEMA_VERSION = 3;
+
+    // Statements prepared once per pooled connection and reused on every call
+    private static final String SELECT_LAST_ID = "SELECT MAX(id) AS 'lastId' FROM cards";
+    // Closed cards live on in the ledger and the checkpoints, so they count too; their numbers must never
+    // be issued again
+    private static final String SELECT_LAST_CARD = """
+            SELECT MAX(card_number) AS 'lastCard' FROM (
+                SELECT MAX(card_number) AS card_number FROM cards
+                UNION ALL
+                SELECT MAX(card_number) FROM ledger
+                UNION ALL
+                SELECT MAX(card_number) FROM balance_checkpoints
+            )
+            """;
+    private static final String SELECT_CARD_NUMBERS = "SELECT card_number FROM cards ORDER BY card_number";
+    private static final String INSERT_ACCOUNT = "INSERT INTO cards (card_number, pin, balance) VALUES (?, ?, ?)";
+    private static final String SELECT_ACCOUNT = "SELECT * FROM cards WHERE card_number = ?";
+    private static final String UPDATE_BALANCE = "UPDATE cards SET balance = ? WHERE card_number = ?";
+    private static final String CREDIT_BALANCE = "UPDATE cards SET balance = balance + ? WHERE card_number = ?";
+    private static final String DEBIT_BALANCE =
+            "UPDATE cards SET balance = balance - ? WHERE card_number = ? AND balance >= ?";
+    private static final String SELECT_BALANCE = "SELECT balance FROM cards WHERE card_number = ?";
+    private static final String DELETE_ACCOUNT = "DELETE FROM cards WHERE card_number = ?";
+    // PINs are four digits; anything else in the column is already a hash
+    private static final String SELECT_PLAIN_PINS = """
+            SELECT card_number, pin, balance FROM cards
+            WHERE card_number > ? AND pin GLOB '[0-9][0-9][0-9][0-9]'
+            ORDER BY card_number
+            LIMIT ?
+            """;
+    private static final String REPLACE_PIN = "UPDATE cards SET pin = ? WHERE card_number = ? AND pin = ?";
+    private static final String INSERT_LEDGER = """
+            INSERT INTO ledger (card_number, created_at, type, amount, balance, counterparty)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+    private static final String SELECT_HISTORY = """
+            SELECT * FROM ledger
+            WHERE card_number = ? AND (created_at, id) < (?, ?)
+            ORDER BY created_at DESC, id DESC
+            LIMIT ?
+            """;
+    private static final String SELECT_LEDGER_OLDEST = "SELECT * FROM ledger ORDER BY id";
+    private static final String DELETE_LEDGER_RANGE = "DELETE FROM ledger WHERE id BETWEEN ? AND ?";
+    private static final String SELECT_CHECKPOINT = "SELECT ledger_id, created_at FROM ledger_checkpoint WHERE id = 1";
+    private static final String UPDATE_CHECKPOINT =
+            "INSERT OR REPLACE INTO ledger_checkpoint (id, ledger_id, created_at) VALUES (1, ?, ?)";
+    private static final String SELECT_LEDGER_HEAD = "SELECT id, created_at FROM ledger ORDER BY id DESC LIMIT 1";
+    // The WHERE clause is required here: without it SQLite cannot tell ON CONFLICT from a join constraint
+    private static final String FOLD_INTO_CHECKPOINTS = """
+            INSERT INTO balance_checkpoints (card_number, balance, ledger_id)
+            SELECT card_number, SUM(amount), MAX(id) FROM ledger WHERE id > ? AND id <= ? GROUP BY card_number
+            ON CONFLICT (card_number) DO UPDATE
+            SET balance = balance + excluded.balance, ledger_id = excluded.ledger_id
+            """;
+    private static final String SELECT_CHECKPOINT_BALANCE = "SELECT balance FROM balance_checkpoints WHERE card_number = ?";
+    // Entries after the checkpoint are found through the card/time index; their ids decide whether they are newer
+    private static final String SELECT_LEDGER_DELTA = """
+            SELECT COUNT(*), COALESCE(SUM(amount), 0) FROM ledger
+            WHERE card_number = ? AND created_at >= ? AND id > ?
+            """;
+    private static final String SELECT_UNBALANCED_CARDS = """
+            SELECT c.card_number FROM cards c
+            LEFT JOIN balance_checkpoints b ON b.card_number = c.card_number
+            WHERE c.balance != COALESCE(b.balance, 0) + (
+                SELECT COALESCE(SUM(l.amount), 0) FROM ledger l
+                WHERE l.card_number = c.card_number AND l.created_at >= ? AND l.id > ?
+            )
+            """;
+    private static final String SELECT_LAST_GROUP = "SELECT last_group FROM transfer_groups WHERE id = 1";
+    private static final String UPDATE_LAST_GROUP =
+            "INSERT OR REPLACE INTO transfer_groups (id, last_group) VALUES (1, ?)";
+
+    private ConnectionPool pool;
+    private final String url;
+    private final int poolSize;
+    private final AccountCache cache;
+    private final StorageTelemetry telemetry = new StorageTelemetry();
+
+    /**
+     * The last ledger entry folded into the balance checkpoints.
+     *
+     * @param ledgerId  the id of the entry
+     * @param timestamp the time of the entry, in milliseconds since the epoch
+     */
+    private record LedgerCheckpoint(long ledgerId, long timestamp) {
+
+        /**
+         * Gets the earliest time an entry after this checkpoint can carry, allowing for clock skew.
+         * @return the lower time bound of an index scan for newer entries
+         */
+        long scanFrom() {
+            return ledgerId == 0 ? 0 : timestamp - LEDGER_CLOCK_SKEW_MILLIS;
+        }
+    }
+
+    /**
+     * Work run by {@link #inTransaction(String, BalanceWork)} or {@link #inWriteTransaction(String, BalanceWork)}.
+     * Returning an empty OptionalLong rolls the transaction back.
+     */
+    @FunctionalInterface
+    private interface BalanceWork {
+        OptionalLong run(PooledConnection pc) throws SQLException;
+    }
 
     /**
-     * Constructs a new DatabaseManager and establishes a connection to the database.
+     * Constructs a new DatabaseManager backed by the default database file and pool size.
      *
      * @throws DatabaseException if a database access error occurs
      */
     public DatabaseManager() {
+        this(DEFAULT_URL, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructs a new DatabaseManager backed by the given database and the default pool size.
+     *
+     * @param url the JDBC URL of the SQLite database
+     * @throws DatabaseException if a database access error occurs
+     */
+    public DatabaseManager(String url) {
+        this(url, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructs a new DatabaseManager with a connection pool of the given size and the default account cache.
+     *
+     * @param url      the JDBC URL of the SQLite database
+     * @param poolSize the number of pooled connections
+     * @throws DatabaseException if a database access error occurs
+     */
+    public DatabaseManager(String url, int poolSize) {
+        this(url, poolSize, new AccountCache(CACHE_SIZE, CACHE_TTL_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Constructs a new DatabaseManager with a connection pool of the given size and the given account cache.
+     *
+     * @param url      the JDBC URL of the SQLite database
+     * @param poolSize the number of pooled connections
+     * @param cache    the cache placed in front of account lookups
+     * @throws DatabaseException if a database access error occurs
+     */
+    public DatabaseManager(String url, int poolSize, AccountCache cache) {
+        this.url = url;
+        this.poolSize = poolSize;
+        this.cache = cache;
         connect();
-        createCardTable();
+        initSchema();
+    }
+
+    /**
+     * Creates the schema of a new database, or migrates an existing database to the current schema version.
+     *
+     * @throws DatabaseException if a database access error occurs
+     */
+    private void initSchema() {
+        try (PooledConnection pc = pool.acquire();
+             Statement stmt = pc.connection().createStatement()) {
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'cards'")) {
+                exists = rs.next();
+            }
+            if (!exists) {
+                createCardTable(stmt);
+                createLedgerTable(stmt);
+                createCheckpointTables(stmt);
+            } else {
+                int version;
+                try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                    version = rs.next() ? rs.getInt(1) : 0;
+                }
+                if (version < 1) {
+                    migrateBalancesToCents(pc.connection(), stmt);
+                }
+                if (version < 2) {
+                    migrateToLedger(pc.connection(), stmt);
+                }
+                if (version < 3) {
+                    createCheckpointTables(stmt);
+                    stmt.execute("PRAGMA user_version = 3");
+                }
+            }
+            createTransferGroupTable(stmt);
+            stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to initialize database schema.", e);
+        }
     }
 
     /**
-     * Creates the 'cards' table in the database if it does not already exist.
+     * Creates the 'cards' table.
      *
+     * @param stmt the statement to run the DDL with
      * @throws DatabaseException if a database access error occurs
      */
-    private void createCardTable() {
+    private void createCardTable(Statement stmt) {
         String sql = """
             CREATE TABLE IF NOT EXISTS cards (
                 id INTEGER PRIMARY KEY AUTOINCREMENT,
                 card_number TEXT NOT NULL UNIQUE,
                 pin TEXT NOT NULL,
-                balance FLOAT NOT NULL
+                balance INTEGER NOT NULL
             );
             """;
 
-        try (Statement stmt = conn.createStatement()) {
+        try {
             stmt.execute(sql);
         } catch (SQLException e) {
-            throw new DatabaseException("Failed to create 'cards' table.");
+            throw new DatabaseException("Failed to create 'cards' table.", e);
         }
     }
 
     /**
-     * Establishes a connection to the SQLite database.
+     * Creates the 'ledger' table and its index. The index leads with the card number and orders each card's
+     * entries by time, so a history page is a single range scan of the index however large the table grows.
      *
+     * @param stmt the statement to run the DDL with
      * @throws DatabaseException if a database access error occurs
      */
-    private void connect() {
-        SQLiteDataSource dataSource = new SQLiteDataSource();
-        dataSource.setUrl(URL);
+    private void createLedgerTable(Statement stmt) {
+        String sql = """
+            CREATE TABLE IF NOT EXISTS ledger (
+                id INTEGER PRIMARY KEY,
+                card_number TEXT NOT NULL,
+                created_at INTEGER NOT NULL,
+                type TEXT NOT NULL,
+                amount INTEGER NOT NULL,
+                balance INTEGER NOT NULL,
+                counterparty TEXT
+            );
+            """;
 
         try {
-            conn = dataSource.getConnection();
-            if (!conn.isValid(5)) {
-                throw new SQLException("Database connection is invalid.");
-            }
+            stmt.execute(sql);
+            stmt.execute("CREATE INDEX IF NOT EXISTS ledger_card_time ON ledger (card_number, created_at, id)");
         } catch (SQLException e) {
-            throw new DatabaseException("Failed to establish database connection.");
+            throw new DatabaseException("Failed to create 'ledger' table.", e);
         }
     }
 
     /**
-     * Closes the connection to the SQLite database.
+     * Creates the 'balance_checkpoints' table, the balance of every account as of the ledger checkpoint,
+     * and the 'ledger_checkpoint' table, a single row holding the id and time of the last ledger entry
+     * folded into those balances. A new database starts with no checkpoint, i.e. at ledger id 0.
      *
+     * @param stmt the statement to run the DDL with
      * @throws DatabaseException if a database access error occurs
      */
-    public void disconnect() {
+    private void createCheckpointTables(Statement stmt) {
         try {
-            if (conn != null && !conn.isClosed()) {
-                conn.close();
-                System.out.println("Disconnected from the database.");
-            }
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS balance_checkpoints (
+                    card_number TEXT PRIMARY KEY,
+                    balance INTEGER NOT NULL,
+                    ledger_id INTEGER NOT NULL
+                );
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS ledger_checkpoint (
+                    id INTEGER PRIMARY KEY CHECK (id = 1),
+                    ledger_id INTEGER NOT NULL,
+                    created_at INTEGER NOT NULL
+                );
+                """);
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to create checkpoint tables.", e);
+        }
+    }
+
+    /**
+     * Creates the 'transfer_groups' table, a single row holding the sequence number of the last transfer
+     * group applied by {@link #applyTransferGroup(long, List)}. It is written in the same transaction as
+     * the group, so after a crash it tells exactly which journaled groups still have to be replayed.
+     *
+     * @param stmt the statement to run the DDL with
+     * @throws DatabaseException if a database access error occurs
+     */
+    private void createTransferGroupTable(Statement stmt) {
+        String sql = """
+            CREATE TABLE IF NOT EXISTS transfer_groups (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                last_group INTEGER NOT NULL
+            );
+            """;
+
+        try {
+            stmt.execute(sql);
         } catch (SQLException e) {
-            throw new DatabaseException("Failed to close database connection.");
+            throw new DatabaseException("Failed to create 'transfer_groups' table.", e);
         }
     }
 
+    /**
+     * Rebuilds a version 0 'cards' table, converting its FLOAT balances to INTEGER cents.
+     * Runs in a single transaction that also moves the schema to version 1, so an interrupted migration
+     * leaves the old table untouched and a finished one is never run again.
+     *
+     * @param conn the connection to run the migration on
+     * @param stmt a statement of that connection
+     * @throws DatabaseException if a database access error occurs
+     */
+    private void migrateBalancesToCents(Connection conn, Statement stmt) {
+        try {
+            conn.setAutoCommit(false);
+            stmt.execute("ALTER TABLE cards RENAME TO cards_v0");
+            createCardTable(stmt);
+            stmt.execute("""
+                INSERT INTO cards (id, card_number, pin, balance)
+                SELECT id, card_number, pin, CAST(ROUND(balance * 100) AS INTEGER) FROM cards_v0
+                """);
+            stmt.execute("DROP TABLE cards_v0");
+            stmt.execute("PRAGMA user_version = 1");
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                rollbackEx.addSuppressed(e);
+                throw new DatabaseException("Failed to rollback transaction.", rollbackEx);
+            }
+            throw new DatabaseException("Failed to migrate balances to cents.", e);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new DatabaseException("Failed to reset auto-commit mode.", e);
+            }
+        }
+    }
+
+    /**
+     * Adds the ledger to a version 1 database, opening it with one entry per account that holds funds,
+     * so the entries of every account add up to its balance from the start. The schema moves to version 2
+     * in the same transaction.
+     *
+     * @param conn the connection to run the migration on
+     * @param stmt a statement of that connection
+     * @throws DatabaseException if a database access error occurs
+     */
+    private void migrateToLedger(Connection conn, Statement stmt) {
+        try {
+            conn.setAutoCommit(false);
+            createLedgerTable(stmt);
+            stmt.execute("""
+                INSERT INTO ledger (card_number, created_at, type, amount, balance)
+                SELECT card_number, %d, 'OPENING', balance, balance FROM cards WHERE balance != 0
+                """.formatted(System.currentTimeMillis()));
+            stmt.execute("PRAGMA user_version = 2");
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                rollbackEx.addSuppressed(e);
+                throw new DatabaseException("Failed to rollback transaction.", rollbackEx);
+            }
+            throw new DatabaseException("Failed to migrate to the ledger.", e);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new DatabaseException("Failed to reset auto-commit mode.", e);
+            }
+        }
+    }
+
+    /**
+     * Opens the connection pool to the SQLite database.
+     *
+     * @throws DatabaseException if a database access error occurs
+     */
+    private void connect() {
+        pool = new ConnectionPool(url, poolSize, BUSY_TIMEOUT_MILLIS, telemetry);
+    }
+
+    /**
+     * Closes every pooled connection to the SQLite database.
+     *
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public void disconnect() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+            cache.clear();
+            System.out.println("Disconnected from the database.");
+        }
+    }
+
+    /**
+     * Gets the timings and counters of the SQLite work of this manager: connection waits, statement preparations
+     * and executions, lock waits, commits and transfer transactions.
+     *
+     * @return the storage telemetry
+     */
+    public StorageTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Gets the cache placed in front of account lookups, mainly to read its hit, miss and eviction counters.
+     *
+     * @return the account cache
+     */
+    public AccountCache getAccountCache() {
+        return cache;
+    }
+
     /**
      * Retrieves the last inserted ID from the 'cards' table.
      *
      * @return the last inserted ID as a String
      * @throws DatabaseException if a database access error occurs
      */
+    @Override
     public String getLastId() {
-        String query = "SELECT MAX(id) AS 'lastId' FROM cards";
         int lastId = 0;
 
-        try (Statement statement = conn.createStatement();
-        ResultSet rs = statement.executeQuery(query)) {
+        try (PooledConnection pc = pool.acquire();
+             ResultSet rs = pc.executeQuery(pc.prepare(SELECT_LAST_ID))) {
             if (rs.next()) {
                 lastId = rs.getInt("lastId");
             }
         } catch (SQLException e) {
-            throw new DatabaseException("Failed to retrieve last inserted ID.");
+            throw new DatabaseException("Failed to retrieve last inserted ID.", e);
         }
         return lastId + "";
     }
 
     /**
-     * Inserts a new account into the database.
+     * Retrieves the highest card number stored in the 'cards' table.
+     * All issued card numbers have the same length, so the textual maximum is also the numeric one.
+     *
+     * @return the highest card number, or an empty Optional if the table is empty
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public Optional<String> getLastCardNumber() {
+        try (PooledConnection pc = pool.acquire();
+             ResultSet rs = pc.executeQuery(pc.prepare(SELECT_LAST_CARD))) {
+            if (rs.next()) {
+                return Optional.ofNullable(rs.getString("lastCard"));
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to retrieve last card number.", e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves every stored card number packed into a long, in ascending order, so large batches
+     * of card numbers can be checked for existence with a binary search instead of one query each.
+     *
+     * @return the sorted card numbers
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public long[] getPackedCardNumbers() {
+        long[] cards = new long[1024];
+        int count = 0;
+
+        try (PooledConnection pc = pool.acquire();
+             ResultSet rs = pc.executeQuery(pc.prepare(SELECT_CARD_NUMBERS))) {
+            while (rs.next()) {
+                if (count == cards.length) {
+                    cards = Arrays.copyOf(cards, count * 2);
+                }
+                cards[count++] = Long.parseLong(rs.getString("card_number"));
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to retrieve card numbers.", e);
+        }
+        return Arrays.copyOf(cards, count);
+    }
+
+    /**
+     * Inserts a new account into the database, recording its balance in the ledger if it opens with funds.
      *
      * @param account the Account object to insert
      * @throws DatabaseException if a database access error occurs
      */
+    @Override
     public void insertAccount(Account account) {
-        String insert = "INSERT INTO cards (card_number, pin, balance) VALUES (?, ?, ?)";
-
-        try (PreparedStatement statement = conn.prepareStatement(insert)){
+        inWriteTransaction("Failed to insert account into database.", pc -> {
+            PreparedStatement statement = pc.prepare(INSERT_ACCOUNT);
             statement.setString(1, account.getNumber());
             statement.setString(2, account.getPin());
-            statement.setDouble(3, account.getBalance());
+            statement.setLong(3, account.getBalance());
+            pc.executeUpdate(statement);
 
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new DatabaseException("Failed to insert account into database.");
+            if (account.getBalance() != 0) {
+                appendLedger(pc, account.getNumber(), System.currentTimeMillis(), LedgerEntry.Type.OPENING,
+                        account.getBalance(), account.getBalance(), null);
+            }
+            return OptionalLong.of(account.getBalance());
+        });
+        cache.put(account);
+    }
+
+    /**
+     * Inserts a batch of new accounts in a single transaction using a JDBC batch.
+     * Either every account is inserted or none is. Accounts opening with funds are recorded in the ledger.
+     * Bulk inserts bypass the account cache so provisioning does not flush hot cards out of it.
+     *
+     * @param accounts the accounts to insert
+     * @throws DatabaseException if a database access error occurs; the transaction is rolled back
+     */
+    @Override
+    public void insertAccounts(List<Account> accounts) {
+        try (PooledConnection pc = pool.acquire()) {
+            Connection conn = pc.connection();
+            try {
+                conn.setAutoCommit(false);
+
+                PreparedStatement statement = pc.prepare(INSERT_ACCOUNT);
+                long now = System.currentTimeMillis();
+                for (Account account : accounts) {
+                    statement.setString(1, account.getNumber());
+                    statement.setString(2, account.getPin());
+                    statement.setLong(3, account.getBalance());
+                    statement.addBatch();
+                    if (account.getBalance() != 0) {
+                        appendLedger(pc, account.getNumber(), now, LedgerEntry.Type.OPENING,
+                                account.getBalance(), account.getBalance(), null);
+                    }
+                }
+                pc.executeBatch(statement);
+
+                pc.commit();
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    rollbackEx.addSuppressed(e);
+                    throw new DatabaseException("Failed to rollback transaction.", rollbackEx);
+                }
+                throw new DatabaseException("Failed to insert accounts into database.", e);
+            } catch (RuntimeException | Error e) {
+                rollbackAfter(pc, e);
+                throw e;
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    throw new DatabaseException("Failed to reset auto-commit mode.", e);
+                }
+            }
         }
     }
 
     /**
-     * Retrieves an account from the database by card number.
+     * Retrieves an account by card number, serving it from the account cache when possible.
      *
      * @param cardNumber the card number of the account to retrieve
-     * @return the Account object if found, otherwise null
+     * @return the Account object if found, otherwise an empty Optional
      * @throws DatabaseException if a database access error occurs
      */
+    @Override
     public Optional<Account> getAccount(String cardNumber) {
-        String query = "SELECT * FROM cards WHERE card_number = ?";
+        Optional<Account> cached = cache.get(cardNumber);
+        if (cached.isPresent()) {
+            return cached;
+        }
 
-        try (PreparedStatement statement = conn.prepareStatement(query)) {
+        long stamp = cache.stamp();
+        try (PooledConnection pc = pool.acquire()) {
+            PreparedStatement statement = pc.prepare(SELECT_ACCOUNT);
             statement.setString(1, cardNumber);
-            try (ResultSet rs = statement.executeQuery()) {
+            try (ResultSet rs = pc.executeQuery(statement)) {
                 if (rs.next()) {
-                    return Optional.of(new Account(
+                    Account account = new Account(
                             rs.getString("card_number"),
                             rs.getString("pin"),
-                            rs.getDouble("balance")
-                    ));
+                            rs.getLong("balance")
+                    );
+                    cache.fill(account, stamp);
+                    return Optional.of(account);
                 }
             }
         } catch (Exception e) {
-            throw new DatabaseException("Failed to retrieve account from database.");
+            throw new DatabaseException("Failed to retrieve account from database.", e);
         }
         return Optional.empty();
     }
 
     /**
-     * Updates the balance of the account with the specified card number.
+     * Updates the balance of the account with the specified card number, recording the difference
+     * in the ledger as an adjustment.
      *
      * @param cardNumber the card number of the account to update
-     * @param newBalance the new balance to set
+     * @param newBalance the new balance to set, in cents
      * @throws DatabaseException if a database access error occurs
      */
-    public void updateBalance(String cardNumber, double newBalance) {
-        String update = "UPDATE cards SET balance = ? WHERE card_number = ?";
-        try (PreparedStatement statement = conn.prepareStatement(update)) {
-            statement.setDouble(1, newBalance);
-            statement.setString(2, cardNumber);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new DatabaseException("Failed to update account balance.");
+    @Override
+    public void updateBalance(String cardNumber, long newBalance) {
+        try {
+            inWriteTransaction("Failed to update account balance.", pc -> {
+                OptionalLong oldBalance = readBalance(pc, cardNumber);
+                if (oldBalance.isEmpty()) {
+                    return OptionalLong.empty();
+                }
+                PreparedStatement statement = pc.prepare(UPDATE_BALANCE);
+                statement.setLong(1, newBalance);
+                statement.setString(2, cardNumber);
+                pc.executeUpdate(statement);
+
+                appendLedger(pc, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.ADJUSTMENT,
+                        newBalance - oldBalance.getAsLong(), newBalance, null);
+                return OptionalLong.of(newBalance);
+            });
+        } finally {
+            cache.invalidate(cardNumber);
         }
     }
 
     /**
-     * Deletes the account with the specified card number from the database.
+     * Deletes the account with the specified card number from the database, recording the funds it held
+     * as a closing entry in the ledger. The ledger keeps the history of the account after it is deleted.
      *
      * @param cardNumber the card number of the account to delete
+     * @return true if an account was deleted, false if it did not exist
      * @throws DatabaseException if a database access error occurs
      */
-    public void deleteAccount(String cardNumber) {
-        String delete = "DELETE FROM cards WHERE card_number = ?";
-        try (PreparedStatement statement = conn.prepareStatement(delete)) {
-            statement.setString(1, cardNumber);
-            statement.executeUpdate();
+    @Override
+    public boolean deleteAccount(String cardNumber) {
+        try {
+            return inWriteTransaction("Failed to delete account from database.", pc -> {
+                OptionalLong balance = readBalance(pc, cardNumber);
+                if (balance.isEmpty()) {
+                    return OptionalLong.empty();
+                }
+                PreparedStatement statement = pc.prepare(DELETE_ACCOUNT);
+                statement.setString(1, cardNumber);
+                pc.executeUpdate(statement);
+
+                appendLedger(pc, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.CLOSING,
+                        -balance.getAsLong(), 0, null);
+                return balance;
+            }).isPresent();
+        } finally {
+            cache.invalidate(cardNumber);
+        }
+    }
+
+    /**
+     * Retrieves accounts whose PIN is still stored in plaintext, in card number order, one page at a time.
+     *
+     * @param afterCard only accounts with a greater card number are returned; "" for the first page
+     * @param limit     the maximum number of accounts to return
+     * @return the accounts, with their plaintext PINs
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public List<Account> getAccountsWithPlainPins(String afterCard, int limit) {
+        List<Account> accounts = new ArrayList<>(limit);
+        try (PooledConnection pc = pool.acquire()) {
+            PreparedStatement statement = pc.prepare(SELECT_PLAIN_PINS);
+            statement.setString(1, afterCard);
+            statement.setInt(2, limit);
+            try (ResultSet rs = pc.executeQuery(statement)) {
+                while (rs.next()) {
+                    accounts.add(new Account(rs.getString("card_number"), rs.getString("pin"), rs.getLong("balance")));
+                }
+            }
         } catch (SQLException e) {
-            throw new DatabaseException("Failed to delete account from database.");
+            throw new DatabaseException("Failed to retrieve plaintext PINs.", e);
         }
+        return accounts;
     }
 
-    public void transfer(Account from, Account to, double amount) {
+    /**
+     * Replaces stored PINs in a single transaction. Each change only applies if the account still has
+     * the expected old value, so a PIN changed in the meantime is never overwritten.
+     *
+     * @param changes the changes to apply
+     * @return the number of changes applied
+     * @throws DatabaseException if a database access error occurs; no change is applied
+     */
+    @Override
+    public int replacePins(List<PinChange> changes) {
         try {
-            conn.setAutoCommit(false);
+            return (int) inWriteTransaction("Failed to replace PINs.", pc -> {
+                PreparedStatement statement = pc.prepare(REPLACE_PIN);
+                for (PinChange change : changes) {
+                    statement.setString(1, change.newPin());
+                    statement.setString(2, change.cardNumber());
+                    statement.setString(3, change.oldPin());
+                    statement.addBatch();
+                }
+                long applied = 0;
+                for (int count : pc.executeBatch(statement)) {
+                    applied += Math.max(count, 0);
+                }
+                return OptionalLong.of(applied);
+            }).getAsLong();
+        } finally {
+            for (PinChange change : changes) {
+                cache.invalidate(change.cardNumber());
+            }
+        }
+    }
 
-            updateBalance(from.getNumber(), from.getBalance() - amount);
-            updateBalance(to.getNumber(), to.getBalance() + amount);
+    /**
+     * Atomically adds an amount to the balance of an account.
+     *
+     * @param cardNumber the card number of the account to credit
+     * @param amount     the amount to add, in cents
+     * @return the balance after the deposit, or an empty OptionalLong if the account does not exist
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public OptionalLong deposit(String cardNumber, long amount) {
+        try {
+            return inWriteTransaction("Failed to deposit funds.", pc -> {
+                if (!credit(pc, cardNumber, amount)) {
+                    return OptionalLong.empty();
+                }
+                OptionalLong balance = readBalance(pc, cardNumber);
+                appendLedger(pc, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.DEPOSIT,
+                        amount, balance.getAsLong(), null);
+                return balance;
+            });
+        } finally {
+            cache.invalidate(cardNumber);
+        }
+    }
 
-            conn.commit();
-        } catch (SQLException | DatabaseException e) {
-            try {
-                conn.rollback();
-            } catch (SQLException rollbackEx) {
-                throw new DatabaseException("Failed to rollback transaction.");
+    /**
+     * Atomically subtracts an amount from the balance of an account, provided the balance covers it.
+     *
+     * @param cardNumber the card number of the account to debit
+     * @param amount     the amount to subtract, in cents
+     * @return the balance after the withdrawal, or an empty OptionalLong if the account does not exist
+     *         or has insufficient funds
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public OptionalLong withdraw(String cardNumber, long amount) {
+        try {
+            return inWriteTransaction("Failed to withdraw funds.", pc -> {
+                if (!debit(pc, cardNumber, amount)) {
+                    return OptionalLong.empty();
+                }
+                OptionalLong balance = readBalance(pc, cardNumber);
+                appendLedger(pc, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.WITHDRAWAL,
+                        -amount, balance.getAsLong(), null);
+                return balance;
+            });
+        } finally {
+            cache.invalidate(cardNumber);
+        }
+    }
+
+    /**
+     * Transfers funds between two accounts inside a single transaction. The source is debited only if its
+     * balance covers the amount, so concurrent transfers can never overdraw it.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return the balance of the source account after the transfer, or an empty OptionalLong if the source
+     *         has insufficient funds or either account does not exist, in which case nothing is changed
+     * @throws DatabaseException if a database access error occurs; the transaction is rolled back
+     */
+    @Override
+    public OptionalLong transfer(String fromCard, String toCard, long amount) {
+        long started = System.nanoTime();
+        try {
+            return inWriteTransaction("Failed to transfer funds between accounts.", pc -> {
+                if (!debit(pc, fromCard, amount) || !credit(pc, toCard, amount)) {
+                    return OptionalLong.empty();
+                }
+                return OptionalLong.of(recordTransfer(pc, new Transfer(fromCard, toCard, amount)));
+            });
+        } finally {
+            telemetry.recordTransfer(System.nanoTime() - started);
+            cache.invalidate(fromCard);
+            cache.invalidate(toCard);
+        }
+    }
+
+    /**
+     * Applies transfers in order inside a single transaction, recording them in the ledger. Each transfer
+     * is accepted or rejected on its own, and the transaction is committed once for the whole list.
+     *
+     * @param transfers the transfers to apply, in order, each between two different accounts
+     * @return the result of every transfer, in the same order
+     * @throws DatabaseException if a database access error occurs; the whole list is rolled back
+     */
+    @Override
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        try {
+            inWriteTransaction("Failed to apply transfers.", pc -> {
+                for (Transfer transfer : transfers) {
+                    results.add(applyTransfer(pc, transfer));
+                }
+                return OptionalLong.of(results.size());
+            });
+        } finally {
+            for (Transfer transfer : transfers) {
+                cache.invalidate(transfer.from());
+                cache.invalidate(transfer.to());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves one page of the ledger entries of an account, newest first.
+     *
+     * @param cardNumber the card number of the account
+     * @param cursor     where the page starts: {@link LedgerPage.Cursor#FIRST} or the next cursor of the previous page
+     * @param limit      the maximum number of entries in the page
+     * @return the page
+     * @throws DatabaseException if a database access error occurs
+     */
+    @Override
+    public LedgerPage getHistory(String cardNumber, LedgerPage.Cursor cursor, int limit) {
+        List<LedgerEntry> entries = new ArrayList<>(limit);
+        try (PooledConnection pc = pool.acquire()) {
+            PreparedStatement statement = pc.prepare(SELECT_HISTORY);
+            statement.setString(1, cardNumber);
+            statement.setLong(2, cursor.timestamp());
+            statement.setLong(3, cursor.id());
+            statement.setInt(4, limit);
+            try (ResultSet rs = pc.executeQuery(statement)) {
+                while (rs.next()) {
+                    entries.add(ledgerEntryOf(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to retrieve account history.", e);
+        }
+
+        if (entries.size() < limit) {
+            return new LedgerPage(entries, Optional.empty());
+        }
+        LedgerEntry last = entries.get(entries.size() - 1);
+        return new LedgerPage(entries, Optional.of(new LedgerPage.Cursor(last.timestamp(), last.id())));
+    }
+
+    /**
+     * Folds every ledger entry added since the last checkpoint into the per-account checkpoint balances,
+     * and moves the checkpoint to the newest entry. Only the new entries are read, so the cost depends on
+     * how much happened since the last checkpoint, not on the size of the ledger.
+     * <p>
+     * Runs in an immediate transaction, so it waits for live writers instead of failing as busy when one of
+     * them commits between reading the ledger head and writing the checkpoint.
+     *
+     * @return the number of accounts whose checkpoint balance was updated
+     * @throws DatabaseException if a database access error occurs; the checkpoint is left unchanged
+     */
+    public long checkpointBalances() {
+        return inWriteTransaction("Failed to checkpoint balances.", pc -> {
+            LedgerCheckpoint checkpoint = readLedgerCheckpoint(pc);
+            long headId;
+            long headTime;
+            try (ResultSet rs = pc.executeQuery(pc.prepare(SELECT_LEDGER_HEAD))) {
+                if (!rs.next() || rs.getLong("id") <= checkpoint.ledgerId()) {
+                    return OptionalLong.of(0);
+                }
+                headId = rs.getLong("id");
+                headTime = rs.getLong("created_at");
+            }
+
+            PreparedStatement fold = pc.prepare(FOLD_INTO_CHECKPOINTS);
+            fold.setLong(1, checkpoint.ledgerId());
+            fold.setLong(2, headId);
+            long accounts = pc.executeUpdate(fold);
+
+            PreparedStatement update = pc.prepare(UPDATE_CHECKPOINT);
+            update.setLong(1, headId);
+            update.setLong(2, headTime);
+            pc.executeUpdate(update);
+            return OptionalLong.of(accounts);
+        }).getAsLong();
+    }
+
+    /**
+     * Rebuilds the balance of an account from the ledger: its checkpoint balance plus every entry after
+     * the checkpoint. Both are read in one transaction, so a concurrent checkpoint cannot count an entry twice.
+     *
+     * @param cardNumber the card number of the account
+     * @return the rebuilt balance, or an empty OptionalLong if the ledger knows nothing of the account
+     * @throws DatabaseException if a database access error occurs
+     */
+    public OptionalLong rebuildBalance(String cardNumber) {
+        return inTransaction("Failed to rebuild balance.", pc -> {
+            LedgerCheckpoint checkpoint = readLedgerCheckpoint(pc);
+
+            PreparedStatement base = pc.prepare(SELECT_CHECKPOINT_BALANCE);
+            base.setString(1, cardNumber);
+            OptionalLong checkpointed;
+            try (ResultSet rs = pc.executeQuery(base)) {
+                checkpointed = rs.next() ? OptionalLong.of(rs.getLong("balance")) : OptionalLong.empty();
+            }
+
+            PreparedStatement delta = pc.prepare(SELECT_LEDGER_DELTA);
+            delta.setString(1, cardNumber);
+            delta.setLong(2, checkpoint.scanFrom());
+            delta.setLong(3, checkpoint.ledgerId());
+            try (ResultSet rs = pc.executeQuery(delta)) {
+                rs.next();
+                if (checkpointed.isEmpty() && rs.getLong(1) == 0) {
+                    return OptionalLong.empty();
+                }
+                return OptionalLong.of(checkpointed.orElse(0) + rs.getLong(2));
+            }
+        });
+    }
+
+    /**
+     * Checks the stored balance of every account against the balance rebuilt from its checkpoint and the
+     * ledger entries after it. The cost grows with the number of accounts and the entries since the last
+     * checkpoint, never with the full history.
+     *
+     * @return the card numbers of the accounts whose stored balance differs from the rebuilt one
+     * @throws DatabaseException if a database access error occurs
+     */
+    public List<String> verifyBalances() {
+        List<String> unbalanced = new ArrayList<>();
+        inTransaction("Failed to verify balances.", pc -> {
+            LedgerCheckpoint checkpoint = readLedgerCheckpoint(pc);
+            PreparedStatement statement = pc.prepare(SELECT_UNBALANCED_CARDS);
+            statement.setLong(1, checkpoint.scanFrom());
+            statement.setLong(2, checkpoint.ledgerId());
+            try (ResultSet rs = pc.executeQuery(statement)) {
+                while (rs.next()) {
+                    unbalanced.add(rs.getString("card_number"));
+                }
+            }
+            return OptionalLong.of(unbalanced.size());
+        });
+        return unbalanced;
+    }
+
+    /**
+     * Retrieves the oldest ledger entries that are already folded into the balance checkpoints and older than
+     * the given time, in id order. Entries are appended in time order, so these always form a prefix of the ledger.
+     *
+     * @param before only entries created before this time, in milliseconds since the epoch, are returned
+     * @param limit  the maximum number of entries to return
+     * @return the entries, oldest first
+     * @throws DatabaseException if a database access error occurs
+     */
+    public List<LedgerEntry> getArchivableLedger(long before, int limit) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        try (PooledConnection pc = pool.acquire()) {
+            long checkpointId = readLedgerCheckpoint(pc).ledgerId();
+            try (ResultSet rs = pc.executeQuery(pc.prepare(SELECT_LEDGER_OLDEST))) {
+                while (entries.size() < limit && rs.next()) {
+                    LedgerEntry entry = ledgerEntryOf(rs);
+                    if (entry.id() > checkpointId || entry.timestamp() >= before) {
+                        break;
+                    }
+                    entries.add(entry);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to retrieve archivable ledger entries.", e);
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes a range of ledger entries, once they have been archived elsewhere.
+     *
+     * @param firstId the id of the first entry to delete
+     * @param lastId  the id of the last entry to delete
+     * @return the number of entries deleted
+     * @throws DatabaseException if a database access error occurs
+     */
+    public int deleteLedger(long firstId, long lastId) {
+        try (PooledConnection pc = pool.acquire()) {
+            PreparedStatement statement = pc.prepare(DELETE_LEDGER_RANGE);
+            statement.setLong(1, firstId);
+            statement.setLong(2, lastId);
+            return pc.executeUpdate(statement);
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to delete ledger entries.", e);
+        }
+    }
+
+    /**
+     * Applies a group of transfers in a single transaction, recording them in the ledger, and records
+     * the group as applied.
+     * Transfers are applied in order and each one is accepted or rejected on its own, so one transfer
+     * failing for insufficient funds or an unknown account does not affect the rest of the group.
+     * <p>
+     * The transaction is committed with {@code synchronous = NORMAL}, i.e. without waiting for SQLite
+     * to sync it to disk: the caller is expected to have made the group durable in its own journal first,
+     * and to replay from it every group newer than {@link #getLastAppliedTransferGroup()} after a crash.
+     *
+     * @param group     the sequence number of the group; must be greater than the last applied group
+     * @param transfers the transfers of the group, in order
+     * @return the result of every transfer, in the same order
+     * @throws DatabaseException if a database access error occurs; the whole group is rolled back
+     */
+    public List<TransferResult> applyTransferGroup(long group, List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        try (PooledConnection pc = pool.acquire()) {
+            Connection conn = pc.connection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA synchronous = NORMAL");
+                try {
+                    conn.setAutoCommit(false);
+
+                    for (Transfer transfer : transfers) {
+                        results.add(applyTransfer(pc, transfer));
+                    }
+                    PreparedStatement statement = pc.prepare(UPDATE_LAST_GROUP);
+                    statement.setLong(1, group);
+                    pc.executeUpdate(statement);
+
+                    pc.commit();
+                } catch (SQLException e) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException rollbackEx) {
+                        rollbackEx.addSuppressed(e);
+                        throw new DatabaseException("Failed to rollback transaction.", rollbackEx);
+                    }
+                    throw new DatabaseException("Failed to apply transfer group.", e);
+                } catch (RuntimeException | Error e) {
+                    rollbackAfter(pc, e);
+                    throw e;
+                } finally {
+                    try {
+                        conn.setAutoCommit(true);
+                        stmt.execute("PRAGMA synchronous = FULL");
+                    } catch (SQLException e) {
+                        throw new DatabaseException("Failed to reset auto-commit mode.", e);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DatabaseException("Failed to apply transfer group.", e);
             }
-            throw new DatabaseException("Failed to transfer funds between accounts.");
         } finally {
+            for (Transfer transfer : transfers) {
+                cache.invalidate(transfer.from());
+                cache.invalidate(transfer.to());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves the sequence number of the last transfer group applied by {@link #applyTransferGroup(long, List)}.
+     *
+     * @return the last applied group, or 0 if no group has been applied yet
+     * @throws DatabaseException if a database access error occurs
+     */
+    public long getLastAppliedTransferGroup() {
+        try (PooledConnection pc = pool.acquire();
+             ResultSet rs = pc.executeQuery(pc.prepare(SELECT_LAST_GROUP))) {
+            return rs.next() ? rs.getLong("last_group") : 0;
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to retrieve last applied transfer group.", e);
+        }
+    }
+
+    /**
+     * Copies the write-ahead log into the database file and syncs it, so every committed transaction,
+     * including those committed without a sync by {@link #applyTransferGroup(long, List)}, is on disk.
+     * The checkpoint cannot finish while another connection still reads an older state of the database;
+     * SQLite then waits for the busy timeout and gives up.
+     *
+     * @return true if the whole log was copied, false if readers kept the checkpoint from finishing
+     * @throws DatabaseException if a database access error occurs
+     */
+    public boolean checkpoint() {
+        try (PooledConnection pc = pool.acquire();
+             Statement stmt = pc.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            return rs.next() && rs.getInt(1) == 0;
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to checkpoint database.", e);
+        }
+    }
+
+    /**
+     * Applies one transfer of a group on the given connection. A debit whose credit fails is undone,
+     * so a rejected transfer leaves both balances untouched.
+     *
+     * @param pc       the leased connection to run the updates on
+     * @param transfer the transfer to apply
+     * @return the result of the transfer
+     * @throws SQLException if a database access error occurs
+     */
+    private TransferResult applyTransfer(PooledConnection pc, Transfer transfer) throws SQLException {
+        if (!debit(pc, transfer.from(), transfer.amount())) {
+            return TransferResult.rejected(readBalance(pc, transfer.from()).isPresent()
+                    ? TransferResult.Status.INSUFFICIENT_FUNDS
+                    : TransferResult.Status.UNKNOWN_ACCOUNT);
+        }
+        if (!credit(pc, transfer.to(), transfer.amount())) {
+            credit(pc, transfer.from(), transfer.amount());
+            return TransferResult.rejected(TransferResult.Status.UNKNOWN_ACCOUNT);
+        }
+        return TransferResult.applied(recordTransfer(pc, transfer));
+    }
+
+    /**
+     * Records both sides of an applied transfer in the ledger on the given connection.
+     *
+     * @param pc       the leased connection the transfer was applied on
+     * @param transfer the applied transfer
+     * @return the balance of the source account after the transfer, in cents
+     * @throws SQLException if a database access error occurs
+     */
+    private long recordTransfer(PooledConnection pc, Transfer transfer) throws SQLException {
+        long now = System.currentTimeMillis();
+        long fromBalance = readBalance(pc, transfer.from()).orElseThrow();
+        long toBalance = readBalance(pc, transfer.to()).orElseThrow();
+        appendLedger(pc, transfer.from(), now, LedgerEntry.Type.TRANSFER_OUT, -transfer.amount(), fromBalance, transfer.to());
+        appendLedger(pc, transfer.to(), now, LedgerEntry.Type.TRANSFER_IN, transfer.amount(), toBalance, transfer.from());
+        return fromBalance;
+    }
+
+    /**
+     * Reads the ledger checkpoint on the given connection.
+     *
+     * @param pc the leased connection to run the query on
+     * @return the checkpoint, or one at ledger id 0 if no checkpoint has been taken yet
+     * @throws SQLException if a database access error occurs
+     */
+    private LedgerCheckpoint readLedgerCheckpoint(PooledConnection pc) throws SQLException {
+        try (ResultSet rs = pc.executeQuery(pc.prepare(SELECT_CHECKPOINT))) {
+            return rs.next()
+                    ? new LedgerCheckpoint(rs.getLong("ledger_id"), rs.getLong("created_at"))
+                    : new LedgerCheckpoint(0, 0);
+        }
+    }
+
+    /**
+     * Maps the current row of a ledger query to an entry.
+     *
+     * @param rs the result set, positioned on a ledger row
+     * @return the entry
+     * @throws SQLException if a database access error occurs
+     */
+    private static LedgerEntry ledgerEntryOf(ResultSet rs) throws SQLException {
+        return new LedgerEntry(
+                rs.getLong("id"),
+                rs.getString("card_number"),
+                rs.getLong("created_at"),
+                LedgerEntry.Type.valueOf(rs.getString("type")),
+                rs.getLong("amount"),
+                rs.getLong("balance"),
+                rs.getString("counterparty")
+        );
+    }
+
+    /**
+     * Appends an entry to the ledger on the given connection, inside the transaction of the change it records.
+     *
+     * @param pc           the leased connection to run the insert on
+     * @param cardNumber   the card number of the account
+     * @param timestamp    when the change was made, in milliseconds since the epoch
+     * @param type         what kind of change it was
+     * @param amount       the signed change to the balance, in cents
+     * @param balance      the balance after the change, in cents
+     * @param counterparty the card number of the other account of a transfer, or null
+     * @throws SQLException if a database access error occurs
+     */
+    private void appendLedger(PooledConnection pc, String cardNumber, long timestamp, LedgerEntry.Type type,
+                              long amount, long balance, String counterparty) throws SQLException {
+        PreparedStatement statement = pc.prepare(INSERT_LEDGER);
+        statement.setString(1, cardNumber);
+        statement.setLong(2, timestamp);
+        statement.setString(3, type.name());
+        statement.setLong(4, amount);
+        statement.setLong(5, balance);
+        statement.setString(6, counterparty);
+        pc.executeUpdate(statement);
+    }
+
+    /**
+     * Adds an amount to a balance on the given connection.
+     *
+     * @param pc         the leased connection to run the update on
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to add, in cents
+     * @return true if the account exists and was credited
+     * @throws SQLException if a database access error occurs
+     */
+    private boolean credit(PooledConnection pc, String cardNumber, long amount) throws SQLException {
+        PreparedStatement statement = pc.prepare(CREDIT_BALANCE);
+        statement.setLong(1, amount);
+        statement.setString(2, cardNumber);
+        return pc.executeUpdate(statement) > 0;
+    }
+
+    /**
+     * Subtracts an amount from a balance on the given connection, provided the balance covers it.
+     *
+     * @param pc         the leased connection to run the update on
+     * @param cardNumber the card number of the account
+     * @param amount     the amount to subtract, in cents
+     * @return true if the account exists, had enough funds and was debited
+     * @throws SQLException if a database access error occurs
+     */
+    private boolean debit(PooledConnection pc, String cardNumber, long amount) throws SQLException {
+        PreparedStatement statement = pc.prepare(DEBIT_BALANCE);
+        statement.setLong(1, amount);
+        statement.setString(2, cardNumber);
+        statement.setLong(3, amount);
+        return pc.executeUpdate(statement) > 0;
+    }
+
+    /**
+     * Reads the current balance of an account on the given connection.
+     *
+     * @param pc         the leased connection to run the query on
+     * @param cardNumber the card number of the account
+     * @return the balance, or an empty OptionalLong if the account does not exist
+     * @throws SQLException if a database access error occurs
+     */
+    private OptionalLong readBalance(PooledConnection pc, String cardNumber) throws SQLException {
+        PreparedStatement statement = pc.prepare(SELECT_BALANCE);
+        statement.setString(1, cardNumber);
+        try (ResultSet rs = pc.executeQuery(statement)) {
+            return rs.next() ? OptionalLong.of(rs.getLong("balance")) : OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Runs balance work inside an immediate transaction on one leased connection, which takes the write lock
+     * before the work reads anything, so its writes cannot fail as busy after another connection committed.
+     * The transaction is committed if the work returns a balance and rolled back if it returns an empty
+     * OptionalLong or fails.
+     *
+     * @param failureMessage the message of the exception thrown if the work fails
+     * @param work           the work to run
+     * @return the result of the work
+     * @throws DatabaseException if a database access error occurs, including a lock wait that timed out;
+     *                           the transaction is rolled back
+     */
+    private OptionalLong inWriteTransaction(String failureMessage, BalanceWork work) {
+        try (PooledConnection pc = pool.acquire()) {
             try {
-                conn.setAutoCommit(true);
+                pc.beginImmediate();
+
+                OptionalLong result = work.run(pc);
+                if (result.isPresent()) {
+                    pc.commit();
+                } else {
+                    pc.rollback();
+                }
+                return result;
             } catch (SQLException e) {
-                throw new DatabaseException("Failed to reset auto-commit mode.");
+                try {
+                    pc.rollback();
+                } catch (SQLException rollbackEx) {
+                    rollbackEx.addSuppressed(e);
+                    throw new DatabaseException("Failed to rollback transaction.", rollbackEx);
+                }
+                throw new DatabaseException(failureMessage, e);
+            } catch (RuntimeException | Error e) {
+                rollbackAfter(pc, e);
+                throw e;
             }
         }
     }
+
+    /**
+     * Runs work inside a deferred transaction on one leased connection, so everything it reads comes from
+     * one snapshot of the database. Work that writes must use {@link #inWriteTransaction(String, BalanceWork)}.
+     * The transaction is committed if the work returns a balance and rolled back if it returns an empty
+     * OptionalLong or fails.
+     *
+     * @param failureMessage the message of the exception thrown if the work fails
+     * @param work           the work to run
+     * @return the result of the work
+     * @throws DatabaseException if a database access error occurs; the transaction is rolled back
+     */
+    private OptionalLong inTransaction(String failureMessage, BalanceWork work) {
+        try (PooledConnection pc = pool.acquire()) {
+            Connection conn = pc.connection();
+            try {
+                conn.setAutoCommit(false);
+
+                OptionalLong result = work.run(pc);
+                if (result.isPresent()) {
+                    pc.commit();
+                } else {
+                    conn.rollback();
+                }
+                return result;
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    rollbackEx.addSuppressed(e);
+                    throw new DatabaseException("Failed to rollback transaction.", rollbackEx);
+                }
+                throw new DatabaseException(failureMessage, e);
+            } catch (RuntimeException | Error e) {
+                rollbackAfter(pc, e);
+                throw e;
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    throw new DatabaseException("Failed to reset auto-commit mode.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rolls back the transaction of a connection after its work failed with an unchecked exception, so the
+     * connection goes back to the pool without an open transaction or a held write lock. A failed rollback
+     * is attached to the original failure, which the caller rethrows.
+     *
+     * @param pc      the leased connection whose transaction to roll back
+     * @param failure the exception the work failed with
+     */
+    private static void rollbackAfter(PooledConnection pc, Throwable failure) {
+        try {
+            pc.rollback();
+        } catch (SQLException rollbackEx) {
+            failure.addSuppressed(rollbackEx);
+        }
+    }
 }
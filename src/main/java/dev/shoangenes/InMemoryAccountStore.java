@@ -0,0 +1,800 @@
+package dev.shoangenes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps accounts and their ledger on the heap, for benchmarking the business logic without storage costs
+ * and for throwaway environments. Nothing survives the process.
+ * <p>
+ * Accounts are keyed by their card number packed into a long and spread over a fixed number of segments,
+ * each an open-addressing table of primitive keys behind its own lock. Operations on accounts in different
+ * segments run in parallel. A transfer locks the segments of both accounts, always in ascending order,
+ * so it is atomic and cannot deadlock with a transfer in the opposite direction.
+ * <p>
+ * Each ledger is kept in append order, which is also time order, so a page of history is found by binary
+ * search instead of sorting. The full history is kept unless a history limit is given, like the retention of
+ * the {@link LedgerCompactor} for SQLite: once a ledger reaches its limit, its older half is dropped. Balances
+ * are unaffected, since they are kept apart from the ledger. Like the SQLite store, the ledger of a deleted
+ * account outlives it, ending with a closing entry.
+ */
+public class InMemoryAccountStore implements AccountStore {
+    private static final int DEFAULT_SEGMENTS = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+    private static final int UNBOUNDED_HISTORY = Integer.MAX_VALUE;
+    // Packed card numbers are at least 1, so 0 marks a free slot
+    private static final long FREE = 0;
+
+    private final Segment[] segments;
+    private final int mask;
+    private final int maxHistory;
+    private final AtomicLong ledgerIds = new AtomicLong();
+    private final AtomicLong lastCardNumber = new AtomicLong();
+
+    /**
+     * The mutable state of one account. Guarded by the lock of its segment.
+     */
+    private static final class Entry {
+        private String pin;
+        private long balance;
+        private final List<LedgerEntry> ledger = new ArrayList<>();
+
+        Entry(String pin, long balance) {
+            this.pin = pin;
+            this.balance = balance;
+        }
+    }
+
+    /**
+     * Open-addressing table from packed card numbers to accounts, with linear probing.
+     * Every method must be called while holding {@link #lock}.
+     */
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+        private Entry[] values = new Entry[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+        // Ledgers of deleted accounts, by packed card number
+        private final Map<Long, List<LedgerEntry>> closedLedgers = new HashMap<>();
+
+        /**
+         * Looks up an account.
+         *
+         * @param key the packed card number
+         * @return the account, or null if absent
+         */
+        Entry get(long key) {
+            int slot = slotOf(key, keys.length);
+            while (keys[slot] != FREE) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            return null;
+        }
+
+        /**
+         * Adds an account that is not in the table yet, growing the table when it is three quarters full.
+         *
+         * @param key   the packed card number
+         * @param entry the account
+         */
+        void add(long key, Entry entry) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            int slot = slotOf(key, keys.length);
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = key;
+            values[slot] = entry;
+            size++;
+        }
+
+        /**
+         * Removes an account, shifting later entries of its probe run back so lookups still find them.
+         *
+         * @param key the packed card number
+         * @return the removed account, or null if absent
+         */
+        Entry remove(long key) {
+            int last = keys.length - 1;
+            int slot = slotOf(key, keys.length);
+            while (keys[slot] != key) {
+                if (keys[slot] == FREE) {
+                    return null;
+                }
+                slot = (slot + 1) & last;
+            }
+            Entry removed = values[slot];
+
+            int gap = slot;
+            int next = (gap + 1) & last;
+            while (keys[next] != FREE) {
+                int home = slotOf(keys[next], keys.length);
+                // Move the entry into the gap unless its home lies cyclically between the gap and it
+                if (((next - home) & last) >= ((next - gap) & last)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+                next = (next + 1) & last;
+            }
+            keys[gap] = FREE;
+            values[gap] = null;
+            size--;
+            return removed;
+        }
+
+        /**
+         * Rehashes every account into a table of the given capacity.
+         *
+         * @param capacity the new capacity, a power of two
+         */
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Entry[] oldValues = values;
+            keys = new long[capacity];
+            values = new Entry[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slotOf(oldKeys[i], capacity);
+                    while (keys[slot] != FREE) {
+                        slot = (slot + 1) & (capacity - 1);
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a new, empty InMemoryAccountStore with the default number of segments.
+     */
+    public InMemoryAccountStore() {
+        this(DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Constructs a new, empty InMemoryAccountStore keeping the full ledger of every account.
+     *
+     * @param segments the minimum number of segments, rounded up to a power of two
+     * @throws IllegalArgumentException if the number of segments is not positive or too large
+     */
+    public InMemoryAccountStore(int segments) {
+        this(segments, UNBOUNDED_HISTORY);
+    }
+
+    /**
+     * Constructs a new, empty InMemoryAccountStore that keeps only the newest ledger entries of each account.
+     *
+     * @param segments   the minimum number of segments, rounded up to a power of two
+     * @param maxHistory the most ledger entries kept per account; at least half of them are always kept,
+     *                   and {@link Integer#MAX_VALUE} keeps them all
+     * @throws IllegalArgumentException if the number of segments is not positive or too large,
+     *                                  or the history limit is less than 2
+     */
+    public InMemoryAccountStore(int segments, int maxHistory) {
+        if (segments <= 0 || segments > (1 << 16)) {
+            throw new IllegalArgumentException("Segment count must be between 1 and 2^16.");
+        }
+        if (maxHistory < 2) {
+            throw new IllegalArgumentException("History limit must be at least 2.");
+        }
+        this.maxHistory = maxHistory;
+        int size = Integer.highestOneBit(segments);
+        if (size < segments) {
+            size <<= 1;
+        }
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Drops every account.
+     */
+    @Override
+    public void disconnect() {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.keys = new long[INITIAL_SEGMENT_CAPACITY];
+                segment.values = new Entry[INITIAL_SEGMENT_CAPACITY];
+                segment.size = 0;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Accounts in memory have no row ids.
+     *
+     * @return always "0"
+     */
+    @Override
+    public String getLastId() {
+        return "0";
+    }
+
+    /**
+     * Retrieves the highest card number ever stored, including deleted accounts.
+     *
+     * @return the highest card number, or an empty Optional if no account was ever stored
+     */
+    @Override
+    public Optional<String> getLastCardNumber() {
+        long last = lastCardNumber.get();
+        return last == FREE ? Optional.empty() : Optional.of(Long.toString(last));
+    }
+
+    /**
+     * Retrieves every stored card number packed into a long, in ascending order.
+     *
+     * @return the sorted card numbers
+     */
+    @Override
+    public long[] getPackedCardNumbers() {
+        long[] cards = new long[0];
+        int count = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                cards = Arrays.copyOf(cards, count + segment.size);
+                for (long key : segment.keys) {
+                    if (key != FREE) {
+                        cards[count++] = key;
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        Arrays.sort(cards, 0, count);
+        return Arrays.copyOf(cards, count);
+    }
+
+    /**
+     * Inserts a new account, recording its balance in the ledger if it opens with funds.
+     *
+     * @param account the account to insert
+     * @throws DatabaseException if the card number is taken or is not a card number
+     */
+    @Override
+    public void insertAccount(Account account) {
+        insertAccounts(List.of(account));
+    }
+
+    /**
+     * Inserts a batch of new accounts while holding the locks of every segment they fall into.
+     * Either every account is inserted or none is.
+     *
+     * @param accounts the accounts to insert
+     * @throws DatabaseException if a card number is taken, repeated or is not a card number; nothing is inserted
+     */
+    @Override
+    public void insertAccounts(List<Account> accounts) {
+        long[] keys = new long[accounts.size()];
+        boolean[] locked = new boolean[segments.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = pack(accounts.get(i).getNumber());
+            if (keys[i] == FREE) {
+                throw new DatabaseException("Failed to insert account " + accounts.get(i).getNumber()
+                        + ": not a card number.");
+            }
+            locked[segmentIndexOf(keys[i])] = true;
+        }
+
+        lockAll(locked);
+        try {
+            long[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                if ((i > 0 && sorted[i] == sorted[i - 1]) || segmentOf(sorted[i]).get(sorted[i]) != null) {
+                    throw new DatabaseException("Failed to insert account " + sorted[i] + ": card number taken.");
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < keys.length; i++) {
+                Account account = accounts.get(i);
+                Entry entry = new Entry(account.getPin(), account.getBalance());
+                List<LedgerEntry> closed = segmentOf(keys[i]).closedLedgers.remove(keys[i]);
+                if (closed != null) {
+                    entry.ledger.addAll(closed);
+                }
+                if (account.getBalance() != 0) {
+                    appendLedger(entry, account.getNumber(), now, LedgerEntry.Type.OPENING, account.getBalance(), null);
+                }
+                segmentOf(keys[i]).add(keys[i], entry);
+            }
+            if (sorted.length > 0) {
+                lastCardNumber.accumulateAndGet(sorted[sorted.length - 1], Math::max);
+            }
+        } finally {
+            unlockAll(locked);
+        }
+    }
+
+    /**
+     * Retrieves a copy of an account by card number.
+     *
+     * @param cardNumber the card number of the account
+     * @return the account if found, otherwise an empty Optional
+     */
+    @Override
+    public Optional<Account> getAccount(String cardNumber) {
+        long key = pack(cardNumber);
+        if (key == FREE) {
+            return Optional.empty();
+        }
+        Segment segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.get(key);
+            return entry == null ? Optional.empty() : Optional.of(new Account(cardNumber, entry.pin, entry.balance));
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the balance of an account, recording the difference in the ledger as an adjustment.
+     * Does nothing if the account does not exist.
+     *
+     * @param cardNumber the card number of the account
+     * @param newBalance the new balance, in cents
+     */
+    @Override
+    public void updateBalance(String cardNumber, long newBalance) {
+        long key = pack(cardNumber);
+        if (key == FREE) {
+            return;
+        }
+        Segment segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.get(key);
+            if (entry != null) {
+                long difference = newBalance - entry.balance;
+                entry.balance = newBalance;
+                appendLedger(entry, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.ADJUSTMENT,
+                        difference, null);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes an account, recording the funds it held as a closing entry in the ledger. The ledger keeps the
+     * history of the account after it is deleted, and carries on if the card number is issued again.
+     *
+     * @param cardNumber the card number of the account
+     * @return true if an account was deleted, false if it did not exist
+     */
+    @Override
+    public boolean deleteAccount(String cardNumber) {
+        long key = pack(cardNumber);
+        if (key == FREE) {
+            return false;
+        }
+        Segment segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.remove(key);
+            if (entry == null) {
+                return false;
+            }
+            long balance = entry.balance;
+            entry.balance = 0;
+            appendLedger(entry, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.CLOSING, -balance, null);
+            segment.closedLedgers.put(key, entry.ledger);
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves accounts whose PIN is still stored in plaintext, in card number order, one page at a time.
+     * Scans every account, so it is meant for one-off migrations.
+     *
+     * @param afterCard only accounts with a greater card number are returned; "" for the first page
+     * @param limit     the maximum number of accounts to return
+     * @return the accounts, with their plaintext PINs
+     */
+    @Override
+    public List<Account> getAccountsWithPlainPins(String afterCard, int limit) {
+        List<Account> accounts = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                for (int i = 0; i < segment.keys.length; i++) {
+                    if (segment.keys[i] == FREE) {
+                        continue;
+                    }
+                    String cardNumber = Long.toString(segment.keys[i]);
+                    Entry entry = segment.values[i];
+                    if (cardNumber.compareTo(afterCard) > 0 && isPlainPin(entry.pin)) {
+                        accounts.add(new Account(cardNumber, entry.pin, entry.balance));
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        accounts.sort(Comparator.comparing(Account::getNumber));
+        return new ArrayList<>(accounts.subList(0, Math.min(limit, accounts.size())));
+    }
+
+    /**
+     * Replaces stored PINs while holding the locks of every segment they fall into.
+     * Each change only applies if the account still has the expected old value.
+     *
+     * @param changes the changes to apply
+     * @return the number of changes applied
+     */
+    @Override
+    public int replacePins(List<PinChange> changes) {
+        boolean[] locked = new boolean[segments.length];
+        for (PinChange change : changes) {
+            long key = pack(change.cardNumber());
+            if (key != FREE) {
+                locked[segmentIndexOf(key)] = true;
+            }
+        }
+
+        lockAll(locked);
+        try {
+            int applied = 0;
+            for (PinChange change : changes) {
+                long key = pack(change.cardNumber());
+                Entry entry = key == FREE ? null : segmentOf(key).get(key);
+                if (entry != null && entry.pin.equals(change.oldPin())) {
+                    entry.pin = change.newPin();
+                    applied++;
+                }
+            }
+            return applied;
+        } finally {
+            unlockAll(locked);
+        }
+    }
+
+    /**
+     * Atomically adds an amount to the balance of an account.
+     *
+     * @param cardNumber the card number of the account to credit
+     * @param amount     the amount to add, in cents
+     * @return the balance after the deposit, or an empty OptionalLong if the account does not exist
+     */
+    @Override
+    public OptionalLong deposit(String cardNumber, long amount) {
+        long key = pack(cardNumber);
+        if (key == FREE) {
+            return OptionalLong.empty();
+        }
+        Segment segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.get(key);
+            if (entry == null) {
+                return OptionalLong.empty();
+            }
+            entry.balance += amount;
+            appendLedger(entry, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.DEPOSIT, amount, null);
+            return OptionalLong.of(entry.balance);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically subtracts an amount from the balance of an account, provided the balance covers it.
+     *
+     * @param cardNumber the card number of the account to debit
+     * @param amount     the amount to subtract, in cents
+     * @return the balance after the withdrawal, or an empty OptionalLong if the account does not exist
+     *         or has insufficient funds
+     */
+    @Override
+    public OptionalLong withdraw(String cardNumber, long amount) {
+        long key = pack(cardNumber);
+        if (key == FREE) {
+            return OptionalLong.empty();
+        }
+        Segment segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.get(key);
+            if (entry == null || entry.balance < amount) {
+                return OptionalLong.empty();
+            }
+            entry.balance -= amount;
+            appendLedger(entry, cardNumber, System.currentTimeMillis(), LedgerEntry.Type.WITHDRAWAL, -amount, null);
+            return OptionalLong.of(entry.balance);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically transfers funds between two accounts while holding the locks of both their segments.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return the balance of the source account after the transfer, or an empty OptionalLong if the source
+     *         has insufficient funds or either account does not exist, in which case nothing is changed
+     */
+    @Override
+    public OptionalLong transfer(String fromCard, String toCard, long amount) {
+        TransferResult result = applyTransfer(new Transfer(fromCard, toCard, amount));
+        return result.isApplied() ? OptionalLong.of(result.balance()) : OptionalLong.empty();
+    }
+
+    /**
+     * Applies transfers in order, each atomically and on its own. Transfers between accounts in different
+     * segments do not block each other, so lists of transfers sharing no accounts can be applied in parallel.
+     *
+     * @param transfers the transfers to apply, in order, each between two different accounts
+     * @return the result of every transfer, in the same order
+     */
+    @Override
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            results.add(applyTransfer(transfer));
+        }
+        return results;
+    }
+
+    /**
+     * Applies one transfer while holding the locks of the segments of both accounts, always taken in
+     * ascending order so transfers in opposite directions cannot deadlock.
+     *
+     * @param transfer the transfer to apply
+     * @return the result of the transfer; a rejected transfer changes nothing
+     */
+    private TransferResult applyTransfer(Transfer transfer) {
+        long fromKey = pack(transfer.from());
+        long toKey = pack(transfer.to());
+        if (fromKey == FREE || toKey == FREE) {
+            return TransferResult.rejected(TransferResult.Status.UNKNOWN_ACCOUNT);
+        }
+        int first = Math.min(segmentIndexOf(fromKey), segmentIndexOf(toKey));
+        int second = Math.max(segmentIndexOf(fromKey), segmentIndexOf(toKey));
+        segments[first].lock.lock();
+        segments[second].lock.lock();
+        try {
+            Entry from = segmentOf(fromKey).get(fromKey);
+            Entry to = segmentOf(toKey).get(toKey);
+            if (from == null || to == null) {
+                return TransferResult.rejected(TransferResult.Status.UNKNOWN_ACCOUNT);
+            }
+            if (from.balance < transfer.amount()) {
+                return TransferResult.rejected(TransferResult.Status.INSUFFICIENT_FUNDS);
+            }
+            long now = System.currentTimeMillis();
+            from.balance -= transfer.amount();
+            to.balance += transfer.amount();
+            appendLedger(from, transfer.from(), now, LedgerEntry.Type.TRANSFER_OUT, -transfer.amount(), transfer.to());
+            appendLedger(to, transfer.to(), now, LedgerEntry.Type.TRANSFER_IN, transfer.amount(), transfer.from());
+            return TransferResult.applied(from.balance);
+        } finally {
+            segments[second].lock.unlock();
+            segments[first].lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves one page of the ledger entries of an account, newest first.
+     *
+     * @param cardNumber the card number of the account
+     * @param cursor     where the page starts: {@link LedgerPage.Cursor#FIRST} or the next cursor of the previous page
+     * @param limit      the maximum number of entries in the page
+     * @return the page; empty if the card number never had an account
+     */
+    @Override
+    public LedgerPage getHistory(String cardNumber, LedgerPage.Cursor cursor, int limit) {
+        List<LedgerEntry> page = new ArrayList<>();
+        boolean more = false;
+        long key = pack(cardNumber);
+        if (key != FREE) {
+            Segment segment = segmentOf(key);
+            segment.lock.lock();
+            try {
+                Entry entry = segment.get(key);
+                List<LedgerEntry> ledger = entry != null ? entry.ledger : segment.closedLedgers.get(key);
+                if (ledger != null) {
+                    int end = olderThan(ledger, cursor);
+                    for (int i = end - 1; i >= Math.max(0, end - limit); i--) {
+                        page.add(ledger.get(i));
+                    }
+                    more = end > limit;
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+
+        if (!more) {
+            return new LedgerPage(page, Optional.empty());
+        }
+        LedgerEntry last = page.get(limit - 1);
+        return new LedgerPage(page, Optional.of(new LedgerPage.Cursor(last.timestamp(), last.id())));
+    }
+
+    /**
+     * Finds how many entries of a ledger come before a cursor, by binary search.
+     *
+     * @param ledger the ledger, in append order
+     * @param cursor the cursor
+     * @return the number of entries older than the cursor, which are the first ones of the ledger
+     */
+    private static int olderThan(List<LedgerEntry> ledger, LedgerPage.Cursor cursor) {
+        int low = 0;
+        int high = ledger.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            LedgerEntry entry = ledger.get(middle);
+            if (entry.timestamp() < cursor.timestamp()
+                    || (entry.timestamp() == cursor.timestamp() && entry.id() < cursor.id())) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Appends an entry to the ledger of an account, dropping the older half of the ledger if it is full.
+     * Must be called while holding the lock of its segment. Ids are taken under that lock, so they grow in
+     * append order, and a timestamp older than the last entry is raised to it, so the ledger stays sorted
+     * even if the clock steps back.
+     *
+     * @param entry        the account
+     * @param cardNumber   the card number of the account
+     * @param timestamp    the time of the change, in milliseconds since the epoch
+     * @param type         the kind of change
+     * @param amount       the signed change of the balance, in cents
+     * @param counterparty the card number of the other account of a transfer, or null
+     */
+    private void appendLedger(Entry entry, String cardNumber, long timestamp, LedgerEntry.Type type,
+                              long amount, String counterparty) {
+        List<LedgerEntry> ledger = entry.ledger;
+        if (ledger.size() >= maxHistory) {
+            ledger.subList(0, ledger.size() - maxHistory / 2).clear();
+        }
+        if (!ledger.isEmpty()) {
+            timestamp = Math.max(timestamp, ledger.get(ledger.size() - 1).timestamp());
+        }
+        ledger.add(new LedgerEntry(ledgerIds.incrementAndGet(), cardNumber, timestamp, type,
+                amount, entry.balance, counterparty));
+    }
+
+    /**
+     * Locks the flagged segments in ascending order.
+     *
+     * @param locked which segments to lock
+     */
+    private void lockAll(boolean[] locked) {
+        for (int i = 0; i < locked.length; i++) {
+            if (locked[i]) {
+                segments[i].lock.lock();
+            }
+        }
+    }
+
+    /**
+     * Unlocks the flagged segments.
+     *
+     * @param locked which segments to unlock
+     */
+    private void unlockAll(boolean[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            if (locked[i]) {
+                segments[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the segment a packed card number belongs to.
+     *
+     * @param key the packed card number
+     * @return the segment
+     */
+    private Segment segmentOf(long key) {
+        return segments[segmentIndexOf(key)];
+    }
+
+    /**
+     * Gets the index of the segment a packed card number belongs to.
+     *
+     * @param key the packed card number
+     * @return the segment index
+     */
+    private int segmentIndexOf(long key) {
+        return (int) (mix(key) >>> 40) & mask;
+    }
+
+    /**
+     * Gets the home slot of a packed card number within a table.
+     *
+     * @param key      the packed card number
+     * @param capacity the capacity of the table, a power of two
+     * @return the slot index
+     */
+    private static int slotOf(long key, int capacity) {
+        return (int) mix(key) & (capacity - 1);
+    }
+
+    /**
+     * Spreads the bits of a packed card number, whose low digits vary the most.
+     *
+     * @param key the packed card number
+     * @return the mixed hash
+     */
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Packs a card number into a long. Only strings of 1 to 18 digits without a leading zero are packed,
+     * so every packed value stands for exactly one string.
+     *
+     * @param cardNumber the card number
+     * @return the packed card number, or {@link #FREE} if the string cannot be a stored card number
+     */
+    private static long pack(String cardNumber) {
+        int length = cardNumber.length();
+        if (length == 0 || length > 18 || cardNumber.charAt(0) == '0') {
+            return FREE;
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            char c = cardNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return FREE;
+            }
+            packed = packed * 10 + (c - '0');
+        }
+        return packed;
+    }
+
+    /**
+     * Checks whether a stored PIN is still in plaintext, i.e. four digits rather than a hash.
+     *
+     * @param pin the stored PIN
+     * @return true if the PIN is in plaintext
+     */
+    private static boolean isPlainPin(String pin) {
+        if (pin.length() != 4) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (pin.charAt(i) < '0' || pin.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
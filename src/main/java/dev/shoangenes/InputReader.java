@@ -1,18 +1,32 @@
 package dev.shoangenes;
 
+import java.io.PrintStream;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Scanner;
 
 public class InputReader {
     private final Scanner scanner;
+    private final PrintStream out;
 
     /**
-     * Constructs an InputReader with the given Scanner.
+     * Constructs an InputReader with the given Scanner, printing prompts to the console.
      *
      * @param scanner the Scanner to read input from
      */
     public InputReader(Scanner scanner) {
+        this(scanner, System.out);
+    }
+
+    /**
+     * Constructs an InputReader with the given Scanner, printing prompts to the given stream.
+     *
+     * @param scanner the Scanner to read input from
+     * @param out     the stream to print prompts and errors to
+     */
+    public InputReader(Scanner scanner, PrintStream out) {
         this.scanner = scanner;
+        this.out = out;
     }
 
     /**
@@ -22,10 +36,10 @@ public class InputReader {
      * @return an Optional containing the valid card number, or an empty Optional if invalid
      */
     public Optional<String> readCardNumber(String prompt) {
-        System.out.println(prompt);
+        out.println(prompt);
         String input = scanner.nextLine();
         if (!LuhnValidator.validate(input)) {
-            System.out.println("Invalid card number.");
+            out.println("Invalid card number.");
             return Optional.empty();
         }
         return Optional.of(input);
@@ -38,10 +52,10 @@ public class InputReader {
      * @return an Optional containing the PIN, or an empty Optional if input is empty
      */
     public Optional<String> readPIN(String prompt) {
-        System.out.println(prompt);
+        out.println(prompt);
         String pin = scanner.nextLine();
         if (pin.isEmpty()) {
-            System.out.println("PIN cannot be empty.");
+            out.println("PIN cannot be empty.");
             return Optional.empty();
         }
         return Optional.of(pin);
@@ -51,17 +65,16 @@ public class InputReader {
      * Reads a monetary amount from the user.
      *
      * @param prompt the prompt message to display to the user
-     * @return an Optional containing the amount as a Double, or an empty Optional if invalid
+     * @return an OptionalLong containing the amount in cents, or an empty OptionalLong if invalid
      */
-    public Optional<Double> readAmount(String prompt) {
-        System.out.println(prompt);
-        String input = scanner.nextLine().replace(",", ".");
+    public OptionalLong readAmount(String prompt) {
+        out.println(prompt);
+        String input = scanner.nextLine();
         try {
-            double amount = Double.parseDouble(input);
-            return Optional.of(amount);
+            return OptionalLong.of(Money.parse(input));
         } catch (NumberFormatException e) {
-            System.out.println("Invalid amount. Please enter a number.");
-            return Optional.empty();
+            out.println("Invalid amount. Please enter a number with at most two decimals.");
+            return OptionalLong.empty();
         }
     }
 
@@ -72,7 +85,7 @@ public class InputReader {
      * @return the line of input entered by the user
      */
     public String readLine(String prompt) {
-        System.out.println(prompt);
+        out.println(prompt);
         return scanner.nextLine();
     }
 }
@@ -0,0 +1,132 @@
+package dev.shoangenes;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with log-linear buckets, in the style of HdrHistogram: values below 64 ns get a
+ * bucket each, and every power of two above is split into 32 buckets, so a recorded value is off by at most
+ * 1/32 (about 3%) from the value it is reported as, from nanoseconds up to half an hour.
+ * <p>
+ * Every bucket is a {@link LongAdder}, so recording takes no lock and threads recording at once rarely contend.
+ * Snapshots and resets are not atomic with respect to concurrent recording, which may shift a few values
+ * between two snapshots.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs a new, empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one latency. Negative values are recorded as 0, and values past the range as its maximum.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts[indexOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Summarizes the values recorded so far.
+     * @return the count, mean, percentiles and maximum of the recorded values
+     */
+    public LatencySnapshot snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        long highest = max.get();
+        return new LatencySnapshot(count, count == 0 ? 0 : sum.sum() / count,
+                percentile(snapshot, count, 0.50, highest),
+                percentile(snapshot, count, 0.90, highest),
+                percentile(snapshot, count, 0.99, highest),
+                percentile(snapshot, count, 0.999, highest),
+                highest);
+    }
+
+    /**
+     * Discards every recorded value.
+     */
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Finds the value at a percentile of a snapshot of the buckets.
+     *
+     * @param snapshot the bucket counts
+     * @param count    the total of the bucket counts
+     * @param fraction the percentile, as a fraction between 0 and 1
+     * @param highest  the largest recorded value, which caps the result
+     * @return the highest value of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    private static long percentile(long[] snapshot, long count, double fraction, long highest) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), highest);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value the value, between 0 and {@link #MAX_VALUE}
+     * @return the bucket index
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Finds the highest value that falls into a bucket.
+     *
+     * @param index the bucket index
+     * @return the highest value of the bucket
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - SUB_BUCKETS;
+        int shift = offset / HALF_SUB_BUCKETS + 1;
+        long mantissa = offset % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,100 @@
+package dev.shoangenes;
+
+/**
+ * Summary of the latencies recorded by a {@link LatencyHistogram} at one point in time.
+ * Its getters make it readable over JMX as composite data.
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    /**
+     * Constructs a new LatencySnapshot.
+     *
+     * @param count     the number of recorded values
+     * @param meanNanos the mean, in nanoseconds
+     * @param p50Nanos  the median, in nanoseconds
+     * @param p90Nanos  the 90th percentile, in nanoseconds
+     * @param p99Nanos  the 99th percentile, in nanoseconds
+     * @param p999Nanos the 99.9th percentile, in nanoseconds
+     * @param maxNanos  the maximum, in nanoseconds
+     */
+    public LatencySnapshot(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos,
+                           long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * Gets the number of recorded values.
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     * @return the mean, in nanoseconds
+     */
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * Gets the median of the recorded values.
+     * @return the median, in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Gets the 90th percentile of the recorded values.
+     * @return the percentile, in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * Gets the 99th percentile of the recorded values.
+     * @return the percentile, in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Gets the 99.9th percentile of the recorded values.
+     * @return the percentile, in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     * @return the maximum, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, meanNanos / 1e3, p50Nanos / 1e3, p90Nanos / 1e3, p99Nanos / 1e3, p999Nanos / 1e3,
+                maxNanos / 1e3);
+    }
+}
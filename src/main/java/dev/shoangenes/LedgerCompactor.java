@@ -0,0 +1,259 @@
+package dev.shoangenes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the ledger from growing without bound. Each run first folds new ledger entries into the balance
+ * checkpoints, then moves checkpointed entries older than the retention period out of the database into
+ * gzip-compressed CSV segment files, {@code ledger-<first id>-<last id>.csv.gz}.
+ * <p>
+ * A segment file is synced, renamed into place and its directory synced before its entries are deleted,
+ * so a crash can only
+ * leave entries both archived and still in the database; the next run archives them again under the
+ * same name. Archived entries no longer show up in account history, but balances are unaffected, since
+ * they are rebuilt from the checkpoints.
+ */
+public class LedgerCompactor implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(LedgerCompactor.class.getName());
+    private static final int SEGMENT_SIZE = 100_000;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long MAX_RETRY_DELAY_MILLIS = 1000;
+    private static final String CSV_HEADER = "id,card_number,created_at,type,amount,balance,counterparty";
+
+    private final DatabaseManager db;
+    private final Path archiveDirectory;
+    private final long retentionMillis;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder failedAttempts = new LongAdder();
+
+    /**
+     * Outcome of a compaction run.
+     *
+     * @param checkpointedAccounts the number of accounts whose checkpoint balance was updated
+     * @param archivedEntries      the number of ledger entries moved to segment files
+     * @param segments             the number of segment files written
+     */
+    public record Report(long checkpointedAccounts, long archivedEntries, int segments) {
+    }
+
+    /**
+     * Constructs a new LedgerCompactor. Call {@link #start(long, TimeUnit)} to run it in the background,
+     * or {@link #runOnce()} to run it on the calling thread.
+     *
+     * @param db               the database whose ledger to compact
+     * @param archiveDirectory the directory segment files are written to; created if missing
+     * @param retention        how long entries stay in the database before they are archived
+     * @param unit             the unit of the retention period
+     * @throws IllegalArgumentException if the retention period is negative
+     */
+    public LedgerCompactor(DatabaseManager db, Path archiveDirectory, long retention, TimeUnit unit) {
+        if (retention < 0) {
+            throw new IllegalArgumentException("Retention must not be negative.");
+        }
+        this.db = db;
+        this.archiveDirectory = archiveDirectory;
+        this.retentionMillis = unit.toMillis(retention);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ledger-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the compactor periodically on a background thread. A failed run, e.g. one that timed out waiting
+     * for the write lock under heavy traffic, is retried a few times with a growing delay, never longer than
+     * the interval; if it still fails, it is logged and the next run happens at the next interval.
+     *
+     * @param interval the time between the end of one run and the start of the next
+     * @param unit     the unit of the interval
+     */
+    public void start(long interval, TimeUnit unit) {
+        long maxDelayMillis = Math.max(1, Math.min(unit.toMillis(interval), MAX_RETRY_DELAY_MILLIS));
+        scheduler.scheduleWithFixedDelay(() -> runWithRetries(maxDelayMillis), 0, interval, unit);
+    }
+
+    /**
+     * Gets the number of runs that failed, retries included.
+     * @return the failed attempt count
+     */
+    public long getFailedAttempts() {
+        return failedAttempts.sum();
+    }
+
+    /**
+     * Runs the compactor until a run succeeds or every attempt has failed. Never throws a RuntimeException,
+     * since that would silently cancel every later scheduled run.
+     *
+     * @param maxDelayMillis the longest wait before a retry, in milliseconds
+     */
+    private void runWithRetries(long maxDelayMillis) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                runOnce();
+                return;
+            } catch (RuntimeException e) {
+                failedAttempts.increment();
+                if (attempt == MAX_ATTEMPTS) {
+                    LOG.log(Level.WARNING, "Ledger compaction failed " + attempt
+                            + " times; retrying at the next interval.", e);
+                    return;
+                }
+                LOG.log(Level.FINE, "Ledger compaction failed; retrying.", e);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(Math.min(maxDelayMillis, 100L << attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checkpoints balances, then archives every checkpointed entry older than the retention period.
+     *
+     * @return what the run did
+     * @throws DatabaseException    if a database access error occurs
+     * @throws UncheckedIOException if a segment file cannot be written
+     */
+    public Report runOnce() {
+        long checkpointed = db.checkpointBalances();
+        long before = System.currentTimeMillis() - retentionMillis;
+
+        long archived = 0;
+        int segments = 0;
+        List<LedgerEntry> segment;
+        while (!(segment = db.getArchivableLedger(before, SEGMENT_SIZE)).isEmpty()) {
+            archive(segment);
+            archived += db.deleteLedger(segment.get(0).id(), segment.get(segment.size() - 1).id());
+            segments++;
+        }
+        return new Report(checkpointed, archived, segments);
+    }
+
+    /**
+     * Stops the background runs, waiting for one in progress to finish.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads back every entry of a segment file, in id order.
+     *
+     * @param segmentFile the segment file
+     * @param consumer    receives each entry
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public static void readArchive(Path segmentFile, Consumer<LedgerEntry> consumer) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(segmentFile)), StandardCharsets.UTF_8))) {
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",", -1);
+                consumer.accept(new LedgerEntry(
+                        Long.parseLong(fields[0]),
+                        fields[1],
+                        Long.parseLong(fields[2]),
+                        LedgerEntry.Type.valueOf(fields[3]),
+                        Long.parseLong(fields[4]),
+                        Long.parseLong(fields[5]),
+                        fields[6].isEmpty() ? null : fields[6]
+                ));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ledger archive " + segmentFile + ".", e);
+        }
+    }
+
+    /**
+     * Writes a segment to its file: first to a temporary file, which is synced and then renamed into place,
+     * and then syncs the directory, so the segment survives a crash once this returns. A failed write removes
+     * the temporary file.
+     *
+     * @param segment the entries of the segment, in id order
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    private void archive(List<LedgerEntry> segment) {
+        String name = "ledger-" + segment.get(0).id() + "-" + segment.get(segment.size() - 1).id() + ".csv.gz";
+        Path target = archiveDirectory.resolve(name);
+        Path temp = archiveDirectory.resolve(name + ".tmp");
+        try {
+            Files.createDirectories(archiveDirectory);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                Writer out = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+                out.write(CSV_HEADER);
+                out.write('\n');
+                for (LedgerEntry entry : segment) {
+                    out.write(entry.id() + "," + entry.cardNumber() + "," + entry.timestamp() + "," + entry.type()
+                            + "," + entry.amount() + "," + entry.balance() + ","
+                            + (entry.counterparty() == null ? "" : entry.counterparty()) + "\n");
+                }
+                out.flush();
+                gzip.finish();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(archiveDirectory);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException deleteEx) {
+                e.addSuppressed(deleteEx);
+            }
+            throw new UncheckedIOException("Failed to archive ledger segment " + name + ".", e);
+        }
+    }
+
+    /**
+     * Syncs a directory, making the renames in it durable. Skipped on platforms that cannot open a directory,
+     * such as Windows, whose file systems make renames durable without it.
+     *
+     * @param directory the directory to sync
+     * @throws IOException if the directory was opened but cannot be synced
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
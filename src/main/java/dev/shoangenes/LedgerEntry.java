@@ -0,0 +1,30 @@
+package dev.shoangenes;
+
+/**
+ * One row of the append-only ledger: a single change to the balance of one account.
+ * The amounts of every entry of an account add up to its balance.
+ *
+ * @param id           the sequence number of the entry
+ * @param cardNumber   the card number of the account
+ * @param timestamp    when the change was committed, in milliseconds since the epoch
+ * @param type         what kind of change it was
+ * @param amount       the signed change to the balance, in cents
+ * @param balance      the balance after the change, in cents
+ * @param counterparty the card number of the other account of a transfer, or null
+ */
+public record LedgerEntry(long id, String cardNumber, long timestamp, Type type, long amount, long balance,
+                          String counterparty) {
+
+    /**
+     * The kinds of balance change recorded in the ledger.
+     */
+    public enum Type {
+        OPENING,
+        DEPOSIT,
+        WITHDRAWAL,
+        TRANSFER_IN,
+        TRANSFER_OUT,
+        ADJUSTMENT,
+        CLOSING
+    }
+}
@@ -0,0 +1,28 @@
+package dev.shoangenes;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * One page of the history of an account, newest entries first.
+ *
+ * @param entries the entries of the page
+ * @param next    where the next, older page starts, or an empty Optional if this is the last page
+ */
+public record LedgerPage(List<LedgerEntry> entries, Optional<Cursor> next) {
+
+    /**
+     * Position in the history of an account. Pages are found by seeking the ledger index to the cursor
+     * rather than by skipping rows, so every page costs the same no matter how deep into the history it is.
+     *
+     * @param timestamp the timestamp of the last entry of the previous page
+     * @param id        the id of the last entry of the previous page
+     */
+    public record Cursor(long timestamp, long id) {
+
+        /**
+         * The cursor of the first page, the newest entries.
+         */
+        public static final Cursor FIRST = new Cursor(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,414 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts failed logins per key, e.g. per card number or per client address, and locks a key out once it
+ * fails too often. Failures are counted over a sliding window, approximated from the counts of the current
+ * and the previous fixed window, so a burst straddling a window boundary is still caught.
+ * <p>
+ * Every attempt first reserves its place with {@link #tryAcquire(String)}, which counts it as a failure up
+ * front, and gives it back with {@link #release(String)} if it succeeds. Concurrent or pipelined attempts
+ * for one key therefore can never run past the limit: once the attempts in flight and the failures add up
+ * to it, further attempts are turned away until some are released, and a confirmed failure at the limit
+ * locks the key out.
+ * <p>
+ * Keys live in a fixed-size table, so memory stays bounded however many keys an attacker cycles through.
+ * A key is looked up in a few neighbouring slots; when they are all taken, the slot failed longest ago is
+ * reused, but a locked-out key is never dropped: a new key whose slots are all locked out is turned away,
+ * so locking out colliding keys cannot lift the lockout of another. Every slot is replaced by
+ * compare-and-set, so attempts never block, and a rejected attempt allocates nothing.
+ */
+public class LoginThrottle {
+    private static final int PROBES = 4;
+    // Retry hint for an attempt turned away because the attempts in flight already reach the limit
+    private static final long BUSY_RETRY_MILLIS = 1000;
+
+    private final AtomicReferenceArray<Bucket> slots;
+    private final int mask;
+    private final int maxFailures;
+    private final long windowNanos;
+    private final long lockoutNanos;
+    private final long origin = System.nanoTime();
+
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder lockouts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Failure counts of one key, attempts in flight included. Instances are never modified, only replaced.
+     *
+     * @param key         the key
+     * @param window      the index of the current window
+     * @param previous    the failures in the previous window
+     * @param current     the failures and attempts in flight in the current window
+     * @param lastFailure the time of the last failure or attempt, in nanoseconds
+     * @param lockedUntil the time the lockout ends, in nanoseconds; in the past if the key is not locked out
+     */
+    private record Bucket(String key, long window, int previous, int current, long lastFailure, long lockedUntil) {
+
+        /**
+         * Checks whether the key is locked out.
+         *
+         * @param now the current time, in nanoseconds
+         * @return true if the lockout has not ended yet
+         */
+        boolean isLocked(long now) {
+            return lockedUntil - now > 0;
+        }
+    }
+
+    /**
+     * Constructs a new LoginThrottle.
+     *
+     * @param capacity    the minimum number of keys tracked at once, rounded up to a power of two
+     * @param maxFailures the number of failures within one window that locks a key out
+     * @param window      the length of the sliding window
+     * @param lockout     how long a key stays locked out
+     * @param unit        the unit of the window and the lockout
+     * @throws IllegalArgumentException if the capacity or the failure limit is not positive, the capacity is
+     *                                  too large, or the window or the lockout is not positive
+     */
+    public LoginThrottle(int capacity, int maxFailures, long window, long lockout, TimeUnit unit) {
+        if (capacity <= 0 || capacity > (1 << 30) || maxFailures <= 0 || window <= 0 || lockout <= 0) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, "
+                    + "and the failure limit, window and lockout must be positive.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(Math.max(size, PROBES));
+        this.mask = slots.length() - 1;
+        this.maxFailures = maxFailures;
+        this.windowNanos = unit.toNanos(window);
+        this.lockoutNanos = unit.toNanos(lockout);
+    }
+
+    /**
+     * Reserves a login attempt for a key, counting it as a failure until it is released. The attempt must be
+     * followed by {@link #recordFailure(String)} if it fails, or {@link #release(String)} otherwise.
+     *
+     * @param key the key; null keys are never turned away
+     * @return 0 if the attempt may go ahead; otherwise the time to wait before trying again, in milliseconds,
+     *         and nothing was reserved
+     */
+    public long tryAcquire(String key) {
+        if (key == null) {
+            return 0;
+        }
+        while (true) {
+            long now = System.nanoTime();
+            int index = find(key);
+            Bucket old;
+            if (index >= 0) {
+                old = slots.get(index);
+                if (old == null || !old.key().equals(key)) {
+                    continue;
+                }
+                if (old.isLocked(now)) {
+                    return reject(old.lockedUntil() - now);
+                }
+            } else {
+                index = victim(key, now);
+                old = slots.get(index);
+                if (old != null && old.isLocked(now)) {
+                    return reject(earliestUnlock(key, now) - now);
+                }
+            }
+
+            boolean tracked = old != null && old.key().equals(key);
+            Bucket rolled = roll(tracked ? old : null, key, now);
+            if (weightedCount(rolled, now) >= maxFailures) {
+                rejections.increment();
+                return BUSY_RETRY_MILLIS;
+            }
+            Bucket reserved = new Bucket(key, rolled.window(), rolled.previous(), rolled.current() + 1,
+                    now, rolled.lockedUntil());
+            if (slots.compareAndSet(index, old, reserved)) {
+                if (old != null && !tracked) {
+                    evictions.increment();
+                }
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Records that an attempt reserved with {@link #tryAcquire(String)} failed. The reservation already counts
+     * as a failure; this locks the key out if the failures reach the limit.
+     *
+     * @param key the key; null keys are ignored
+     * @return true if this failure locked the key out
+     */
+    public boolean recordFailure(String key) {
+        if (key == null) {
+            return false;
+        }
+        failures.increment();
+        while (true) {
+            long now = System.nanoTime();
+            int index = find(key);
+            Bucket old;
+            Bucket counted;
+            if (index >= 0) {
+                old = slots.get(index);
+                if (old == null || !old.key().equals(key)) {
+                    continue;
+                }
+                if (old.isLocked(now)) {
+                    return false;
+                }
+                counted = roll(old, key, now);
+            } else {
+                // The reservation was dropped to make room for another key; count the failure again
+                index = victim(key, now);
+                old = slots.get(index);
+                if (old != null && old.isLocked(now)) {
+                    return false;
+                }
+                Bucket fresh = roll(null, key, now);
+                counted = new Bucket(key, fresh.window(), 0, 1, now, fresh.lockedUntil());
+            }
+
+            boolean locks = weightedCount(counted, now) >= maxFailures;
+            Bucket updated = locks
+                    ? new Bucket(key, counted.window(), 0, 0, now, now + lockoutNanos)
+                    : new Bucket(key, counted.window(), counted.previous(), counted.current(), now, counted.lockedUntil());
+            if (slots.compareAndSet(index, old, updated)) {
+                if (old != null && !old.key().equals(key)) {
+                    evictions.increment();
+                }
+                if (locks) {
+                    lockouts.increment();
+                }
+                return locks;
+            }
+        }
+    }
+
+    /**
+     * Gives back an attempt reserved with {@link #tryAcquire(String)} that succeeded, or that ended without
+     * a verdict, e.g. because the database failed. Earlier failures still count until they leave the window.
+     *
+     * @param key the key; null keys are ignored
+     */
+    public void release(String key) {
+        if (key == null) {
+            return;
+        }
+        while (true) {
+            long now = System.nanoTime();
+            int index = find(key);
+            if (index < 0) {
+                return;
+            }
+            Bucket old = slots.get(index);
+            if (old == null || !old.key().equals(key)) {
+                continue;
+            }
+            Bucket rolled = roll(old, key, now);
+            Bucket released;
+            if (rolled.window() == old.window()) {
+                released = new Bucket(key, rolled.window(), rolled.previous(), Math.max(0, rolled.current() - 1),
+                        old.lastFailure(), rolled.lockedUntil());
+            } else if (rolled.window() == old.window() + 1) {
+                released = new Bucket(key, rolled.window(), Math.max(0, rolled.previous() - 1), rolled.current(),
+                        old.lastFailure(), rolled.lockedUntil());
+            } else {
+                return;
+            }
+            boolean empty = released.previous() == 0 && released.current() == 0 && !released.isLocked(now);
+            if (slots.compareAndSet(index, old, empty ? null : released)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of failed logins recorded.
+     * @return the failure count
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Gets the number of login attempts rejected because their key was locked out.
+     * @return the rejection count
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Gets the number of times a key was locked out.
+     * @return the lockout count
+     */
+    public long getLockouts() {
+        return lockouts.sum();
+    }
+
+    /**
+     * Gets the number of tracked keys dropped to make room for new ones.
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of keys currently locked out. Walks the whole table, so it is meant for monitoring only.
+     * @return the locked-out key count
+     */
+    public int getLockedKeys() {
+        long now = System.nanoTime();
+        int locked = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            Bucket bucket = slots.get(i);
+            if (bucket != null && bucket.isLocked(now)) {
+                locked++;
+            }
+        }
+        return locked;
+    }
+
+    /**
+     * Finds the slot holding a key.
+     *
+     * @param key the key
+     * @return the index of the slot, or -1 if the key is not tracked
+     */
+    private int find(String key) {
+        int home = home(key);
+        for (int i = 0; i < PROBES; i++) {
+            int index = (home + i) & mask;
+            Bucket bucket = slots.get(index);
+            if (bucket != null && bucket.key().equals(key)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks the slot a new key goes into: a free slot if there is one, otherwise the slot failed longest ago
+     * among those that are not locked out. Returns a locked-out slot only if every slot is locked out.
+     *
+     * @param key the key
+     * @param now the current time, in nanoseconds
+     * @return the index of the slot
+     */
+    private int victim(String key, long now) {
+        int home = home(key);
+        int best = -1;
+        Bucket bestBucket = null;
+        for (int i = 0; i < PROBES; i++) {
+            int index = (home + i) & mask;
+            Bucket bucket = slots.get(index);
+            if (bucket == null) {
+                return index;
+            }
+            if (best < 0 || evictsBefore(bucket, bestBucket, now)) {
+                best = index;
+                bestBucket = bucket;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Decides which of two tracked keys to drop first.
+     *
+     * @param a   one key's counts
+     * @param b   the other key's counts
+     * @param now the current time, in nanoseconds
+     * @return true if {@code a} should be dropped before {@code b}
+     */
+    private static boolean evictsBefore(Bucket a, Bucket b, long now) {
+        boolean aLocked = a.isLocked(now);
+        boolean bLocked = b.isLocked(now);
+        if (aLocked != bLocked) {
+            return !aLocked;
+        }
+        return a.lastFailure() - b.lastFailure() < 0;
+    }
+
+    /**
+     * Finds when the first of the slots a key may go into stops being locked out.
+     *
+     * @param key the key
+     * @param now the current time, in nanoseconds
+     * @return the earliest end of a lockout among the slots of the key, in nanoseconds
+     */
+    private long earliestUnlock(String key, long now) {
+        int home = home(key);
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < PROBES; i++) {
+            Bucket bucket = slots.get((home + i) & mask);
+            if (bucket == null || !bucket.isLocked(now)) {
+                return now;
+            }
+            earliest = Math.min(earliest, bucket.lockedUntil() - now);
+        }
+        return now + earliest;
+    }
+
+    /**
+     * Counts an attempt turned away.
+     *
+     * @param remainingNanos the time until the key may try again, in nanoseconds
+     * @return the time until the key may try again, in milliseconds, at least 1
+     */
+    private long reject(long remainingNanos) {
+        rejections.increment();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+    }
+
+    /**
+     * Moves the counts of a key to the current window.
+     *
+     * @param old the current counts of the key, or null if it is not tracked
+     * @param key the key
+     * @param now the current time, in nanoseconds
+     * @return the counts as of the current window
+     */
+    private Bucket roll(Bucket old, String key, long now) {
+        long window = (now - origin) / windowNanos;
+        if (old == null) {
+            return new Bucket(key, window, 0, 0, now, now);
+        }
+        if (old.window() == window) {
+            return old;
+        }
+        int previous = old.window() == window - 1 ? old.current() : 0;
+        return new Bucket(key, window, previous, 0, old.lastFailure(), old.lockedUntil());
+    }
+
+    /**
+     * Weighs the counts of a key over the sliding window: all of the current window, and the part of the
+     * previous one that still falls inside the sliding window.
+     *
+     * @param bucket the counts, as of the current window
+     * @param now    the current time, in nanoseconds
+     * @return the weighted failure count
+     */
+    private double weightedCount(Bucket bucket, long now) {
+        double previousWeight = 1.0 - (double) ((now - origin) % windowNanos) / windowNanos;
+        return bucket.current() + bucket.previous() * previousWeight;
+    }
+
+    /**
+     * Hashes a key onto its first slot.
+     *
+     * @param key the key
+     * @return the index of the first slot to look in
+     */
+    private int home(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) * 0x9E3779B9 & mask;
+    }
+}
@@ -1,39 +1,142 @@
 package dev.shoangenes;
 
+import java.nio.ByteBuffer;
+
 public class LuhnValidator {
 
+    // DOUBLED[d] is the Luhn contribution of digit d in a doubled position: 2 * d, minus 9 if above 9
+    private static final int[] DOUBLED = {0, 2, 4, 6, 8, 1, 3, 5, 7, 9};
+
     /**
      * Validates a credit card number using the Luhn algorithm.
+     * Whitespace anywhere in the number is ignored; any other non-digit character makes it invalid.
      *
      * @param creditNumber the credit card number to validate
      * @return true if the credit card number is valid, false otherwise
      */
-    public static boolean validate(String creditNumber) {
-        String cleaned = creditNumber.replaceAll("\\s+", "");
-        if (cleaned.length() < 2) return false;
+    public static boolean validate(CharSequence creditNumber) {
+        return validate(creditNumber, 0, creditNumber.length());
+    }
+
+    /**
+     * Validates the credit card number stored in a range of a character sequence, without copying it.
+     * Whitespace inside the range is ignored; any other non-digit character makes it invalid.
+     *
+     * @param chars the characters holding the credit card number
+     * @param start the index of the first character, inclusive
+     * @param end   the index of the last character, exclusive
+     * @return true if the credit card number is valid, false otherwise
+     */
+    public static boolean validate(CharSequence chars, int start, int end) {
+        int sum = 0;
+        int digits = 0;
+        for (int i = end - 1; i >= start; i--) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                sum += (digits & 1) == 0 ? digit : DOUBLED[digit];
+                digits++;
+            } else if (!isWhitespace(c)) {
+                return false;
+            }
+        }
+        return digits >= 2 && sum % 10 == 0;
+    }
+
+    /**
+     * Validates the ASCII credit card number stored in a range of a byte array, without copying it.
+     * Whitespace inside the range is ignored; any other non-digit byte makes it invalid.
+     *
+     * @param bytes  the bytes holding the credit card number
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @return true if the credit card number is valid, false otherwise
+     */
+    public static boolean validate(byte[] bytes, int offset, int length) {
+        int sum = 0;
+        int digits = 0;
+        for (int i = offset + length - 1; i >= offset; i--) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                int digit = b - '0';
+                sum += (digits & 1) == 0 ? digit : DOUBLED[digit];
+                digits++;
+            } else if (!isWhitespace((char) b)) {
+                return false;
+            }
+        }
+        return digits >= 2 && sum % 10 == 0;
+    }
+
+    /**
+     * Validates the ASCII credit card number stored in a range of a buffer, using absolute reads
+     * so the buffer's position is left untouched. Works on heap, direct and memory-mapped buffers.
+     * Whitespace inside the range is ignored; any other non-digit byte makes it invalid.
+     *
+     * @param buffer the buffer holding the credit card number
+     * @param start  the index of the first byte, inclusive
+     * @param end    the index of the last byte, exclusive
+     * @return true if the credit card number is valid, false otherwise
+     */
+    public static boolean validate(ByteBuffer buffer, int start, int end) {
+        int sum = 0;
+        int digits = 0;
+        for (int i = end - 1; i >= start; i--) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                int digit = b - '0';
+                sum += (digits & 1) == 0 ? digit : DOUBLED[digit];
+                digits++;
+            } else if (!isWhitespace((char) b)) {
+                return false;
+            }
+        }
+        return digits >= 2 && sum % 10 == 0;
+    }
 
-        int checkDigit = cleaned.charAt(cleaned.length() - 1) - '0';
-        int sum = luhnSum(cleaned.substring(0, cleaned.length() - 1));
-        return (sum + checkDigit) % 10 == 0;
+    /**
+     * Validates a credit card number packed into a long, check digit included as the last decimal digit.
+     *
+     * @param creditNumber the credit card number
+     * @return true if the credit card number is non-negative and valid, false otherwise
+     */
+    public static boolean validate(long creditNumber) {
+        if (creditNumber < 10) return false;
+        return (luhnSum(creditNumber / 10) + creditNumber % 10) % 10 == 0;
     }
 
     /**
      * Calculates the check digit for a given credit card number using the Luhn algorithm.
+     * Whitespace anywhere in the number is ignored.
      *
      * @param creditNumberWithoutCheck the credit card number without the check digit
      * @return the calculated check digit
+     * @throws IllegalArgumentException if the number holds a character that is neither a digit nor whitespace
      */
-    public static int calculateCheckDigit(String creditNumberWithoutCheck) {
+    public static int calculateCheckDigit(CharSequence creditNumberWithoutCheck) {
         int sum = luhnSum(creditNumberWithoutCheck);
         int mod = sum % 10;
         return mod == 0 ? 0 : 10 - mod;
     }
 
+    /**
+     * Calculates the check digit for a credit card number packed into a long.
+     *
+     * @param creditNumberWithoutCheck the credit card number without the check digit
+     * @return the calculated check digit
+     */
+    public static int calculateCheckDigit(long creditNumberWithoutCheck) {
+        int mod = luhnSum(creditNumberWithoutCheck) % 10;
+        return mod == 0 ? 0 : 10 - mod;
+    }
+
     /**
      * Generates a valid credit card number given the base digits.
+     * Whitespace in the base digits is ignored for the check digit and kept in the result.
      *
      * @param baseDigits the digits without the check digit
      * @return a valid credit card number including the check digit
+     * @throws IllegalArgumentException if the base digits hold a character that is neither a digit nor whitespace
      */
     public static String generateCardNumber(String baseDigits) {
         int checkDigit = calculateCheckDigit(baseDigits);
@@ -41,24 +144,64 @@ public class LuhnValidator {
     }
 
     /**
-     * Calculates the Luhn sum for a credit card number (excluding the check digit).
+     * Generates a valid credit card number packed into a long, given the base digits.
+     *
+     * @param baseDigits the digits without the check digit
+     * @return a valid credit card number including the check digit
+     */
+    public static long generateCardNumber(long baseDigits) {
+        return baseDigits * 10 + calculateCheckDigit(baseDigits);
+    }
+
+    /**
+     * Calculates the Luhn sum for a credit card number (excluding the check digit), skipping whitespace.
      *
      * @param digits the credit card number without the check digit
      * @return the Luhn sum
+     * @throws IllegalArgumentException if the number holds a character that is neither a digit nor whitespace
      */
-    private static int luhnSum(String digits) {
+    private static int luhnSum(CharSequence digits) {
         int sum = 0;
         boolean alternate = true; // alterna desde el último dígito antes del check
 
         for (int i = digits.length() - 1; i >= 0; i--) {
-            int digit = digits.charAt(i) - '0';
-            if (alternate) {
-                digit *= 2;
-                if (digit > 9) digit -= 9;
+            char c = digits.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                sum += alternate ? DOUBLED[digit] : digit;
+                alternate = !alternate;
+            } else if (!isWhitespace(c)) {
+                throw new IllegalArgumentException("Card numbers may only hold digits and whitespace.");
             }
-            sum += digit;
+        }
+        return sum;
+    }
+
+    /**
+     * Calculates the Luhn sum for a credit card number packed into a long (excluding the check digit).
+     *
+     * @param digits the credit card number without the check digit
+     * @return the Luhn sum
+     */
+    private static int luhnSum(long digits) {
+        int sum = 0;
+        boolean alternate = true;
+
+        for (long rest = digits; rest > 0; rest /= 10) {
+            int digit = (int) (rest % 10);
+            sum += alternate ? DOUBLED[digit] : digit;
             alternate = !alternate;
         }
         return sum;
     }
+
+    /**
+     * Checks for the characters matched by the regex class {@code \s}.
+     *
+     * @param c the character to check
+     * @return true if the character is ASCII whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
 }
@@ -1,17 +1,229 @@
 package dev.shoangenes;
 
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
+    private static final int DEFAULT_PORT = 9000;
+    private static final int DEFAULT_PROTOCOL_PORT = 9001;
+
     public  static void main(String[] args) {
         try {
-            BankingSystem system = new BankingSystem();
-            InputReader reader = new InputReader(new Scanner(System.in));
-            BSClient client = new BSClient(system, reader);
+            if (args.length > 0 && args[0].equals("screen")) {
+                screen(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("settle")) {
+                settle(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("server")) {
+                serve(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("protocol")) {
+                serveProtocol(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("loadgen")) {
+                generateLoad(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("verify")) {
+                verify();
+                return;
+            }
+            if (args.length > 0 && args[0].equals("compact")) {
+                compact(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("migrate-pins")) {
+                migratePins();
+                return;
+            }
+
+            try (BankingSystem system = new BankingSystem()) {
+                InputReader reader = new InputReader(new Scanner(System.in));
+                BSClient client = new BSClient(system, reader);
 
-            client.run();
+                client.run();
+            }
         } catch (DatabaseException e) {
             System.out.println("Critical error: " + e.getMessage());
         }
     }
+
+    /**
+     * Serves the banking menus over TCP until the process is stopped: {@code server [port]}.
+     *
+     * @param args the command line arguments
+     */
+    private static void serve(String[] args) {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        BankingSystem system = new BankingSystem();
+        BankServer server = new BankServer(system, port);
+        exposeMetrics(system, server::close);
+        server.start();
+        System.out.println("Listening on port " + server.getPort() + ".");
+        try {
+            server.awaitClose();
+        } catch (InterruptedException e) {
+            server.close();
+        }
+    }
+
+    /**
+     * Serves the machine-client line protocol until the process is stopped: {@code protocol [port]}.
+     *
+     * @param args the command line arguments
+     */
+    private static void serveProtocol(String[] args) {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PROTOCOL_PORT;
+        BankingSystem system = new BankingSystem();
+        ProtocolServer server = new ProtocolServer(system, new InetSocketAddress(port),
+                Runtime.getRuntime().availableProcessors() * 2);
+        exposeMetrics(system, server::close);
+        server.start();
+        System.out.println("Protocol server listening on port " + server.getPort() + ".");
+        try {
+            server.awaitClose();
+        } catch (InterruptedException e) {
+            server.close();
+        }
+    }
+
+    /**
+     * Registers the metrics of a serving system over JMX, and prints them when the process stops.
+     *
+     * @param system the system being served
+     * @param close  stops the server
+     */
+    private static void exposeMetrics(BankingSystem system, Runnable close) {
+        system.getMetrics().register();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            close.run();
+            System.out.print(system.getMetrics().dump());
+        }));
+    }
+
+    /**
+     * Measures a running protocol server: {@code loadgen <host> <port> [connections] [requests] [depth]}.
+     *
+     * @param args the command line arguments
+     */
+    private static void generateLoad(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: loadgen <host> <port> [connections] [requests] [depth]");
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int requests = args.length > 4 ? Integer.parseInt(args[4]) : 10_000;
+        int depth = args.length > 5 ? Integer.parseInt(args[5]) : 8;
+        try {
+            System.out.println(new ProtocolLoadGenerator(address, connections, requests, depth).run());
+        } catch (UncheckedIOException e) {
+            System.out.println("Load run failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Screens a file of card numbers against the database: {@code screen <input> [rejects]}.
+     *
+     * @param args the command line arguments
+     */
+    private static void screen(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: screen <input> [rejects]");
+            return;
+        }
+        DatabaseManager db = new DatabaseManager();
+        try {
+            Path rejects = args.length > 2 ? Path.of(args[2]) : null;
+            CardFileScreener.Report report = new CardFileScreener(db).screen(Path.of(args[1]), rejects);
+            System.out.println("Valid: " + report.valid());
+            System.out.println("Invalid: " + report.invalid());
+            System.out.println("Unknown: " + report.unknown());
+        } catch (UncheckedIOException e) {
+            System.out.println("Screening failed: " + e.getMessage());
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    /**
+     * Settles a file of transfers against the database: {@code settle <input> [rejects] [batch-size]}.
+     *
+     * @param args the command line arguments
+     */
+    private static void settle(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: settle <input> [rejects] [batch-size]");
+            return;
+        }
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        DatabaseManager db = new DatabaseManager();
+        try {
+            Path rejects = args.length > 2 ? Path.of(args[2]) : null;
+            System.out.println(new SettlementJob(db, batchSize).settle(Path.of(args[1]), rejects));
+        } catch (UncheckedIOException e) {
+            System.out.println("Settlement failed: " + e.getMessage());
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    /**
+     * Checks every stored balance against the ledger: {@code verify}.
+     */
+    private static void verify() {
+        DatabaseManager db = new DatabaseManager();
+        try {
+            List<String> unbalanced = db.verifyBalances();
+            System.out.println(unbalanced.isEmpty()
+                    ? "All balances match the ledger."
+                    : unbalanced.size() + " balances do not match the ledger: " + unbalanced);
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    /**
+     * Checkpoints balances and archives old ledger entries: {@code compact <archive-dir> [retention-days]}.
+     *
+     * @param args the command line arguments
+     */
+    private static void compact(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: compact <archive-dir> [retention-days]");
+            return;
+        }
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+        DatabaseManager db = new DatabaseManager();
+        try (LedgerCompactor compactor = new LedgerCompactor(db, Path.of(args[1]), days, TimeUnit.DAYS)) {
+            LedgerCompactor.Report report = compactor.runOnce();
+            System.out.println("Checkpointed accounts: " + report.checkpointedAccounts());
+            System.out.println("Archived entries: " + report.archivedEntries() + " in " + report.segments() + " segments");
+        } catch (UncheckedIOException e) {
+            System.out.println("Compaction failed: " + e.getMessage());
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    /**
+     * Hashes every PIN still stored in plaintext: {@code migrate-pins}.
+     */
+    private static void migratePins() {
+        DatabaseManager db = new DatabaseManager();
+        try (BankingSystem system = new BankingSystem(db)) {
+            System.out.println("Hashed PINs: " + system.migratePins());
+        } finally {
+            db.disconnect();
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package dev.shoangenes;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between amounts entered or displayed as decimals and amounts stored as long cents.
+ * All balances and amounts are kept in cents internally, so arithmetic on them is exact.
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Parses a decimal amount such as "12.5" or "12,50" into cents.
+     *
+     * @param amount the amount to parse, with at most two decimal places
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not a number, has more than two decimal places,
+     *                               or does not fit in a long
+     */
+    public static long parse(String amount) {
+        try {
+            return new BigDecimal(amount.trim().replace(",", ".")).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount has too many decimal places or is too large: " + amount);
+        }
+    }
+
+    /**
+     * Formats an amount in cents as a decimal with two places, for example 1250 as "12.50".
+     *
+     * @param cents the amount in cents
+     * @return the formatted amount
+     */
+    public static String format(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+}
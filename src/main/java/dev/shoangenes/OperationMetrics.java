@@ -0,0 +1,89 @@
+package dev.shoangenes;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one {@link BankingSystem} operation. The latency of every call is split
+ * into the time spent in the account store and everything else: argument and lockout checks, lock waits and
+ * PIN hashing, reported together as validation time.
+ * <p>
+ * A call that throws an IllegalArgumentException, such as a wrong PIN or insufficient funds, counts as rejected;
+ * a call that throws anything else, such as a DatabaseException, counts as failed. Both still count as calls
+ * and are recorded in the histograms.
+ */
+public class OperationMetrics {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram validation = new LatencyHistogram();
+    private final LatencyHistogram database = new LatencyHistogram();
+
+    /**
+     * Records one call.
+     *
+     * @param totalNanos    the duration of the call, in nanoseconds
+     * @param databaseNanos the part of it spent in the account store, in nanoseconds
+     * @param failure       the exception the call threw, or null if it succeeded
+     */
+    void record(long totalNanos, long databaseNanos, RuntimeException failure) {
+        calls.increment();
+        if (failure instanceof IllegalArgumentException) {
+            rejections.increment();
+        } else if (failure != null) {
+            failures.increment();
+        }
+        validation.record(totalNanos - databaseNanos);
+        database.record(databaseNanos);
+    }
+
+    /**
+     * Gets the number of calls, successful or not.
+     * @return the call count
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Gets the number of calls rejected with an IllegalArgumentException.
+     * @return the rejection count
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Gets the number of calls that failed with any other exception.
+     * @return the failure count
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Summarizes the time calls spent outside the account store.
+     * @return the validation latencies
+     */
+    public LatencySnapshot getValidation() {
+        return validation.snapshot();
+    }
+
+    /**
+     * Summarizes the time calls spent in the account store.
+     * @return the database latencies
+     */
+    public LatencySnapshot getDatabase() {
+        return database.snapshot();
+    }
+
+    /**
+     * Discards every count and recorded latency.
+     */
+    void reset() {
+        calls.reset();
+        rejections.reset();
+        failures.reset();
+        validation.reset();
+        database.reset();
+    }
+}
@@ -0,0 +1,107 @@
+package dev.shoangenes;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PIN hasher using the JDK's PBKDF2 with HMAC-SHA256. Hashes are encoded as
+ * {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}, so hashes made with an older iteration count
+ * still verify after the count is raised, and are picked up by {@link #needsRehash(String)}.
+ * <p>
+ * The iteration count is the cost factor: verification time grows linearly with it.
+ */
+public class Pbkdf2PinHasher implements PinHasher {
+    public static final int DEFAULT_ITERATIONS = 10_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructs a new Pbkdf2PinHasher with the default iteration count.
+     */
+    public Pbkdf2PinHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Constructs a new Pbkdf2PinHasher.
+     *
+     * @param iterations the number of PBKDF2 iterations new hashes are made with
+     * @throws IllegalArgumentException if the iteration count is not positive
+     */
+    public Pbkdf2PinHasher(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iteration count must be positive.");
+        }
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String hash(String pin) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(derive(pin, salt, iterations, KEY_BITS));
+    }
+
+    @Override
+    public boolean verify(String pin, String stored) {
+        if (!isHash(stored)) {
+            return false;
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int storedIterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return storedIterations > 0
+                    && MessageDigest.isEqual(expected, derive(pin, salt, storedIterations, KEY_BITS));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isHash(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    @Override
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    /**
+     * Derives the PBKDF2 key of a PIN.
+     *
+     * @param pin        the PIN
+     * @param salt       the salt
+     * @param iterations the iteration count
+     * @param keyBits    the length of the key, in bits
+     * @return the derived key
+     * @throws IllegalStateException if the JDK does not provide PBKDF2
+     */
+    static byte[] derive(String pin, byte[] salt, int iterations, int keyBits) {
+        PBEKeySpec spec = new PBEKeySpec(pin.toCharArray(), salt, iterations, keyBits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available.", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
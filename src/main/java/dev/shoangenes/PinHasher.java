@@ -0,0 +1,41 @@
+package dev.shoangenes;
+
+/**
+ * Turns PINs into stored hashes and checks PINs against them.
+ */
+public interface PinHasher {
+
+    /**
+     * Hashes a PIN with a fresh salt.
+     *
+     * @param pin the PIN
+     * @return the encoded hash, carrying everything needed to verify it later
+     */
+    String hash(String pin);
+
+    /**
+     * Checks a PIN against a stored hash produced by {@link #hash(String)}.
+     *
+     * @param pin    the PIN to check
+     * @param stored the stored hash
+     * @return true if the PIN matches; false if it does not or the hash is malformed
+     */
+    boolean verify(String pin, String stored);
+
+    /**
+     * Checks whether a stored value is a hash this hasher understands, rather than a plaintext PIN.
+     *
+     * @param stored the stored value
+     * @return true if the value is a hash of this hasher
+     */
+    boolean isHash(String stored);
+
+    /**
+     * Checks whether a stored value should be replaced by a fresh hash, because it is a plaintext PIN
+     * or was hashed with different settings.
+     *
+     * @param stored the stored value
+     * @return true if the value should be rehashed
+     */
+    boolean needsRehash(String stored);
+}
@@ -0,0 +1,293 @@
+package dev.shoangenes;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Runs the slow work of a {@link PinHasher} on a fixed pool of threads, so however many logins arrive at once,
+ * hashing never takes more than that many cores away from everything else. Callers beyond the pool and its
+ * bounded queue wait for a free slot.
+ * <p>
+ * A successful verification is remembered for a short time, so a client logging in repeatedly with the same
+ * PIN pays for the hash once per session instead of on every request. The cache holds only a keyed MAC of the
+ * PIN under a random per-process key, and an entry only matches while the stored hash it was verified
+ * against is unchanged. Failed verifications are never cached.
+ */
+public class PinVerifier implements AutoCloseable {
+    public static final long DEFAULT_SESSION_TTL_SECONDS = 60;
+
+    private static final int DEFAULT_MAX_SESSIONS = 10_000;
+    private static final int DEFAULT_MAX_QUEUED = 1024;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final PinHasher hasher;
+    private final ExecutorService pool;
+    private final Semaphore slots;
+    private final long sessionTtlNanos;
+    private final int maxSessions;
+    private final Map<String, Session> sessions;
+    private final SecretKeySpec sessionKey;
+
+    private final LongAdder sessionHits = new LongAdder();
+    private final LongAdder hashVerifications = new LongAdder();
+
+    /**
+     * A remembered successful verification.
+     */
+    private record Session(String stored, byte[] pinMac, long expiresAt) {
+    }
+
+    /**
+     * Constructs a new PinVerifier with the default PBKDF2 hasher, half the cores for hashing
+     * and the default session time to live.
+     */
+    public PinVerifier() {
+        this(new Pbkdf2PinHasher(), Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                DEFAULT_SESSION_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructs a new PinVerifier.
+     *
+     * @param hasher     the hasher PINs are hashed and verified with
+     * @param threads    the number of threads hashing at once
+     * @param sessionTtl how long a successful verification is remembered; 0 disables the session cache
+     * @param unit       the unit of the session time to live
+     * @throws IllegalArgumentException if the thread count is not positive or the time to live is negative
+     */
+    public PinVerifier(PinHasher hasher, int threads, long sessionTtl, TimeUnit unit) {
+        if (threads <= 0 || sessionTtl < 0) {
+            throw new IllegalArgumentException("Thread count must be positive and session ttl must not be negative.");
+        }
+        this.hasher = hasher;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "pin-verifier-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slots = new Semaphore(threads + DEFAULT_MAX_QUEUED);
+        this.sessionTtlNanos = unit.toNanos(sessionTtl);
+        this.maxSessions = DEFAULT_MAX_SESSIONS;
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > PinVerifier.this.maxSessions;
+            }
+        };
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.sessionKey = new SecretKeySpec(key, MAC_ALGORITHM);
+    }
+
+    /**
+     * Checks a PIN against the value stored for an account. Stored values that are not hashes yet are plaintext
+     * PINs from before hashing was introduced, and are compared in constant time.
+     *
+     * @param cardNumber the card number of the account
+     * @param pin        the PIN to check
+     * @param stored     the stored hash or plaintext PIN of the account
+     * @return true if the PIN matches
+     * @throws IllegalStateException if the calling thread is interrupted while waiting
+     */
+    public boolean verify(String cardNumber, String pin, String stored) {
+        if (!hasher.isHash(stored)) {
+            return MessageDigest.isEqual(pin.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        byte[] pinMac = sessionTtlNanos > 0 ? mac(cardNumber, pin) : null;
+        if (pinMac != null) {
+            Session session;
+            synchronized (sessions) {
+                session = sessions.get(cardNumber);
+            }
+            if (session != null && session.stored().equals(stored) && System.nanoTime() < session.expiresAt()
+                    && MessageDigest.isEqual(session.pinMac(), pinMac)) {
+                sessionHits.increment();
+                return true;
+            }
+        }
+
+        hashVerifications.increment();
+        boolean verified = run(() -> hasher.verify(pin, stored));
+        if (verified && pinMac != null) {
+            synchronized (sessions) {
+                sessions.put(cardNumber, new Session(stored, pinMac, System.nanoTime() + sessionTtlNanos));
+            }
+        }
+        return verified;
+    }
+
+    /**
+     * Hashes a PIN on the hashing pool.
+     *
+     * @param pin the PIN
+     * @return the encoded hash
+     * @throws IllegalStateException if the calling thread is interrupted while waiting
+     */
+    public String hash(String pin) {
+        return run(() -> hasher.hash(pin));
+    }
+
+    /**
+     * Hashes many PINs, spreading them over the whole hashing pool.
+     *
+     * @param pins the PINs
+     * @return the encoded hashes, in the same order
+     * @throws IllegalStateException if the calling thread is interrupted while waiting
+     */
+    public List<String> hashAll(List<String> pins) {
+        List<Future<String>> futures = new ArrayList<>(pins.size());
+        for (String pin : pins) {
+            futures.add(submit(() -> hasher.hash(pin)));
+        }
+        List<String> hashes = new ArrayList<>(pins.size());
+        for (Future<String> future : futures) {
+            hashes.add(await(future));
+        }
+        return hashes;
+    }
+
+    /**
+     * Checks whether a stored value should be replaced by a fresh hash.
+     *
+     * @param stored the stored hash or plaintext PIN
+     * @return true if the value should be rehashed
+     * @see PinHasher#needsRehash(String)
+     */
+    public boolean needsRehash(String stored) {
+        return hasher.needsRehash(stored);
+    }
+
+    /**
+     * Forgets the remembered verification of an account, e.g. when it is closed.
+     *
+     * @param cardNumber the card number of the account
+     */
+    public void forget(String cardNumber) {
+        synchronized (sessions) {
+            sessions.remove(cardNumber);
+        }
+    }
+
+    /**
+     * Gets the number of verifications answered from the session cache.
+     * @return the session hit count
+     */
+    public long getSessionHits() {
+        return sessionHits.sum();
+    }
+
+    /**
+     * Gets the number of verifications that ran the hasher.
+     * @return the hash verification count
+     */
+    public long getHashVerifications() {
+        return hashVerifications.sum();
+    }
+
+    /**
+     * Stops the hashing pool.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs hashing work on the pool and waits for its result.
+     *
+     * @param work the work
+     * @param <T>  the result type of the work
+     * @return the result of the work
+     * @throws IllegalStateException if the calling thread is interrupted while waiting
+     */
+    private <T> T run(Callable<T> work) {
+        return await(submit(work));
+    }
+
+    /**
+     * Submits hashing work to the pool once a slot is free.
+     *
+     * @param work the work
+     * @param <T>  the result type of the work
+     * @return the future of the work
+     * @throws IllegalStateException if the calling thread is interrupted while waiting for a slot
+     */
+    private <T> Future<T> submit(Callable<T> work) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to hash a PIN.", e);
+        }
+        try {
+            return pool.submit(() -> {
+                try {
+                    return work.call();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for hashing work to finish.
+     *
+     * @param future the future of the work
+     * @param <T>    the result type of the work
+     * @return the result of the work
+     * @throws IllegalStateException if the calling thread is interrupted while waiting
+     */
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a PIN.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Failed to hash a PIN.", e.getCause());
+        }
+    }
+
+    /**
+     * Computes the keyed MAC of a card number and PIN that the session cache holds instead of the PIN.
+     *
+     * @param cardNumber the card number
+     * @param pin        the PIN
+     * @return the MAC
+     */
+    private byte[] mac(String cardNumber, String pin) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(sessionKey);
+            return mac.doFinal((cardNumber + ":" + pin).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available.", e);
+        }
+    }
+}
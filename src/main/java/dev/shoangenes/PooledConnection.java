@@ -0,0 +1,187 @@
+package dev.shoangenes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A connection leased from a {@link ConnectionPool}. Closing the lease returns the
+ * connection to the pool instead of closing it.
+ * <p>
+ * Prepared statements are cached per connection, so each SQL string is parsed once for the
+ * lifetime of the connection. A lease is owned by one thread, so the cache needs no locking.
+ * <p>
+ * Statements run through {@link #executeQuery}, {@link #executeUpdate} and {@link #executeBatch}, and commits
+ * through {@link #commit()}, are timed into the pool's {@link StorageTelemetry}.
+ * <p>
+ * Transactions that write should start with {@link #beginImmediate()}. A deferred transaction only takes the
+ * write lock at its first write; if another connection committed since the transaction first read, SQLite
+ * fails that write with SQLITE_BUSY at once instead of waiting through the busy handler.
+ */
+public class PooledConnection implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final Connection conn;
+    private final StorageTelemetry telemetry;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private final Map<PreparedStatement, String> sqlOf = new IdentityHashMap<>();
+    private boolean immediate;
+
+    /**
+     * Constructs a new PooledConnection owned by the given pool.
+     *
+     * @param pool      the pool the connection belongs to
+     * @param conn      the underlying JDBC connection
+     * @param telemetry where statements and commits are timed
+     */
+    PooledConnection(ConnectionPool pool, Connection conn, StorageTelemetry telemetry) {
+        this.pool = pool;
+        this.conn = conn;
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Gets the underlying JDBC connection.
+     * @return the JDBC connection
+     */
+    public Connection connection() {
+        return conn;
+    }
+
+    /**
+     * Gets the cached prepared statement for the given SQL, preparing it on first use.
+     * The returned statement is owned by this connection and must not be closed by the caller.
+     *
+     * @param sql the SQL of the statement
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            long started = System.nanoTime();
+            statement = conn.prepareStatement(sql);
+            telemetry.recordPrepare(System.nanoTime() - started);
+            statements.put(sql, statement);
+            sqlOf.put(statement, sql);
+        }
+        return statement;
+    }
+
+    /**
+     * Runs a cached query, timing it until its first row is ready.
+     *
+     * @param statement a statement returned by {@link #prepare(String)}, with its parameters set
+     * @return the result set, to be closed by the caller
+     * @throws SQLException if the query fails
+     */
+    public ResultSet executeQuery(PreparedStatement statement) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return statement.executeQuery();
+        } finally {
+            telemetry.recordStatement(sqlOf.get(statement), System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Runs a cached update and times it.
+     *
+     * @param statement a statement returned by {@link #prepare(String)}, with its parameters set
+     * @return the number of rows changed
+     * @throws SQLException if the update fails
+     */
+    public int executeUpdate(PreparedStatement statement) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return statement.executeUpdate();
+        } finally {
+            telemetry.recordStatement(sqlOf.get(statement), System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Runs the batch of a cached statement and times it as one statement.
+     *
+     * @param statement a statement returned by {@link #prepare(String)}, with its batch added
+     * @return the number of rows changed by each entry of the batch
+     * @throws SQLException if the batch fails
+     */
+    public int[] executeBatch(PreparedStatement statement) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return statement.executeBatch();
+        } finally {
+            telemetry.recordStatement(sqlOf.get(statement), System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Starts a transaction that takes the write lock of the database right away, waiting through the busy
+     * handler while another connection holds it. The transaction must be ended with {@link #commit()} or
+     * {@link #rollback()}; the connection stays in auto-commit mode, so it must not be ended through JDBC.
+     *
+     * @throws SQLException if the transaction cannot be started, e.g. because the wait timed out
+     */
+    public void beginImmediate() throws SQLException {
+        prepare("BEGIN IMMEDIATE").execute();
+        immediate = true;
+    }
+
+    /**
+     * Commits the current transaction and times the commit, which includes syncing it to disk.
+     *
+     * @throws SQLException if the commit fails; the transaction is then still open and must be rolled back
+     */
+    public void commit() throws SQLException {
+        long started = System.nanoTime();
+        try {
+            if (immediate) {
+                prepare("COMMIT").execute();
+                immediate = false;
+            } else {
+                conn.commit();
+            }
+        } finally {
+            telemetry.recordCommit(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Rolls back the current transaction, if there is one.
+     *
+     * @throws SQLException if the rollback fails
+     */
+    public void rollback() throws SQLException {
+        if (immediate) {
+            immediate = false;
+            prepare("ROLLBACK").execute();
+        } else if (!conn.getAutoCommit()) {
+            conn.rollback();
+        }
+    }
+
+    /**
+     * Closes every cached prepared statement of this connection.
+     *
+     * @throws SQLException if a statement cannot be closed
+     */
+    void closeStatements() throws SQLException {
+        for (PreparedStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+        sqlOf.clear();
+    }
+
+    /**
+     * Returns the connection to the pool.
+     */
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
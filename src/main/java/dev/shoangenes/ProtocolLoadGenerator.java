@@ -0,0 +1,175 @@
+package dev.shoangenes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives a {@link ProtocolServer} with pipelined requests and measures throughput and latency.
+ * Every connection creates two funded accounts and then keeps a fixed number of requests in flight,
+ * mixing BALANCE, INCOME and TRANSFER between its own accounts.
+ */
+public class ProtocolLoadGenerator {
+    private final InetSocketAddress server;
+    private final int connections;
+    private final int requestsPerConnection;
+    private final int pipelineDepth;
+
+    /**
+     * Outcome of a load run.
+     *
+     * @param requests      the number of requests answered
+     * @param errors        the number of ERR responses
+     * @param opsPerSecond  the overall throughput
+     * @param p50Micros     the median latency in microseconds
+     * @param p99Micros     the 99th percentile latency in microseconds
+     */
+    public record Report(long requests, long errors, double opsPerSecond, long p50Micros, long p99Micros) {
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d errors, %.0f ops/s, p50 %d us, p99 %d us",
+                    requests, errors, opsPerSecond, p50Micros, p99Micros);
+        }
+    }
+
+    /**
+     * Constructs a new ProtocolLoadGenerator.
+     *
+     * @param server                the address of the protocol server
+     * @param connections           the number of concurrent connections
+     * @param requestsPerConnection the number of measured requests each connection sends
+     * @param pipelineDepth         the number of requests each connection keeps in flight
+     * @throws IllegalArgumentException if any count is not positive
+     */
+    public ProtocolLoadGenerator(InetSocketAddress server, int connections, int requestsPerConnection, int pipelineDepth) {
+        if (connections <= 0 || requestsPerConnection <= 0 || pipelineDepth <= 0) {
+            throw new IllegalArgumentException("Connections, requests and pipeline depth must be positive.");
+        }
+        this.server = server;
+        this.connections = connections;
+        this.requestsPerConnection = requestsPerConnection;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * Runs the load and waits for every connection to finish.
+     *
+     * @return the measured throughput and latencies
+     * @throws UncheckedIOException if a connection fails
+     */
+    public Report run() {
+        ExecutorService clients = Executors.newFixedThreadPool(connections);
+        try {
+            long start = System.nanoTime();
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                results.add(clients.submit(this::runConnection));
+            }
+
+            long[] latencies = new long[connections * requestsPerConnection];
+            long errors = 0;
+            int count = 0;
+            for (Future<long[]> result : results) {
+                long[] connectionLatencies = result.get();
+                for (long latency : connectionLatencies) {
+                    if (latency < 0) {
+                        errors++;
+                        latency = -latency;
+                    }
+                    latencies[count++] = latency;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            return new Report(count, errors, count / seconds,
+                    latencies[(int) (count * 0.50)] / 1000, latencies[Math.min(count - 1, (int) (count * 0.99))] / 1000);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw new UncheckedIOException("Load connection failed.", cause);
+            }
+            throw new IllegalStateException("Load connection failed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running load.", e);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one connection: sets up its accounts, then sends its requests with the configured depth.
+     *
+     * @return the latency of every request in nanoseconds, negated for ERR responses
+     * @throws IOException if the connection fails
+     */
+    private long[] runConnection() throws IOException {
+        try (Socket socket = new Socket(server.getAddress(), server.getPort())) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+
+            String[] first = call(in, out, "CREATE").split(" ");
+            String[] second = call(in, out, "CREATE").split(" ");
+            call(in, out, "INCOME " + first[1] + " " + first[2] + " 1000000");
+
+            String[] requests = {
+                    "BALANCE " + first[1] + " " + first[2] + "\n",
+                    "INCOME " + second[1] + " " + second[2] + " 1.00\n",
+                    "TRANSFER " + first[1] + " " + first[2] + " " + second[1] + " 0.01\n",
+            };
+
+            long[] latencies = new long[requestsPerConnection];
+            long[] sentAt = new long[pipelineDepth];
+            int sent = 0;
+            int received = 0;
+            while (received < requestsPerConnection) {
+                while (sent < requestsPerConnection && sent - received < pipelineDepth) {
+                    sentAt[sent % pipelineDepth] = System.nanoTime();
+                    out.write(requests[sent % requests.length].getBytes(StandardCharsets.UTF_8));
+                    sent++;
+                }
+                out.flush();
+
+                String response = in.readLine();
+                if (response == null) {
+                    throw new IOException("Server closed the connection.");
+                }
+                long latency = System.nanoTime() - sentAt[received % pipelineDepth];
+                latencies[received++] = response.startsWith("OK") ? latency : -latency;
+            }
+            return latencies;
+        }
+    }
+
+    /**
+     * Sends one request and waits for its response.
+     *
+     * @param in      the reader of the connection
+     * @param out     the output of the connection
+     * @param request the request to send
+     * @return the response
+     * @throws IOException if the request fails or is answered with ERR
+     */
+    private static String call(BufferedReader in, OutputStream out, String request) throws IOException {
+        out.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        String response = in.readLine();
+        if (response == null || !response.startsWith("OK")) {
+            throw new IOException("Setup request " + request + " failed: " + response);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,352 @@
+package dev.shoangenes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking server for the {@link BankProtocol}. A single selector thread does all socket I/O and
+ * splits incoming bytes into request lines; the requests themselves run on a worker pool, because
+ * {@link BankingSystem} calls block on the database.
+ * <p>
+ * Clients may pipeline: they can send any number of requests without waiting, and responses come back
+ * in request order. Requests of one connection run one at a time, while different connections run in parallel.
+ * A connection holds at most {@value #MAX_PENDING_REQUESTS} requests awaiting a response; once it has that
+ * many, the server stops reading from it until some of the responses are written, so a client that sends
+ * faster than it reads is held back by TCP flow control instead of filling the heap.
+ */
+public class ProtocolServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ProtocolServer.class.getName());
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_PENDING_REQUESTS = 1024;
+
+    private final BankProtocol protocol;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean closed;
+
+    /**
+     * State of one client connection.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String source;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<String> requests = new ArrayDeque<>();   // guarded by this
+        private final Queue<ByteBuffer> responses = new ArrayDeque<>(); // guarded by this
+        private boolean processing;                                  // guarded by this
+        private int pending;                                         // selector thread only
+
+        Connection(SocketChannel channel, SelectionKey key, String source) {
+            this.channel = channel;
+            this.key = key;
+            this.source = source;
+        }
+
+        /**
+         * Queues a request, starting a worker for this connection unless one is already draining it.
+         * Called on the selector thread.
+         */
+        void submit(String request) {
+            pending++;
+            synchronized (this) {
+                requests.add(request);
+                if (processing) return;
+                processing = true;
+            }
+            workers.execute(this::drain);
+        }
+
+        /**
+         * Checks whether the connection has as many requests awaiting a response as it may hold.
+         * Called on the selector thread.
+         *
+         * @return true if no more requests should be read from the client for now
+         */
+        boolean isFull() {
+            return pending >= MAX_PENDING_REQUESTS;
+        }
+
+        /**
+         * Runs queued requests in order until none are left. Called on a worker thread. If a request
+         * fails in a way the protocol does not answer, the connection is closed, since the client would
+         * otherwise wait forever for its response.
+         */
+        private void drain() {
+            boolean drained = false;
+            try {
+                while (true) {
+                    String request;
+                    synchronized (this) {
+                        request = requests.poll();
+                        if (request == null) {
+                            processing = false;
+                            drained = true;
+                            return;
+                        }
+                    }
+                    byte[] response = (protocol.handle(request, source) + "\n").getBytes(StandardCharsets.UTF_8);
+                    synchronized (this) {
+                        responses.add(ByteBuffer.wrap(response));
+                    }
+                    pendingWrites.add(this);
+                    selector.wakeup();
+                }
+            } finally {
+                if (!drained) {
+                    synchronized (this) {
+                        requests.clear();
+                        processing = false;
+                    }
+                    disconnect(key);
+                }
+            }
+        }
+
+        /**
+         * Writes as many queued responses as the socket accepts. Called on the selector thread.
+         *
+         * @return true if every queued response was written
+         */
+        boolean flush() throws IOException {
+            synchronized (this) {
+                while (!responses.isEmpty()) {
+                    ByteBuffer response = responses.peek();
+                    channel.write(response);
+                    if (response.hasRemaining()) return false;
+                    responses.poll();
+                    pending--;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Constructs a new ProtocolServer and binds it to the given address.
+     * Call {@link #start()} to begin serving.
+     *
+     * @param bankingSystem the banking system requests run against
+     * @param address       the address to listen on
+     * @param workerThreads the number of threads running requests
+     * @throws UncheckedIOException if the address cannot be bound
+     */
+    public ProtocolServer(BankingSystem bankingSystem, InetSocketAddress address, int workerThreads) {
+        this.protocol = new BankProtocol(bankingSystem);
+        try {
+            this.selector = Selector.open();
+            this.serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address, 4096);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bind protocol server to " + address + ".", e);
+        }
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+        this.selectorThread = new Thread(this::selectLoop, "protocol-server-selector");
+    }
+
+    /**
+     * Starts serving on a background thread.
+     */
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void awaitClose() throws InterruptedException {
+        selectorThread.join();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     * @return the local port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the server and disconnects every client.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        workers.shutdown();
+    }
+
+    /**
+     * Dispatches socket events until the server is closed.
+     */
+    private void selectLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+
+                Connection pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    if (pending.key.isValid()) {
+                        pending.key.interestOps(pending.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) read(connection);
+                            if (key.isValid() && key.isWritable()) write(connection);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Protocol server stopped.", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                disconnect(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * Accepts a pending connection.
+     *
+     * @throws IOException if the connection cannot be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key, sourceOf(channel)));
+    }
+
+    /**
+     * Gets the address a client connects from, which its failed logins are counted against.
+     *
+     * @param channel the channel of the client
+     * @return the host address of the client, or null if it is not known
+     */
+    private static String sourceOf(SocketChannel channel) {
+        try {
+            return channel.getRemoteAddress() instanceof InetSocketAddress remote && remote.getAddress() != null
+                    ? remote.getAddress().getHostAddress()
+                    : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads available bytes and submits the complete request lines.
+     *
+     * @param connection the connection to read from
+     * @throws IOException if the connection fails, is closed by the client or sends an oversized line
+     */
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            throw new IOException("Connection closed by client.");
+        }
+        submitLines(connection);
+    }
+
+    /**
+     * Submits the complete request lines in the read buffer. If the connection fills up, the remaining
+     * lines stay in the buffer and the server stops reading from the client until {@link #write} makes room.
+     *
+     * @param connection the connection whose buffered lines to submit
+     * @throws IOException if the client sent an oversized line
+     */
+    private void submitLines(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        int lineStart = 0;
+        for (int i = 0; i < in.limit() && !connection.isFull(); i++) {
+            if (in.get(i) == '\n') {
+                int lineEnd = i > lineStart && in.get(i - 1) == '\r' ? i - 1 : i;
+                if (lineEnd > lineStart) {
+                    connection.submit(new String(in.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                }
+                lineStart = i + 1;
+            }
+        }
+        in.position(lineStart);
+        in.compact();
+
+        if (connection.isFull()) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        } else if (in.position() > MAX_LINE_LENGTH) {
+            throw new IOException("Request line too long.");
+        }
+    }
+
+    /**
+     * Writes queued responses, and stops watching for writability once they are all out. Resumes reading
+     * from a full connection once written responses have made room for more requests.
+     *
+     * @param connection the connection to write to
+     * @throws IOException if the connection fails or the buffered requests hold an oversized line
+     */
+    private void write(Connection connection) throws IOException {
+        SelectionKey key = connection.key;
+        if (connection.flush()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if ((key.interestOps() & SelectionKey.OP_READ) == 0 && !connection.isFull()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            submitLines(connection);
+        }
+    }
+
+    /**
+     * Closes a connection or the listening channel.
+     *
+     * @param key the key of the channel to close
+     */
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
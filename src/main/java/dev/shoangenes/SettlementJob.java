@@ -0,0 +1,316 @@
+package dev.shoangenes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Settles files of transfers, one {@code from,to,amount} row per line with the amount as a decimal,
+ * e.g. {@code 4000001234567899,4000009876543210,12.50}. The file is read as a stream, one window of rows
+ * at a time, so its size is not limited by memory.
+ * <p>
+ * With more than one thread, the rows of a window are scheduled into waves: a row goes into the wave after
+ * the last one touching either of its accounts, so the rows of a wave share no account and every account
+ * still sees its rows in file order. Each wave is split into batches applied in parallel with
+ * {@link AccountStore#transferAll(List)}, and the next wave starts once they are all done. The outcome is
+ * the same as applying the rows one by one in file order.
+ * <p>
+ * SQLite allows one writer at a time, so a {@link DatabaseManager} gains from the batching, one commit per
+ * batch instead of one per transfer, and not from parallelism: settle into it with one thread, which skips
+ * the scheduling and applies every window in file order.
+ */
+public class SettlementJob {
+    private static final int WINDOW_SIZE = 65_536;
+
+    private final AccountStore db;
+    private final int threads;
+    private final int batchSize;
+
+    /**
+     * Outcome of settling a file.
+     *
+     * @param applied      rows whose transfer was applied
+     * @param invalid      rows that are not a valid transfer: malformed, an invalid card number, the same
+     *                     account on both sides, or an amount that is not positive
+     * @param unknown      rows naming an account that does not exist
+     * @param insufficient rows whose source account did not cover the amount when their turn came
+     * @param opsPerSecond the rows settled per second, rejected ones included
+     */
+    public record Report(long applied, long invalid, long unknown, long insufficient, double opsPerSecond) {
+        @Override
+        public String toString() {
+            return String.format("%d applied, %d invalid, %d unknown, %d insufficient funds, %.0f rows/s",
+                    applied, invalid, unknown, insufficient, opsPerSecond);
+        }
+    }
+
+    /**
+     * One row of the input.
+     *
+     * @param text     the line as read
+     * @param transfer the transfer it holds, or null if it is not a valid transfer
+     */
+    private record Row(String text, Transfer transfer) {
+    }
+
+    /**
+     * Constructs a new SettlementJob that applies rows in file order on the calling thread.
+     *
+     * @param db        the store to settle into
+     * @param batchSize the most transfers applied in one transaction
+     */
+    public SettlementJob(AccountStore db, int batchSize) {
+        this(db, 1, batchSize);
+    }
+
+    /**
+     * Constructs a new SettlementJob.
+     *
+     * @param db        the store to settle into
+     * @param threads   the number of batches applied in parallel
+     * @param batchSize the most transfers applied in one transaction
+     * @throws IllegalArgumentException if the thread count or the batch size is not positive
+     */
+    public SettlementJob(AccountStore db, int threads, int batchSize) {
+        if (threads <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Thread count and batch size must be positive.");
+        }
+        this.db = db;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Settles a file of transfers and writes every rejected row to a rejects file, followed by a tab and
+     * one of INVALID, UNKNOWN or INSUFFICIENT_FUNDS. Rejected rows are written in file order. Blank lines
+     * are ignored.
+     * <p>
+     * If the store fails, the job stops: the batches already applied stay applied, and the rejects file
+     * holds the rows of the windows settled before the failure.
+     *
+     * @param input   the file to settle
+     * @param rejects the file to write rejected rows to, replaced if it exists; null to skip writing rejects
+     * @return the number of applied and rejected rows, and the throughput
+     * @throws UncheckedIOException if a file cannot be read or written
+     * @throws DatabaseException    if a database access error occurs
+     */
+    public Report settle(Path input, Path rejects) {
+        long started = System.nanoTime();
+        long[] counts = new long[4];
+        ExecutorService workers = threads == 1 ? null : Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "settlement-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (BufferedReader in = Files.newBufferedReader(input);
+             BufferedWriter out = rejects == null ? null : Files.newBufferedWriter(rejects)) {
+            List<Row> window = new ArrayList<>(WINDOW_SIZE);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                window.add(new Row(line, parse(line)));
+                if (window.size() == WINDOW_SIZE) {
+                    settleWindow(window, workers, counts, out);
+                    window.clear();
+                }
+            }
+            settleWindow(window, workers, counts, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to settle transfer file " + input + ".", e);
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long rows = counts[0] + counts[1] + counts[2] + counts[3];
+        return new Report(counts[0], counts[1], counts[2], counts[3], seconds > 0 ? rows / seconds : 0);
+    }
+
+    /**
+     * Applies the transfers of one window, counts the outcome of every row and writes the rejected ones.
+     *
+     * @param window  the rows of the window, in file order
+     * @param workers the pool to apply batches on, or null to apply them on the calling thread in file order
+     * @param counts  the applied, invalid, unknown and insufficient counts to add to
+     * @param out     the rejects file, or null if rejects are not written
+     * @throws IOException if the rejects cannot be written
+     */
+    private void settleWindow(List<Row> window, ExecutorService workers, long[] counts, BufferedWriter out)
+            throws IOException {
+        TransferResult[] results = new TransferResult[window.size()];
+        List<List<Integer>> waves = workers == null ? List.of(validRows(window)) : schedule(window);
+        for (List<Integer> wave : waves) {
+            applyWave(window, wave, workers, results);
+        }
+
+        for (int i = 0; i < window.size(); i++) {
+            String reason;
+            if (results[i] == null) {
+                counts[1]++;
+                reason = "INVALID";
+            } else if (results[i].status() == TransferResult.Status.UNKNOWN_ACCOUNT) {
+                counts[2]++;
+                reason = "UNKNOWN";
+            } else if (results[i].status() == TransferResult.Status.INSUFFICIENT_FUNDS) {
+                counts[3]++;
+                reason = "INSUFFICIENT_FUNDS";
+            } else {
+                counts[0]++;
+                continue;
+            }
+            if (out != null) {
+                out.write(window.get(i).text());
+                out.write('\t');
+                out.write(reason);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Collects the positions of the valid rows of a window.
+     *
+     * @param window the rows of the window
+     * @return the positions of the rows holding a transfer, in file order
+     */
+    private static List<Integer> validRows(List<Row> window) {
+        List<Integer> rows = new ArrayList<>(window.size());
+        for (int i = 0; i < window.size(); i++) {
+            if (window.get(i).transfer() != null) {
+                rows.add(i);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Splits the valid rows of a window into waves whose rows share no account. A row goes into the wave
+     * after the last one holding a row of either of its accounts, which keeps the rows of every account
+     * in file order across waves.
+     *
+     * @param window the rows of the window
+     * @return the positions of the rows of every wave, in the order the waves must be applied
+     */
+    private static List<List<Integer>> schedule(List<Row> window) {
+        Map<String, Integer> lastWave = new HashMap<>();
+        List<List<Integer>> waves = new ArrayList<>();
+        for (int i = 0; i < window.size(); i++) {
+            Transfer transfer = window.get(i).transfer();
+            if (transfer == null) {
+                continue;
+            }
+            int wave = Math.max(lastWave.getOrDefault(transfer.from(), -1),
+                    lastWave.getOrDefault(transfer.to(), -1)) + 1;
+            if (wave == waves.size()) {
+                waves.add(new ArrayList<>());
+            }
+            waves.get(wave).add(i);
+            lastWave.put(transfer.from(), wave);
+            lastWave.put(transfer.to(), wave);
+        }
+        return waves;
+    }
+
+    /**
+     * Applies the rows of one wave in batches of at most the batch size, spread evenly across the workers,
+     * and waits for all of them.
+     *
+     * @param window  the rows of the window
+     * @param wave    the positions of the rows to apply
+     * @param workers the pool to apply batches on, or null to apply them on the calling thread
+     * @param results the results of the window, filled in at the positions of the applied rows
+     */
+    private void applyWave(List<Row> window, List<Integer> wave, ExecutorService workers, TransferResult[] results) {
+        int perWorker = workers == null ? wave.size() : (wave.size() + threads - 1) / threads;
+        int size = Math.max(1, Math.min(batchSize, perWorker));
+        if (workers == null || wave.size() <= size) {
+            for (int start = 0; start < wave.size(); start += size) {
+                applyBatch(window, wave.subList(start, Math.min(wave.size(), start + size)), results);
+            }
+            return;
+        }
+
+        List<Callable<Void>> batches = new ArrayList<>();
+        for (int start = 0; start < wave.size(); start += size) {
+            List<Integer> batch = wave.subList(start, Math.min(wave.size(), start + size));
+            batches.add(() -> {
+                applyBatch(window, batch, results);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> done : workers.invokeAll(batches)) {
+                done.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Settlement batch failed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while settling transfers.", e);
+        }
+    }
+
+    /**
+     * Applies one batch of rows in a single call to the store.
+     *
+     * @param window  the rows of the window
+     * @param batch   the positions of the rows to apply, in file order
+     * @param results the results of the window, filled in at the positions of the batch
+     */
+    private void applyBatch(List<Row> window, List<Integer> batch, TransferResult[] results) {
+        List<Transfer> transfers = new ArrayList<>(batch.size());
+        for (int row : batch) {
+            transfers.add(window.get(row).transfer());
+        }
+        List<TransferResult> applied = db.transferAll(transfers);
+        for (int i = 0; i < batch.size(); i++) {
+            results[batch.get(i)] = applied.get(i);
+        }
+    }
+
+    /**
+     * Parses one row into a transfer.
+     *
+     * @param line the row
+     * @return the transfer, or null if the row is malformed, holds an invalid card number, names the same
+     *         account on both sides or an amount that is not positive
+     */
+    private static Transfer parse(String line) {
+        String[] fields = line.split(",");
+        if (fields.length != 3) {
+            return null;
+        }
+        String from = fields[0].strip();
+        String to = fields[1].strip();
+        if (from.isEmpty() || to.isEmpty() || from.equals(to)
+                || !LuhnValidator.validate(from) || !LuhnValidator.validate(to)) {
+            return null;
+        }
+        try {
+            long amount = Money.parse(fields[2]);
+            return amount > 0 ? new Transfer(from, to, amount) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package dev.shoangenes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Timings and counters of the SQLite work done by one {@link DatabaseManager}, to tell where storage time goes:
+ * waiting for a pooled connection, preparing statements, executing them, waiting on the locks of other
+ * connections, or committing, which is where SQLite syncs to disk.
+ * <p>
+ * Statements slower than a threshold are handed to a {@link SlowStatementListener}, by default one logging
+ * them with their SQL to {@code java.util.logging} at WARNING. Parameters are never logged, only counted,
+ * since they carry card numbers and PINs. Recording takes no lock, and a slow statement is only formatted
+ * if its log record is going to be published.
+ */
+public class StorageTelemetry {
+    private static final Logger LOG = Logger.getLogger(StorageTelemetry.class.getName());
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final long DEFAULT_SLOW_STATEMENT_MILLIS = 100;
+    private static final SlowStatementListener LOG_SLOW_STATEMENTS =
+            (sql, nanos) -> LOG.log(Level.WARNING, () -> describe(sql, nanos));
+
+    private final LatencyHistogram acquires = new LatencyHistogram();
+    private final LatencyHistogram prepares = new LatencyHistogram();
+    private final LatencyHistogram statements = new LatencyHistogram();
+    private final LatencyHistogram commits = new LatencyHistogram();
+    private final LatencyHistogram transfers = new LatencyHistogram();
+    private final LongAdder slowStatements = new LongAdder();
+    private final LongAdder busyEvents = new LongAdder();
+    private final LongAdder busyRetries = new LongAdder();
+    private final LongAdder busyTimeouts = new LongAdder();
+    private final LongAdder busyWaitNanos = new LongAdder();
+    private volatile long slowStatementNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_STATEMENT_MILLIS);
+    private volatile SlowStatementListener slowStatementListener = LOG_SLOW_STATEMENTS;
+
+    /**
+     * Receives statements that ran longer than the slow statement threshold. Called on the thread that ran
+     * the statement, so implementations should hand the work off rather than block.
+     */
+    @FunctionalInterface
+    public interface SlowStatementListener {
+        /**
+         * Handles one slow statement.
+         *
+         * @param sql   the SQL of the statement, with its parameters as placeholders
+         * @param nanos the execution time, in nanoseconds
+         */
+        void onSlowStatement(String sql, long nanos);
+    }
+
+    /**
+     * Sets how long a statement may run before it is logged.
+     *
+     * @param threshold the threshold
+     * @param unit      the unit of the threshold
+     */
+    public void setSlowStatementThreshold(long threshold, TimeUnit unit) {
+        this.slowStatementNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Sets where slow statements go, replacing the default of logging them.
+     *
+     * @param listener the listener to hand slow statements to
+     */
+    public void setSlowStatementListener(SlowStatementListener listener) {
+        this.slowStatementListener = listener;
+    }
+
+    /**
+     * Records the time a caller waited for a pooled connection.
+     * @param nanos the wait, in nanoseconds
+     */
+    void recordAcquire(long nanos) {
+        acquires.record(nanos);
+    }
+
+    /**
+     * Records the preparation of a statement that was not cached yet.
+     * @param nanos the preparation time, in nanoseconds
+     */
+    void recordPrepare(long nanos) {
+        prepares.record(nanos);
+    }
+
+    /**
+     * Records the execution of a statement, and hands it to the slow statement listener if it was slow.
+     *
+     * @param sql   the SQL of the statement, with its parameters as placeholders
+     * @param nanos the execution time, in nanoseconds
+     */
+    void recordStatement(String sql, long nanos) {
+        statements.record(nanos);
+        if (nanos >= slowStatementNanos) {
+            slowStatements.increment();
+            slowStatementListener.onSlowStatement(sql, nanos);
+        }
+    }
+
+    /**
+     * Records a commit.
+     * @param nanos the commit time, in nanoseconds
+     */
+    void recordCommit(long nanos) {
+        commits.record(nanos);
+    }
+
+    /**
+     * Records a transfer transaction, from leasing its connection to committing or rolling it back.
+     * @param nanos the duration, in nanoseconds
+     */
+    void recordTransfer(long nanos) {
+        transfers.record(nanos);
+    }
+
+    /**
+     * Records that a connection found the database locked by another and started waiting.
+     */
+    void recordBusy() {
+        busyEvents.increment();
+    }
+
+    /**
+     * Records one wait of a connection on a locked database before it tries again.
+     * @param nanos the wait, in nanoseconds
+     */
+    void recordBusyRetry(long nanos) {
+        busyRetries.increment();
+        busyWaitNanos.add(nanos);
+    }
+
+    /**
+     * Records that a connection gave up waiting on a locked database, failing its statement.
+     */
+    void recordBusyTimeout() {
+        busyTimeouts.increment();
+    }
+
+    /**
+     * Summarizes the waits for a pooled connection.
+     * @return the acquire latencies
+     */
+    public LatencySnapshot getAcquires() {
+        return acquires.snapshot();
+    }
+
+    /**
+     * Summarizes the preparations of statements, which happen once per statement and connection.
+     * @return the prepare latencies
+     */
+    public LatencySnapshot getPrepares() {
+        return prepares.snapshot();
+    }
+
+    /**
+     * Summarizes the executions of prepared statements. Queries are timed until their first row is ready.
+     * @return the statement latencies
+     */
+    public LatencySnapshot getStatements() {
+        return statements.snapshot();
+    }
+
+    /**
+     * Summarizes the commits of transactions.
+     * @return the commit latencies
+     */
+    public LatencySnapshot getCommits() {
+        return commits.snapshot();
+    }
+
+    /**
+     * Summarizes the transfer transactions.
+     * @return the transfer latencies
+     */
+    public LatencySnapshot getTransfers() {
+        return transfers.snapshot();
+    }
+
+    /**
+     * Gets the number of statements that ran longer than the slow statement threshold.
+     * @return the slow statement count
+     */
+    public long getSlowStatements() {
+        return slowStatements.sum();
+    }
+
+    /**
+     * Gets the number of times a connection found the database locked by another.
+     * @return the busy count
+     */
+    public long getBusyEvents() {
+        return busyEvents.sum();
+    }
+
+    /**
+     * Gets the number of times a connection waited on a locked database and tried again.
+     * @return the retry count
+     */
+    public long getBusyRetries() {
+        return busyRetries.sum();
+    }
+
+    /**
+     * Gets the number of times a connection gave up waiting on a locked database.
+     * @return the timeout count
+     */
+    public long getBusyTimeouts() {
+        return busyTimeouts.sum();
+    }
+
+    /**
+     * Gets the total time connections waited on locked databases.
+     * @return the wait, in nanoseconds
+     */
+    public long getBusyWaitNanos() {
+        return busyWaitNanos.sum();
+    }
+
+    /**
+     * Formats every timing and counter as text.
+     * @return the report
+     */
+    public String dump() {
+        String newline = System.lineSeparator();
+        return "acquire    " + getAcquires() + newline
+                + "prepare    " + getPrepares() + newline
+                + "statement  " + getStatements() + newline
+                + "commit     " + getCommits() + newline
+                + "transfer   " + getTransfers() + newline
+                + "slow=" + getSlowStatements()
+                + " busy=" + getBusyEvents()
+                + " retries=" + getBusyRetries()
+                + " timeouts=" + getBusyTimeouts()
+                + " busyWait=" + TimeUnit.NANOSECONDS.toMillis(getBusyWaitNanos()) + "ms" + newline;
+    }
+
+    /**
+     * Formats a slow statement for the log, on one line and with its parameters counted.
+     *
+     * @param sql   the SQL of the statement
+     * @param nanos the execution time, in nanoseconds
+     * @return the log message
+     */
+    static String describe(String sql, long nanos) {
+        return "Slow statement (" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, " + parameterCount(sql)
+                + " parameters redacted): " + WHITESPACE.matcher(sql.strip()).replaceAll(" ");
+    }
+
+    /**
+     * Counts the parameter placeholders of a statement.
+     *
+     * @param sql the SQL of the statement
+     * @return the number of placeholders
+     */
+    private static int parameterCount(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
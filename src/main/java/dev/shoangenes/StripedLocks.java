@@ -0,0 +1,108 @@
+package dev.shoangenes;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks that card numbers are hashed onto. Operations on accounts in different stripes
+ * proceed in parallel, while operations on the same account are serialized, without keeping a lock
+ * per account.
+ * <p>
+ * When two accounts are locked together, their stripes are always taken in ascending index order,
+ * so two transfers in opposite directions can never deadlock.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * Constructs a new StripedLocks with at least the given number of stripes, rounded up to a power of two.
+     *
+     * @param stripes the minimum number of stripes
+     * @throws IllegalArgumentException if the number of stripes is not positive or too large
+     */
+    public StripedLocks(int stripes) {
+        if (stripes <= 0 || stripes > (1 << 30)) {
+            throw new IllegalArgumentException("Stripe count must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the number of stripes.
+     * @return the stripe count
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Locks the stripe of one card number.
+     *
+     * @param cardNumber the card number to lock
+     */
+    public void lock(String cardNumber) {
+        stripes[indexOf(cardNumber)].lock();
+    }
+
+    /**
+     * Unlocks the stripe of one card number.
+     *
+     * @param cardNumber the card number to unlock
+     */
+    public void unlock(String cardNumber) {
+        stripes[indexOf(cardNumber)].unlock();
+    }
+
+    /**
+     * Locks the stripes of two card numbers in ascending stripe order, taking a shared stripe only once.
+     *
+     * @param first  the first card number
+     * @param second the second card number
+     */
+    public void lockBoth(String first, String second) {
+        int i = indexOf(first);
+        int j = indexOf(second);
+        stripes[Math.min(i, j)].lock();
+        if (i != j) {
+            stripes[Math.max(i, j)].lock();
+        }
+    }
+
+    /**
+     * Unlocks the stripes taken by {@link #lockBoth(String, String)}.
+     *
+     * @param first  the first card number
+     * @param second the second card number
+     */
+    public void unlockBoth(String first, String second) {
+        int i = indexOf(first);
+        int j = indexOf(second);
+        if (i != j) {
+            stripes[Math.max(i, j)].unlock();
+        }
+        stripes[Math.min(i, j)].unlock();
+    }
+
+    /**
+     * Maps a card number to its stripe. The hash is spread first because sequential card numbers
+     * differ mostly in their low digits.
+     *
+     * @param cardNumber the card number
+     * @return the stripe index
+     */
+    private int indexOf(String cardNumber) {
+        int h = cardNumber.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+}
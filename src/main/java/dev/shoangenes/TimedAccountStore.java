@@ -0,0 +1,196 @@
+package dev.shoangenes;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Account store that forwards every call to another store and adds up, per thread, the time spent in it,
+ * so {@link BankingSystem} can tell the database time of an operation from the rest.
+ */
+final class TimedAccountStore implements AccountStore {
+    private final AccountStore delegate;
+    private final ThreadLocal<long[]> elapsed = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Constructs a new TimedAccountStore.
+     * @param delegate the store to forward calls to
+     */
+    TimedAccountStore(AccountStore delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the time the current thread spent in the store since the last call, and starts over.
+     * @return the elapsed time, in nanoseconds
+     */
+    long takeNanos() {
+        long[] total = elapsed.get();
+        long nanos = total[0];
+        total[0] = 0;
+        return nanos;
+    }
+
+    /**
+     * Adds the time since a start to the total of the current thread.
+     * @param started the start, from {@link System#nanoTime()}
+     */
+    private void stop(long started) {
+        elapsed.get()[0] += System.nanoTime() - started;
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+    }
+
+    @Override
+    public String getLastId() {
+        long started = System.nanoTime();
+        try {
+            return delegate.getLastId();
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public Optional<String> getLastCardNumber() {
+        long started = System.nanoTime();
+        try {
+            return delegate.getLastCardNumber();
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public long[] getPackedCardNumbers() {
+        long started = System.nanoTime();
+        try {
+            return delegate.getPackedCardNumbers();
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public void insertAccount(Account account) {
+        long started = System.nanoTime();
+        try {
+            delegate.insertAccount(account);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public void insertAccounts(List<Account> accounts) {
+        long started = System.nanoTime();
+        try {
+            delegate.insertAccounts(accounts);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public Optional<Account> getAccount(String cardNumber) {
+        long started = System.nanoTime();
+        try {
+            return delegate.getAccount(cardNumber);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public void updateBalance(String cardNumber, long newBalance) {
+        long started = System.nanoTime();
+        try {
+            delegate.updateBalance(cardNumber, newBalance);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public boolean deleteAccount(String cardNumber) {
+        long started = System.nanoTime();
+        try {
+            return delegate.deleteAccount(cardNumber);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public List<Account> getAccountsWithPlainPins(String afterCard, int limit) {
+        long started = System.nanoTime();
+        try {
+            return delegate.getAccountsWithPlainPins(afterCard, limit);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public int replacePins(List<PinChange> changes) {
+        long started = System.nanoTime();
+        try {
+            return delegate.replacePins(changes);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public OptionalLong deposit(String cardNumber, long amount) {
+        long started = System.nanoTime();
+        try {
+            return delegate.deposit(cardNumber, amount);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public OptionalLong withdraw(String cardNumber, long amount) {
+        long started = System.nanoTime();
+        try {
+            return delegate.withdraw(cardNumber, amount);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public OptionalLong transfer(String fromCard, String toCard, long amount) {
+        long started = System.nanoTime();
+        try {
+            return delegate.transfer(fromCard, toCard, amount);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        long started = System.nanoTime();
+        try {
+            return delegate.transferAll(transfers);
+        } finally {
+            stop(started);
+        }
+    }
+
+    @Override
+    public LedgerPage getHistory(String cardNumber, LedgerPage.Cursor cursor, int limit) {
+        long started = System.nanoTime();
+        try {
+            return delegate.getHistory(cardNumber, cursor, limit);
+        } finally {
+            stop(started);
+        }
+    }
+}
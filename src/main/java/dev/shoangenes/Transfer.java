@@ -0,0 +1,11 @@
+package dev.shoangenes;
+
+/**
+ * A request to move an amount from one account to another.
+ *
+ * @param from   the card number of the account to debit
+ * @param to     the card number of the account to credit
+ * @param amount the amount to move, in cents
+ */
+public record Transfer(String from, String to, long amount) {
+}
@@ -0,0 +1,354 @@
+package dev.shoangenes;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies transfers in groups, so many transfers share one transaction and one disk sync instead of
+ * paying for both each.
+ * <p>
+ * Callers queue transfers and get a future back. A single committer thread takes up to a maximum
+ * number of queued transfers, waiting at most a maximum delay for a group to fill, applies the group in
+ * one SQLite transaction committed without a sync, then appends the group to a {@link TransferJournal}
+ * and syncs that. Futures complete only once their group is in the journal, so an acknowledged transfer
+ * survives a crash: on startup, every journaled group the database lost is replayed.
+ * <p>
+ * The database and the journal are brought back in step with a checkpoint whenever the journal grows
+ * past a size limit, and on startup and close, after which the journal is emptied. A checkpoint that
+ * readers keep from finishing leaves the journal as it is, to be emptied by a later one.
+ * <p>
+ * If the journal cannot be written, groups are made durable with a checkpoint instead, retried a few
+ * times, until one succeeds and the journal can be emptied. The transfers of a group applied to the
+ * database but made durable by neither fail with a DatabaseException saying so.
+ */
+public class TransferEngine implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(TransferEngine.class.getName());
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    // Groups still form without waiting: whatever queues up while one group commits makes up the next
+    private static final long DEFAULT_MAX_DELAY_MICROS = 0;
+    private static final long CHECKPOINT_JOURNAL_BYTES = 16L * 1024 * 1024;
+    private static final int CHECKPOINT_ATTEMPTS = 4;
+    private static final long CHECKPOINT_RETRY_MILLIS = 50;
+
+    private final DatabaseManager db;
+    private final TransferJournal journal;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private final LongAdder submitting = new LongAdder();
+    private volatile boolean closed;
+    private long nextGroup;
+    // Set once an append fails, until a checkpoint lets the journal be emptied; committer thread only
+    private boolean journalTorn;
+
+    /**
+     * A queued transfer and the future of its caller.
+     */
+    private record Pending(Transfer transfer, CompletableFuture<Long> result) {
+    }
+
+    /**
+     * Constructs a new TransferEngine with the default group size and delay, replaying the journal first.
+     *
+     * @param db          the database transfers are applied to
+     * @param journalPath the journal file
+     * @throws DatabaseException    if replaying the journal fails
+     * @throws UncheckedIOException if the journal cannot be opened or read
+     */
+    public TransferEngine(DatabaseManager db, Path journalPath) {
+        this(db, journalPath, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Constructs a new TransferEngine, replaying the journal first.
+     *
+     * @param db           the database transfers are applied to
+     * @param journalPath  the journal file
+     * @param maxBatchSize the maximum number of transfers committed together
+     * @param maxDelay     the longest a group waits for more transfers once its first one is taken;
+     *                     0 commits whatever is queued right away
+     * @param unit         the unit of the delay
+     * @throws IllegalArgumentException if the batch size is not positive or the delay is negative
+     * @throws DatabaseException        if replaying the journal fails
+     * @throws UncheckedIOException     if the journal cannot be opened or read
+     */
+    public TransferEngine(DatabaseManager db, Path journalPath, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize <= 0 || maxDelay < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay must not be negative.");
+        }
+        this.db = db;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.journal = new TransferJournal(journalPath);
+        recover();
+        this.committer = new Thread(this::commitLoop, "transfer-engine-committer");
+        committer.start();
+    }
+
+    /**
+     * Queues a transfer.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return a future completed with the balance of the source account after the transfer once the transfer
+     *         is durable, or failed with an IllegalArgumentException if the transfer is invalid or rejected,
+     *         a DatabaseException or UncheckedIOException if its group could not be committed, or an
+     *         IllegalStateException if the engine is closed
+     */
+    public CompletableFuture<Long> submit(String fromCard, String toCard, long amount) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        if (fromCard.equals(toCard)) {
+            result.completeExceptionally(new IllegalArgumentException("You can't transfer money to the same account."));
+        } else if (amount <= 0) {
+            result.completeExceptionally(new IllegalArgumentException("The amount must be positive."));
+        } else {
+            submitting.increment();
+            try {
+                if (closed) {
+                    result.completeExceptionally(new IllegalStateException("The transfer engine is closed."));
+                } else {
+                    queue.add(new Pending(new Transfer(fromCard, toCard, amount), result));
+                }
+            } finally {
+                submitting.decrement();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Transfers funds and waits until the transfer is durable.
+     *
+     * @param fromCard the card number of the account to transfer funds from
+     * @param toCard   the card number of the account to transfer funds to
+     * @param amount   the amount to transfer, in cents
+     * @return the balance of the source account after the transfer, in cents
+     * @throws IllegalArgumentException if the transfer is invalid, either account does not exist
+     *                                  or the source has insufficient funds
+     * @throws DatabaseException        if the group of the transfer could not be committed
+     */
+    public long transfer(String fromCard, String toCard, long amount) {
+        try {
+            return submit(fromCard, toCard, amount).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Commits every queued transfer, stops the committer and closes the journal.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        // Once no caller is between its closed check and its add, nothing more can be queued
+        while (submitting.sum() != 0) {
+            Thread.yield();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            late.result().completeExceptionally(new IllegalStateException("The transfer engine is closed."));
+        }
+        try {
+            if (db.checkpoint()) {
+                journal.reset();
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Replays every journaled group the database does not have, then checkpoints the database and empties
+     * the journal. Groups are replayed in their original order against the state they were first applied to,
+     * so each transfer is accepted or rejected exactly as it was before the crash.
+     *
+     * @throws DatabaseException    if a group cannot be applied
+     * @throws UncheckedIOException if the journal cannot be read
+     */
+    private void recover() {
+        long applied = db.getLastAppliedTransferGroup();
+        long journaled = journal.replay((group, transfers) -> {
+            if (group > applied) {
+                db.applyTransferGroup(group, transfers);
+            }
+        });
+        if (db.checkpoint()) {
+            journal.reset();
+        }
+        nextGroup = Math.max(applied, journaled) + 1;
+    }
+
+    /**
+     * Takes groups off the queue and commits them until the engine is closed and the queue is empty.
+     * A group that fails unexpectedly fails the transfers it has not completed yet, and the committer carries on.
+     */
+    private void commitLoop() {
+        List<Pending> group = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                group.add(first);
+                fill(group);
+                try {
+                    commit(group);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "Failed to commit transfer group.", e);
+                    for (Pending pending : group) {
+                        pending.result().completeExceptionally(e);
+                    }
+                }
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds queued transfers to a group until it is full, or the queue is empty and the maximum delay has passed.
+     *
+     * @param group the group, holding its first transfer
+     * @throws InterruptedException if the committer is interrupted while waiting
+     */
+    private void fill(List<Pending> group) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (group.size() < maxBatchSize) {
+            if (queue.drainTo(group, maxBatchSize - group.size()) > 0) continue;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) return;
+            group.add(next);
+        }
+    }
+
+    /**
+     * Applies a group, makes it durable and completes the futures of its transfers.
+     * If the journal cannot be written, the group is made durable with a database checkpoint instead.
+     * Once the journal outgrows its limit, the database is checkpointed and the journal emptied.
+     *
+     * @param group the transfers to commit
+     */
+    private void commit(List<Pending> group) {
+        List<Transfer> transfers = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            transfers.add(pending.transfer());
+        }
+
+        long id = nextGroup++;
+        List<TransferResult> results;
+        try {
+            results = db.applyTransferGroup(id, transfers);
+        } catch (RuntimeException e) {
+            for (Pending pending : group) {
+                pending.result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        if (!journalTorn) {
+            try {
+                journal.append(id, transfers);
+            } catch (UncheckedIOException e) {
+                // A partly written record would hide every later group from replay, so drop it
+                journalTorn = true;
+            }
+        }
+        RuntimeException notDurable = journalTorn ? checkpointWithRetries() : null;
+
+        for (int i = 0; i < group.size(); i++) {
+            if (notDurable != null && results.get(i).status() == TransferResult.Status.APPLIED) {
+                group.get(i).result().completeExceptionally(new DatabaseException(
+                        "The transfer was applied but could not be made durable.", notDurable));
+            } else {
+                complete(group.get(i), results.get(i));
+            }
+        }
+
+        if (!journalTorn) {
+            try {
+                if (journal.size() > CHECKPOINT_JOURNAL_BYTES && db.checkpoint()) {
+                    journal.reset();
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to checkpoint transfer journal.", e);
+            }
+        }
+    }
+
+    /**
+     * Checkpoints the database and empties the journal, retrying with a growing delay if the checkpoint
+     * fails or readers keep it from finishing.
+     *
+     * @return null once every applied group is durable, otherwise the failure of the last attempt
+     */
+    private RuntimeException checkpointWithRetries() {
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < CHECKPOINT_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(CHECKPOINT_RETRY_MILLIS << attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return failure;
+                }
+            }
+            try {
+                if (!db.checkpoint()) {
+                    failure = new DatabaseException("Failed to checkpoint database: it is still being read.");
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                continue;
+            }
+            try {
+                journal.reset();
+                journalTorn = false;
+            } catch (UncheckedIOException e) {
+                // The groups are durable in the database; the next group tries to empty the journal again
+            }
+            return null;
+        }
+        return failure;
+    }
+
+    /**
+     * Completes the future of one transfer with its result.
+     *
+     * @param pending the transfer and its future
+     * @param result  the result of the transfer
+     */
+    private static void complete(Pending pending, TransferResult result) {
+        switch (result.status()) {
+            case APPLIED -> pending.result().complete(result.balance());
+            case INSUFFICIENT_FUNDS -> pending.result().completeExceptionally(
+                    new IllegalArgumentException("Insufficient funds."));
+            case UNKNOWN_ACCOUNT -> pending.result().completeExceptionally(
+                    new IllegalArgumentException("The account does not exist."));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package dev.shoangenes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of transfer groups, synced to disk once per group. Every record is framed as
+ * {@code [length][group][count][from to amount]...[crc32]}, so a record torn by a crash in the middle
+ * of a write is detected on replay and dropped together with anything after it.
+ */
+public class TransferJournal implements AutoCloseable {
+    private final Path path;
+    private final FileChannel channel;
+
+    /**
+     * Receives the groups read back by {@link #replay(GroupConsumer)}.
+     */
+    @FunctionalInterface
+    public interface GroupConsumer {
+        void accept(long group, List<Transfer> transfers);
+    }
+
+    /**
+     * Opens the journal at the given path, creating it if it does not exist.
+     *
+     * @param path the journal file
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    public TransferJournal(Path path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open transfer journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Appends a group to the end of the journal and waits until it is on disk.
+     *
+     * @param group     the sequence number of the group
+     * @param transfers the transfers of the group, in order
+     * @throws UncheckedIOException if the group cannot be written or synced
+     */
+    public void append(long group, List<Transfer> transfers) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + transfers.size() * 48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeLong(group);
+            out.writeInt(transfers.size());
+            for (Transfer transfer : transfers) {
+                out.writeUTF(transfer.from());
+                out.writeUTF(transfer.to());
+                out.writeLong(transfer.amount());
+            }
+            out.writeInt(0);
+
+            ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            int payloadLength = record.capacity() - 8;
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 4, payloadLength);
+            record.putInt(0, payloadLength);
+            record.putInt(record.capacity() - 4, (int) crc.getValue());
+
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to transfer journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Reads every complete group from the start of the journal, in the order they were appended.
+     * A torn or corrupt record at the end is cut off, so later appends follow the last good group.
+     *
+     * @param consumer receives each group
+     * @return the sequence number of the last complete group, or 0 if the journal holds none
+     * @throws UncheckedIOException if the journal cannot be read
+     */
+    public long replay(GroupConsumer consumer) {
+        long lastGroup = 0;
+        try {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (position + 4 <= size) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    channel.read(header, position + header.position());
+                }
+                int payloadLength = header.getInt(0);
+                if (payloadLength < 12 || position + 4 + payloadLength + 4 > size) break;
+
+                ByteBuffer record = ByteBuffer.allocate(payloadLength + 4);
+                while (record.hasRemaining()) {
+                    channel.read(record, position + 4 + record.position());
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record.array(), 0, payloadLength);
+                if ((int) crc.getValue() != record.getInt(payloadLength)) break;
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array(), 0, payloadLength));
+                long group = in.readLong();
+                int count = in.readInt();
+                List<Transfer> transfers = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    transfers.add(new Transfer(in.readUTF(), in.readUTF(), in.readLong()));
+                }
+                consumer.accept(group, transfers);
+
+                lastGroup = group;
+                position += 4 + payloadLength + 4;
+            }
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(false);
+            }
+            channel.position(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay transfer journal " + path + ".", e);
+        }
+        return lastGroup;
+    }
+
+    /**
+     * Empties the journal. Only safe once every group in it is durable elsewhere.
+     *
+     * @throws UncheckedIOException if the journal cannot be truncated
+     */
+    public void reset() {
+        try {
+            channel.truncate(0);
+            channel.force(false);
+            channel.position(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reset transfer journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Gets the current size of the journal.
+     * @return the size in bytes
+     * @throws UncheckedIOException if the size cannot be read
+     */
+    public long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read size of transfer journal " + path + ".", e);
+        }
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.shoangenes;
+
+/**
+ * Outcome of applying a {@link Transfer}.
+ *
+ * @param status  whether the transfer was applied, and if not, why
+ * @param balance the balance of the debited account after the transfer, in cents; 0 if it was not applied
+ */
+public record TransferResult(Status status, long balance) {
+
+    /**
+     * Whether a transfer was applied, and if not, why.
+     */
+    public enum Status {
+        APPLIED,
+        INSUFFICIENT_FUNDS,
+        UNKNOWN_ACCOUNT
+    }
+
+    /**
+     * Creates the result of an applied transfer.
+     *
+     * @param balance the balance of the debited account after the transfer, in cents
+     * @return the result
+     */
+    public static TransferResult applied(long balance) {
+        return new TransferResult(Status.APPLIED, balance);
+    }
+
+    /**
+     * Creates the result of a rejected transfer.
+     *
+     * @param status why the transfer was rejected
+     * @return the result
+     */
+    public static TransferResult rejected(Status status) {
+        return new TransferResult(status, 0);
+    }
+
+    /**
+     * Checks whether the transfer was applied.
+     * @return true if the transfer was applied
+     */
+    public boolean isApplied() {
+        return status == Status.APPLIED;
+    }
+}
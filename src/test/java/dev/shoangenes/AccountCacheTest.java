@@ -0,0 +1,82 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AccountCacheTest {
+
+    private static Account account(long id, long balance) {
+        return new Account(CardGenerator.cardNumberOf(id), "1234", balance);
+    }
+
+    @Test
+    void neverHoldsMoreThanItsSize() {
+        AccountCache cache = new AccountCache(100, 60, TimeUnit.SECONDS);
+        for (long id = 0; id < 1_000; id++) {
+            cache.put(account(id, id));
+        }
+
+        long cached = 0;
+        for (long id = 0; id < 1_000; id++) {
+            if (cache.get(CardGenerator.cardNumberOf(id)).isPresent()) {
+                cached++;
+            }
+        }
+        assertThat(cached).isPositive().isLessThanOrEqualTo(100);
+        assertThat(cache.getEvictions()).isGreaterThanOrEqualTo(900);
+    }
+
+    @Test
+    void evictsTheOlderAccountWhenFull() {
+        AccountCache cache = new AccountCache(1, 60, TimeUnit.SECONDS);
+        Account first = account(1, 10);
+        Account second = account(2, 20);
+        cache.put(first);
+        cache.put(second);
+
+        assertThat(cache.get(first.getNumber())).isEmpty();
+        assertThat(cache.get(second.getNumber())).isPresent();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void refusesAFillThatRacedWithAWrite() {
+        AccountCache cache = new AccountCache(100, 60, TimeUnit.SECONDS);
+        Account account = account(1, 10);
+        long stamp = cache.stamp();
+        cache.invalidate(account.getNumber());
+        cache.fill(account, stamp);
+        assertThat(cache.get(account.getNumber())).isEmpty();
+
+        cache.fill(account, cache.stamp());
+        assertThat(cache.get(account.getNumber())).map(Account::getBalance).contains(10L);
+    }
+
+    @Test
+    void concurrentLookupsSeeTheLatestWrite() throws InterruptedException {
+        AccountCache cache = new AccountCache(10_000, 60, TimeUnit.SECONDS);
+        for (long id = 0; id < 1_000; id++) {
+            cache.put(account(id, 0));
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long offset = t;
+            threads.add(new Thread(() -> {
+                for (long id = offset; id < 1_000; id += 4) {
+                    cache.put(account(id, id));
+                    assertThat(cache.get(CardGenerator.cardNumberOf(id))).map(Account::getBalance).contains(id);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(cache.getHits()).isEqualTo(1_000);
+    }
+}
@@ -0,0 +1,123 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AccountIndexTest {
+    private static final String CARD = CardGenerator.cardNumberOf(1);
+    private static final String OTHER = CardGenerator.cardNumberOf(2);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void accountsSurviveReopening() {
+        Path file = dir.resolve("accounts.idx");
+        try (AccountIndex index = new AccountIndex(file, 1)) {
+            assertThat(index.insert(CARD, "1234", 500)).isTrue();
+            assertThat(index.contains(CARD)).isTrue();
+            assertThat(index.contains(OTHER)).isFalse();
+            assertThat(index.getBalance(CARD)).hasValue(500);
+            assertThat(index.verifyPin(CARD, "1234")).isTrue();
+            assertThat(index.verifyPin(CARD, "4321")).isFalse();
+            assertThat(index.verifyPin(OTHER, "1234")).isFalse();
+
+            assertThat(index.deposit(CARD, 250)).hasValue(750);
+            assertThat(index.withdraw(CARD, 751)).isEmpty();
+            assertThat(index.withdraw(CARD, 100)).hasValue(650);
+            assertThat(index.deposit(OTHER, 1)).isEmpty();
+        }
+
+        try (AccountIndex index = new AccountIndex(file, 1)) {
+            assertThat(index.getAccountCount()).isEqualTo(1);
+            assertThat(index.getBalance(CARD)).hasValue(650);
+            assertThat(index.verifyPin(CARD, "1234")).isTrue();
+            assertThat(index.verifyPin(CARD, "4321")).isFalse();
+        }
+    }
+
+    @Test
+    void cardNumbersAreNeverInsertedTwice() {
+        try (AccountIndex index = new AccountIndex(dir.resolve("accounts.idx"), 1)) {
+            assertThat(index.insert(CARD, "1234", 500)).isTrue();
+            assertThat(index.insert(CARD, "9999", 1)).isFalse();
+            assertThat(index.getBalance(CARD)).hasValue(500);
+            assertThat(index.verifyPin(CARD, "1234")).isTrue();
+
+            assertThat(index.delete(CARD)).hasValue(500);
+            assertThat(index.delete(CARD)).isEmpty();
+            assertThat(index.contains(CARD)).isFalse();
+            assertThat(index.verifyPin(CARD, "1234")).isFalse();
+            // A closed card number stays closed
+            assertThat(index.insert(CARD, "1234", 500)).isFalse();
+            assertThat(index.getAccountCount()).isZero();
+
+            assertThatThrownBy(() -> index.insert("4000001234567890", "1234", 0))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void otherFilesAreNotOpenedAsAnIndex() throws IOException {
+        Path file = Files.writeString(dir.resolve("accounts.idx"), "not an index".repeat(10));
+
+        assertThatThrownBy(() -> new AccountIndex(file, 1)).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void concurrentTransfersConserveFunds() throws InterruptedException {
+        int accounts = 64;
+        long opening = 10_000;
+        List<String> cards = new ArrayList<>();
+        try (AccountIndex index = new AccountIndex(dir.resolve("accounts.idx"), 1)) {
+            for (int i = 0; i < accounts; i++) {
+                cards.add(CardGenerator.cardNumberOf(i + 1));
+                index.insert(cards.get(i), "1234", opening);
+            }
+
+            Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Random random = new Random(t);
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 20_000; i++) {
+                            String from = cards.get(random.nextInt(accounts));
+                            String to = cards.get(random.nextInt(accounts));
+                            index.transfer(from, to, 1 + random.nextInt(500));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(failures).isEmpty();
+            long total = 0;
+            for (String card : cards) {
+                long balance = index.getBalance(card).orElseThrow();
+                assertThat(balance).isNotNegative();
+                total += balance;
+            }
+            assertThat(total).isEqualTo(accounts * opening);
+        }
+    }
+}
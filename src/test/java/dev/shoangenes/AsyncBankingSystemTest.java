@@ -0,0 +1,116 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncBankingSystemTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void operationsBeyondTheQueueAreRejected() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        BankingSystem stalledBank = new BankingSystem(new InMemoryAccountStore(), 16, pins()) {
+            @Override
+            public long addIncome(Account account, long amount) {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return amount;
+            }
+        };
+        Account account = new Account(CardGenerator.cardNumberOf(1), "1234", 0);
+        try (AsyncBankingSystem async = new AsyncBankingSystem(stalledBank, 1, 1)) {
+            CompletableFuture<Long> running = async.addIncomeAsync(account, 1);
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            CompletableFuture<Long> queued = async.addIncomeAsync(account, 2);
+            CompletableFuture<Long> rejected = async.addIncomeAsync(account, 3);
+
+            assertThat(async.getQueuedOperations()).isEqualTo(1);
+            assertThat(rejected).failsWithin(Duration.ZERO)
+                    .withThrowableOfType(ExecutionException.class)
+                    .havingCause().isInstanceOf(RejectedExecutionException.class)
+                    .withMessage("The banking system is overloaded.");
+            assertThat(async.getRejectedOperations()).isEqualTo(1);
+
+            gate.countDown();
+            assertThat(running).succeedsWithin(TIMEOUT).isEqualTo(1L);
+            assertThat(queued).succeedsWithin(TIMEOUT).isEqualTo(2L);
+        } finally {
+            gate.countDown();
+        }
+    }
+
+    @Test
+    void operationsAfterCloseAreRejected() {
+        AsyncBankingSystem async = new AsyncBankingSystem(new BankingSystem(new InMemoryAccountStore(), 16, pins()));
+        async.close();
+
+        assertThat(async.createAccountAsync()).failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .havingCause().isInstanceOf(RejectedExecutionException.class)
+                .withMessage("The banking system is closed.");
+    }
+
+    @Test
+    void failuresKeepTheirTypes() {
+        InMemoryAccountStore store = new InMemoryAccountStore() {
+            @Override
+            public OptionalLong deposit(String cardNumber, long amount) {
+                throw new DatabaseException("Simulated outage.");
+            }
+        };
+        try (AsyncBankingSystem async = new AsyncBankingSystem(new BankingSystem(store, 16, pins()))) {
+            Account account = async.createAccountAsync().join();
+
+            assertThat(async.loginAsync(account.getNumber(), "wrong")).failsWithin(TIMEOUT)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseExactlyInstanceOf(IllegalArgumentException.class);
+            assertThat(async.subtractIncomeAsync(account, 1)).failsWithin(TIMEOUT)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseExactlyInstanceOf(IllegalArgumentException.class);
+            assertThat(async.addIncomeAsync(account, 1)).failsWithin(TIMEOUT)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseExactlyInstanceOf(DatabaseException.class);
+        }
+    }
+
+    @Test
+    void anErrorFailsTheFutureInsteadOfLeavingItPending() {
+        BankingSystem brokenBank = new BankingSystem(new InMemoryAccountStore(), 16, pins()) {
+            @Override
+            public long addIncome(Account account, long amount) {
+                throw new AssertionError("Simulated failure.");
+            }
+        };
+        Account account = new Account(CardGenerator.cardNumberOf(1), "1234", 0);
+        try (AsyncBankingSystem async = new AsyncBankingSystem(brokenBank, 1, 4)) {
+            assertThat(async.addIncomeAsync(account, 1)).failsWithin(TIMEOUT)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseExactlyInstanceOf(AssertionError.class);
+            // The pool replaces the thread the error ended
+            assertThat(async.addIncomeAsync(account, 1)).failsWithin(TIMEOUT)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseExactlyInstanceOf(AssertionError.class);
+        }
+    }
+
+    /**
+     * Creates a verifier with a cheap hasher, so the tests do not spend their time hashing.
+     */
+    private static PinVerifier pins() {
+        return new PinVerifier(new Pbkdf2PinHasher(1), 1, 60, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,140 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BalanceEngineTest {
+    private static final String FIRST = CardGenerator.cardNumberOf(1);
+    private static final String SECOND = CardGenerator.cardNumberOf(2);
+    private static final String UNKNOWN = CardGenerator.cardNumberOf(3);
+
+    @TempDir
+    Path directory;
+
+    @TempDir
+    Path crashed;
+
+    @Test
+    void accountsAtBothEndsOfTheRangeAreCheap() {
+        String first = CardGenerator.cardNumberOf(1);
+        String last = CardGenerator.cardNumberOf(999_999_999);
+        try (BalanceEngine engine = new BalanceEngine(directory)) {
+            engine.openAccount(first, 1_000);
+            engine.openAccount(last, 500);
+
+            assertThat(engine.transfer(first, last, 250)).isEqualTo(750);
+            assertThat(engine.getBalance(last)).hasValue(750);
+            assertThat(engine.getBalance(CardGenerator.cardNumberOf(999_999_998))).isEmpty();
+        }
+
+        try (BalanceEngine engine = new BalanceEngine(directory)) {
+            assertThat(engine.getAccountCount()).isEqualTo(2);
+            assertThat(engine.getBalance(first)).hasValue(750);
+            assertThat(engine.getBalance(last)).hasValue(750);
+        }
+    }
+
+    @Test
+    void acknowledgedCommandsAreRecoveredFromTheJournal() throws IOException {
+        try (BalanceEngine engine = new BalanceEngine(directory)) {
+            engine.openAccount(FIRST, 1_000);
+            engine.openAccount(SECOND, 0);
+            engine.transfer(FIRST, SECOND, 300);
+            engine.withdraw(SECOND, 100);
+            crash();
+        }
+
+        try (BalanceEngine engine = new BalanceEngine(crashed)) {
+            assertThat(engine.getAccountCount()).isEqualTo(2);
+            assertThat(engine.getBalance(FIRST)).hasValue(700);
+            assertThat(engine.getBalance(SECOND)).hasValue(200);
+        }
+    }
+
+    @Test
+    void aTornJournalTailIsDropped() throws IOException {
+        try (BalanceEngine engine = new BalanceEngine(directory)) {
+            engine.openAccount(FIRST, 1_000);
+            engine.deposit(FIRST, 500);
+            crash();
+        }
+        // Half of a record header, as left by a crash in the middle of a write
+        Files.write(crashed.resolve("commands.journal"), new byte[] {0, 0, 1}, StandardOpenOption.APPEND);
+
+        try (BalanceEngine engine = new BalanceEngine(crashed)) {
+            assertThat(engine.getBalance(FIRST)).hasValue(1_500);
+            assertThat(engine.deposit(FIRST, 1)).isEqualTo(1_501);
+        }
+        try (BalanceEngine engine = new BalanceEngine(crashed)) {
+            assertThat(engine.getBalance(FIRST)).hasValue(1_501);
+        }
+    }
+
+    @Test
+    void commandsAfterASnapshotAreRecoveredOnTopOfIt() throws IOException {
+        try (BalanceEngine engine = new BalanceEngine(directory)) {
+            engine.openAccount(FIRST, 1_000);
+            engine.openAccount(SECOND, 0);
+            engine.snapshot();
+            engine.transfer(FIRST, SECOND, 400);
+            engine.closeAccount(SECOND);
+            crash();
+        }
+
+        try (BalanceEngine engine = new BalanceEngine(crashed)) {
+            assertThat(engine.getAccountCount()).isEqualTo(1);
+            assertThat(engine.getBalance(FIRST)).hasValue(600);
+            assertThat(engine.getBalance(SECOND)).isEmpty();
+        }
+    }
+
+    @Test
+    void rejectedCommandsChangeNothingAndStayRejectedOnRecovery() throws IOException {
+        try (BalanceEngine engine = new BalanceEngine(directory)) {
+            engine.openAccount(FIRST, 100);
+            engine.openAccount(SECOND, 0);
+
+            assertThatThrownBy(() -> engine.withdraw(FIRST, 101))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("Insufficient funds.");
+            assertThatThrownBy(() -> engine.transfer(FIRST, SECOND, 101))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("Insufficient funds.");
+            assertThatThrownBy(() -> engine.deposit(UNKNOWN, 1))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("The account does not exist.");
+            assertThatThrownBy(() -> engine.transfer(FIRST, UNKNOWN, 1))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("The account does not exist.");
+            assertThatThrownBy(() -> engine.openAccount(FIRST, 5))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("The account already exists.");
+            // A transfer arriving after the deposit that funds it is accepted
+            engine.deposit(FIRST, 50);
+            assertThat(engine.transfer(FIRST, SECOND, 150)).isZero();
+            crash();
+        }
+
+        try (BalanceEngine engine = new BalanceEngine(crashed)) {
+            assertThat(engine.getAccountCount()).isEqualTo(2);
+            assertThat(engine.getBalance(FIRST)).hasValue(0);
+            assertThat(engine.getBalance(SECOND)).hasValue(150);
+            assertThat(engine.getBalance(UNKNOWN)).isEmpty();
+        }
+    }
+
+    /**
+     * Copies the files of the running engine, as a crash would leave them: the journal holds every
+     * acknowledged command, and nothing is snapshotted on close.
+     */
+    private void crash() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, crashed.resolve(file.getFileName()));
+            }
+        }
+    }
+}
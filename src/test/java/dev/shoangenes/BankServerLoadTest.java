@@ -0,0 +1,106 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BankServerLoadTest {
+    private static final int SESSIONS = 1000;
+    private static final Pattern CREATED = Pattern.compile("Your account: Account\\{number='(\\d+)', pin='(\\d+)'");
+
+    private BankServer server;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // A single PBKDF2 iteration keeps a thousand logins cheap; hashing cost is not under test here
+        PinVerifier pins = new PinVerifier(new Pbkdf2PinHasher(1), 1, 60, TimeUnit.SECONDS);
+        // Every session logs in from loopback at once, so the address may have all of them in flight
+        LoginThrottle cardLogins = new LoginThrottle(SESSIONS, 5, 15, 15, TimeUnit.MINUTES);
+        LoginThrottle sourceLogins = new LoginThrottle(16, SESSIONS, 1, 5, TimeUnit.MINUTES);
+        BankingSystem system = new BankingSystem(new InMemoryAccountStore(), 64, pins, cardLogins, sourceLogins);
+        server = new BankServer(system, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void thousandsOfSessionsRunAtOnce() throws Exception {
+        List<BufferedReader> readers = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            Socket socket = new Socket("127.0.0.1", server.getPort());
+            socket.setSoTimeout(60_000);
+            sockets.add(socket);
+            readers.add(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)));
+        }
+        awaitActiveSessions(SESSIONS);
+
+        // Every session creates an account while all of them are connected
+        for (Socket socket : sockets) {
+            send(socket, "1\n");
+        }
+        List<Matcher> accounts = new ArrayList<>();
+        for (BufferedReader reader : readers) {
+            accounts.add(readUntil(reader, CREATED));
+        }
+
+        // Then logs in, adds income, checks the balance and exits
+        for (int i = 0; i < SESSIONS; i++) {
+            Matcher account = accounts.get(i);
+            send(sockets.get(i), "2\n" + account.group(1) + "\n" + account.group(2) + "\n2\n12.50\n1\n5\n3\n");
+        }
+        for (BufferedReader reader : readers) {
+            readUntil(reader, Pattern.compile("Logged in successfully!"));
+            readUntil(reader, Pattern.compile("Balance: 12\\.50"));
+            readUntil(reader, Pattern.compile("Exiting application\\.\\.\\."));
+        }
+        awaitActiveSessions(0);
+    }
+
+    private void awaitActiveSessions(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (server.getActiveSessions() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(server.getActiveSessions()).isEqualTo(expected);
+    }
+
+    private static void send(Socket socket, String input) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(input.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static Matcher readUntil(BufferedReader reader, Pattern pattern) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            Matcher matcher = pattern.matcher(line);
+            if (matcher.find()) {
+                return matcher;
+            }
+        }
+        throw new AssertionError("Session ended before printing " + pattern + ".");
+    }
+}
@@ -0,0 +1,116 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatabaseManagerConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int ACCOUNTS = 400;
+
+    @TempDir
+    Path dir;
+
+    private DatabaseManager db;
+    private BankingSystem system;
+    private List<Account> accounts;
+
+    @BeforeEach
+    void setUp() {
+        db = new DatabaseManager("jdbc:sqlite:" + dir.resolve("cards.s3db"), THREADS);
+        system = new BankingSystem(db);
+        accounts = new ArrayList<>();
+        system.createAccounts(ACCOUNTS, accounts::add);
+        for (Account account : accounts) {
+            system.addIncome(account, 10_000);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.disconnect();
+    }
+
+    @Test
+    void closingAccountsDuringTransfersNeverFailsAsBusy() throws InterruptedException {
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        Account from = accounts.get(random.nextInt(ACCOUNTS));
+                        Account to = accounts.get(random.nextInt(ACCOUNTS));
+                        try {
+                            if (i % 10 == seed % 10) {
+                                system.closeAccount(from);
+                            } else if (from != to) {
+                                system.transferFunds(from, to.getNumber(), 1 + random.nextInt(100));
+                            }
+                        } catch (IllegalArgumentException e) {
+                            // Closed accounts and insufficient funds are expected
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertThat(failures).isEmpty();
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+
+    @Test
+    void concurrentBalanceUpdatesAndDeletesKeepTheLedgerConsistent() throws InterruptedException {
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        String card = accounts.get(random.nextInt(ACCOUNTS)).getNumber();
+                        if (random.nextInt(4) == 0) {
+                            db.deleteAccount(card);
+                        } else {
+                            db.updateBalance(card, random.nextInt(50_000));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertThat(failures).isEmpty();
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+}
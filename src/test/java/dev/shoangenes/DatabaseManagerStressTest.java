@@ -0,0 +1,98 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatabaseManagerStressTest {
+    private static final int WORKERS = 16;
+    private static final int SHARED_ACCOUNTS = 32;
+    private static final int OPENING_BALANCE = 100_000;
+    private static final int ROUNDS = 50;
+
+    @TempDir
+    Path dir;
+
+    private DatabaseManager db;
+    private BankingSystem system;
+
+    @BeforeEach
+    void setUp() {
+        db = new DatabaseManager("jdbc:sqlite:" + dir.resolve("cards.s3db"), 8);
+        system = new BankingSystem(db);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.disconnect();
+    }
+
+    @Test
+    void concurrentWorkersLoseNoUpdates() throws InterruptedException {
+        List<Account> shared = new ArrayList<>();
+        system.createAccounts(SHARED_ACCOUNTS, shared::add);
+        for (Account account : shared) {
+            system.addIncome(account, OPENING_BALANCE);
+        }
+
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Queue<Account> own = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < WORKERS; w++) {
+            int seed = w;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                    Account created = system.createAccount();
+                    Account account = system.login(created.getNumber(), created.getPin());
+                    own.add(account);
+                    for (int i = 0; i < ROUNDS; i++) {
+                        system.addIncome(account, 1);
+                        Account from = shared.get(random.nextInt(SHARED_ACCOUNTS));
+                        Account to = shared.get(random.nextInt(SHARED_ACCOUNTS));
+                        if (from != to) {
+                            system.transferFunds(from, to.getNumber(), 1 + random.nextInt(100));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertThat(failures).isEmpty();
+        assertThat(own).hasSize(WORKERS);
+        for (Account account : own) {
+            assertThat(balanceOf(account)).isEqualTo(ROUNDS);
+        }
+        long total = 0;
+        for (Account account : shared) {
+            total += balanceOf(account);
+        }
+        assertThat(total).isEqualTo((long) SHARED_ACCOUNTS * OPENING_BALANCE);
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+
+    private long balanceOf(Account account) {
+        return db.getAccount(account.getNumber()).orElseThrow().getBalance();
+    }
+}
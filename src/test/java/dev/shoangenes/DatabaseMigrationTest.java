@@ -0,0 +1,84 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatabaseMigrationTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void version0BalancesAreConvertedToCentsOnce() throws SQLException {
+        String url = "jdbc:sqlite:" + dir.resolve("cards.s3db");
+        String card = CardGenerator.cardNumberOf(1);
+        String other = CardGenerator.cardNumberOf(2);
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE cards (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    card_number TEXT NOT NULL UNIQUE,
+                    pin TEXT NOT NULL,
+                    balance FLOAT NOT NULL
+                )
+                """);
+            stmt.execute("INSERT INTO cards (card_number, pin, balance) VALUES ('" + card + "', '1234', 12.34)");
+            stmt.execute("INSERT INTO cards (card_number, pin, balance) VALUES ('" + other + "', '4321', 0.1)");
+        }
+
+        for (int run = 0; run < 2; run++) {
+            DatabaseManager db = new DatabaseManager(url, 1);
+            try {
+                assertThat(db.getAccount(card).orElseThrow().getBalance()).isEqualTo(1234);
+                assertThat(db.getAccount(other).orElseThrow().getBalance()).isEqualTo(10);
+                assertThat(db.verifyBalances()).isEmpty();
+            } finally {
+                db.disconnect();
+            }
+        }
+
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void aFinishedStepIsNotRunAgainIfALaterOneNeverRan() throws SQLException {
+        String url = "jdbc:sqlite:" + dir.resolve("cards.s3db");
+        String card = CardGenerator.cardNumberOf(1);
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement stmt = conn.createStatement()) {
+            // A version 1 database: balances already in cents, no ledger yet
+            stmt.execute("""
+                CREATE TABLE cards (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    card_number TEXT NOT NULL UNIQUE,
+                    pin TEXT NOT NULL,
+                    balance INTEGER NOT NULL
+                )
+                """);
+            stmt.execute("INSERT INTO cards (card_number, pin, balance) VALUES ('" + card + "', '1234', 1234)");
+            stmt.execute("PRAGMA user_version = 1");
+        }
+
+        DatabaseManager db = new DatabaseManager(url, 1);
+        try {
+            assertThat(db.getAccount(card).orElseThrow().getBalance()).isEqualTo(1234);
+            assertThat(db.verifyBalances()).isEmpty();
+        } finally {
+            db.disconnect();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class InMemoryAccountStoreTest {
+    private static final String CARD = CardGenerator.cardNumberOf(1);
+
+    @Test
+    void historyPagesWalkBackInTimeWithoutGapsOrRepeats() {
+        InMemoryAccountStore store = new InMemoryAccountStore();
+        store.insertAccount(new Account(CARD, "1234", 0));
+        for (int i = 1; i <= 25; i++) {
+            store.deposit(CARD, i);
+        }
+
+        List<LedgerEntry> history = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        LedgerPage page = store.getHistory(CARD, LedgerPage.Cursor.FIRST, 10);
+        while (true) {
+            history.addAll(page.entries());
+            pageSizes.add(page.entries().size());
+            if (page.next().isEmpty()) break;
+            page = store.getHistory(CARD, page.next().get(), 10);
+        }
+
+        assertThat(pageSizes).containsExactly(10, 10, 5);
+        assertThat(history).extracting(LedgerEntry::amount)
+                .containsExactly(25L, 24L, 23L, 22L, 21L, 20L, 19L, 18L, 17L, 16L, 15L, 14L, 13L,
+                        12L, 11L, 10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L);
+    }
+
+    @Test
+    void onlyTheNewestHistoryIsKept() {
+        InMemoryAccountStore store = new InMemoryAccountStore(1, 8);
+        store.insertAccount(new Account(CARD, "1234", 0));
+        for (int i = 1; i <= 100; i++) {
+            store.deposit(CARD, i);
+        }
+
+        List<LedgerEntry> history = store.getHistory(CARD, LedgerPage.Cursor.FIRST, 100).entries();
+        assertThat(history).hasSizeBetween(4, 8);
+        assertThat(history.get(0).amount()).isEqualTo(100);
+        assertThat(history.get(0).balance()).isEqualTo(5050);
+        assertThat(store.getAccount(CARD).orElseThrow().getBalance()).isEqualTo(5050);
+    }
+
+    @Test
+    void fullHistoryIsKeptByDefault() {
+        InMemoryAccountStore store = new InMemoryAccountStore();
+        store.insertAccount(new Account(CARD, "1234", 0));
+        for (int i = 1; i <= 20_000; i++) {
+            store.deposit(CARD, 1);
+        }
+
+        List<LedgerEntry> history = store.getHistory(CARD, LedgerPage.Cursor.FIRST, 30_000).entries();
+        assertThat(history).hasSize(20_000);
+        assertThat(history.get(history.size() - 1).balance()).isEqualTo(1);
+    }
+
+    @Test
+    void deletingAnAccountClosesItsLedger() {
+        InMemoryAccountStore store = new InMemoryAccountStore();
+        store.insertAccount(new Account(CARD, "1234", 500));
+        store.deposit(CARD, 250);
+
+        assertThat(store.deleteAccount(CARD)).isTrue();
+        assertThat(store.deleteAccount(CARD)).isFalse();
+
+        assertThat(store.getAccount(CARD)).isEmpty();
+        List<LedgerEntry> history = store.getHistory(CARD, LedgerPage.Cursor.FIRST, 10).entries();
+        assertThat(history).extracting(LedgerEntry::type)
+                .containsExactly(LedgerEntry.Type.CLOSING, LedgerEntry.Type.DEPOSIT, LedgerEntry.Type.OPENING);
+        assertThat(history.get(0).amount()).isEqualTo(-750);
+        assertThat(history.get(0).balance()).isZero();
+    }
+}
@@ -0,0 +1,170 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerCompactorTest {
+    private static final int ACCOUNTS = 200;
+
+    @TempDir
+    Path dir;
+
+    private DatabaseManager db;
+    private List<String> cards;
+
+    @BeforeEach
+    void setUp() {
+        db = open(new AtomicInteger());
+        cards = new ArrayList<>();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String card = CardGenerator.cardNumberOf(i + 1);
+            cards.add(card);
+            accounts.add(new Account(card, "1234", 100_000));
+        }
+        db.insertAccounts(accounts);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.disconnect();
+    }
+
+    /**
+     * Opens the test database, failing the first checkpoints.
+     *
+     * @param failuresLeft how many calls of checkpointBalances fail before they succeed
+     * @return the database
+     */
+    private DatabaseManager open(AtomicInteger failuresLeft) {
+        return new DatabaseManager("jdbc:sqlite:" + dir.resolve("cards.s3db"), 8) {
+            @Override
+            public long checkpointBalances() {
+                if (failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Simulated checkpoint failure.");
+                }
+                return super.checkpointBalances();
+            }
+        };
+    }
+
+    @Test
+    void checkpointingDuringLiveTrafficNeverFailsAsBusy() throws InterruptedException {
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+            Random random = new Random(t);
+            Thread writer = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        String from = cards.get(random.nextInt(ACCOUNTS));
+                        String to = cards.get(random.nextInt(ACCOUNTS));
+                        if (!from.equals(to)) {
+                            db.transfer(from, to, 1 + random.nextInt(100));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+
+        long checkpointed = 0;
+        try {
+            for (int i = 0; i < 100; i++) {
+                checkpointed += db.checkpointBalances();
+            }
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+
+        assertThat(failures).isEmpty();
+        assertThat(checkpointed).isPositive();
+        db.checkpointBalances();
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+
+    @Test
+    void scheduledRunsAreRetriedAfterAFailure() throws InterruptedException {
+        db.disconnect();
+        AtomicInteger failuresLeft = new AtomicInteger(2);
+        db = open(failuresLeft);
+        db.transfer(cards.get(0), cards.get(1), 500);
+
+        try (LedgerCompactor compactor = new LedgerCompactor(db, dir.resolve("archive"), 0, TimeUnit.MILLISECONDS)) {
+            compactor.start(20, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (failuresLeft.get() > -3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(compactor.getFailedAttempts()).isEqualTo(2);
+        }
+        assertThat(failuresLeft.get()).isLessThanOrEqualTo(-3);
+        assertThat(db.getArchivableLedger(Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+
+    @Test
+    void archivedEntriesCanBeReadBack() {
+        db.transfer(cards.get(0), cards.get(1), 500);
+        db.transfer(cards.get(1), cards.get(2), 200);
+
+        LedgerCompactor.Report report;
+        try (LedgerCompactor compactor = new LedgerCompactor(db, dir.resolve("archive"), 0, TimeUnit.MILLISECONDS)) {
+            report = compactor.runOnce();
+        }
+
+        List<LedgerEntry> archived = new ArrayList<>();
+        LedgerCompactor.readArchive(dir.resolve("archive").resolve(
+                "ledger-1-" + report.archivedEntries() + ".csv.gz"), archived::add);
+        assertThat(report.segments()).isEqualTo(1);
+        assertThat(archived).hasSize((int) report.archivedEntries());
+        assertThat(archived).filteredOn(entry -> entry.type() == LedgerEntry.Type.TRANSFER_OUT).hasSize(2);
+        assertThat(db.rebuildBalance(cards.get(1))).hasValue(100_300);
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+
+    @Test
+    void aFailedArchiveLeavesNoTemporaryFileAndKeepsTheLedger() throws IOException {
+        db.transfer(cards.get(0), cards.get(1), 500);
+        Path archive = dir.resolve("archive");
+        db.checkpointBalances();
+        long entries = db.getArchivableLedger(Long.MAX_VALUE, 1_000).size();
+        // A non-empty directory where the segment file goes makes the rename fail
+        Files.createDirectories(archive.resolve("ledger-1-" + entries + ".csv.gz").resolve("blocker"));
+
+        try (LedgerCompactor compactor = new LedgerCompactor(db, archive, 0, TimeUnit.MILLISECONDS)) {
+            assertThatThrownBy(compactor::runOnce).isInstanceOf(UncheckedIOException.class);
+        }
+
+        try (var files = Files.list(archive)) {
+            assertThat(files.map(file -> file.getFileName().toString())).noneMatch(name -> name.endsWith(".tmp"));
+        }
+        assertThat(db.getArchivableLedger(Long.MAX_VALUE, 1_000)).hasSize((int) entries);
+        assertThat(db.verifyBalances()).isEmpty();
+    }
+}
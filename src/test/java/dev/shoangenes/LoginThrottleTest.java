@@ -0,0 +1,133 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class LoginThrottleTest {
+    private static final int MAX_FAILURES = 5;
+
+    @Test
+    void concurrentAttemptsCannotRunPastTheLimit() throws Exception {
+        LoginThrottle throttle = new LoginThrottle(1024, MAX_FAILURES, 15, 15, TimeUnit.MINUTES);
+        AtomicInteger granted = new AtomicInteger();
+        runConcurrently(32, () -> {
+            if (throttle.tryAcquire("4000001234567899") == 0) {
+                granted.incrementAndGet();
+            }
+        });
+
+        assertThat(granted.get()).isEqualTo(MAX_FAILURES);
+        for (int i = 0; i < MAX_FAILURES; i++) {
+            throttle.recordFailure("4000001234567899");
+        }
+        assertThat(throttle.tryAcquire("4000001234567899")).isPositive();
+        assertThat(throttle.getLockouts()).isEqualTo(1);
+    }
+
+    @Test
+    void releasedAttemptsAreNotCounted() {
+        LoginThrottle throttle = new LoginThrottle(1024, MAX_FAILURES, 15, 15, TimeUnit.MINUTES);
+        for (int i = 0; i < 100; i++) {
+            assertThat(throttle.tryAcquire("4000001234567899")).isZero();
+            throttle.release("4000001234567899");
+        }
+        for (int i = 0; i < MAX_FAILURES - 1; i++) {
+            assertThat(throttle.tryAcquire("4000001234567899")).isZero();
+            assertThat(throttle.recordFailure("4000001234567899")).isFalse();
+        }
+        assertThat(throttle.tryAcquire("4000001234567899")).isZero();
+        assertThat(throttle.recordFailure("4000001234567899")).isTrue();
+        assertThat(throttle.getLockedKeys()).isEqualTo(1);
+    }
+
+    @Test
+    void lockedKeysAreNeverEvicted() {
+        // A table of four slots: every key probes all of them
+        LoginThrottle throttle = new LoginThrottle(1, 1, 15, 15, TimeUnit.MINUTES);
+        lockOut(throttle, "target");
+        for (int i = 0; i < 10; i++) {
+            lockOut(throttle, "decoy" + i);
+        }
+
+        assertThat(throttle.getLockedKeys()).isEqualTo(4);
+        assertThat(throttle.tryAcquire("target")).isPositive();
+        assertThat(throttle.tryAcquire("newcomer")).isPositive();
+    }
+
+    @Test
+    void concurrentWrongPinsAreCheckedAtMostLimitTimes() throws Exception {
+        BankingSystem system = new BankingSystem(new InMemoryAccountStore());
+        Account account = system.createAccount();
+        String wrongPin = account.getPin().equals("0000") ? "1111" : "0000";
+        AtomicInteger checked = new AtomicInteger();
+        AtomicInteger turnedAway = new AtomicInteger();
+
+        runConcurrently(16, () -> {
+            try {
+                system.login(account.getNumber(), wrongPin);
+            } catch (IllegalArgumentException e) {
+                if (e.getMessage().startsWith("Too many failed logins")) {
+                    turnedAway.incrementAndGet();
+                } else {
+                    checked.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(checked.get()).isEqualTo(MAX_FAILURES);
+        assertThat(turnedAway.get()).isEqualTo(16 - MAX_FAILURES);
+        assertThatThrownBy(() -> system.login(account.getNumber(), account.getPin()))
+                .hasMessageStartingWith("Too many failed logins");
+    }
+
+    /**
+     * Makes failed attempts for a key until it is locked out.
+     *
+     * @param throttle the throttle
+     * @param key      the key
+     */
+    private static void lockOut(LoginThrottle throttle, String key) {
+        while (throttle.tryAcquire(key) == 0) {
+            throttle.recordFailure(key);
+        }
+    }
+
+    /**
+     * Runs a task on several threads at once and waits for all of them.
+     *
+     * @param threads the number of threads
+     * @param task    the task
+     * @throws Exception if a thread fails or the wait is interrupted
+     */
+    private static void runConcurrently(int threads, Runnable task) throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    barrier.await();
+                    task.run();
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertThat(failures).isEmpty();
+    }
+}
@@ -0,0 +1,32 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class LuhnValidatorTest {
+    @Test
+    void checkDigitsMakeValidNumbers() {
+        assertThat(LuhnValidator.calculateCheckDigit("7992739871")).isEqualTo(3);
+        assertThat(LuhnValidator.generateCardNumber("400000123456789")).isEqualTo("4000001234567899");
+        assertThat(LuhnValidator.validate(LuhnValidator.generateCardNumber("400000987654321"))).isTrue();
+    }
+
+    @Test
+    void whitespaceIsSkippedWhenCalculatingACheckDigit() {
+        assertThat(LuhnValidator.calculateCheckDigit("7992 7398 71")).isEqualTo(3);
+        String spaced = LuhnValidator.generateCardNumber("4000 0012 3456 789");
+        assertThat(spaced).isEqualTo("4000 0012 3456 7899");
+        assertThat(LuhnValidator.validate(spaced)).isTrue();
+    }
+
+    @Test
+    void otherNonDigitsAreRejected() {
+        assertThatThrownBy(() -> LuhnValidator.calculateCheckDigit("7992-7398-71"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LuhnValidator.generateCardNumber("40000012345678a"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(LuhnValidator.validate("4000-0012-3456-7899")).isFalse();
+    }
+}
@@ -0,0 +1,123 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class PinVerifierTest {
+    private static final String CARD = CardGenerator.cardNumberOf(1);
+
+    @Test
+    void hashesVerifyOnlyTheirOwnPin() {
+        Pbkdf2PinHasher hasher = new Pbkdf2PinHasher(1000);
+        String hash = hasher.hash("1234");
+
+        assertThat(hasher.isHash(hash)).isTrue();
+        assertThat(hasher.isHash("1234")).isFalse();
+        assertThat(hasher.verify("1234", hash)).isTrue();
+        assertThat(hasher.verify("4321", hash)).isFalse();
+        assertThat(hasher.verify("1234", "1234")).isFalse();
+        // Salted, so the same PIN never hashes the same twice
+        assertThat(hasher.hash("1234")).isNotEqualTo(hash);
+    }
+
+    @Test
+    void hashesOfAnotherIterationCountStillVerifyButNeedRehashing() {
+        String old = new Pbkdf2PinHasher(500).hash("1234");
+        Pbkdf2PinHasher hasher = new Pbkdf2PinHasher(1000);
+
+        assertThat(hasher.verify("1234", old)).isTrue();
+        assertThat(hasher.needsRehash(old)).isTrue();
+        assertThat(hasher.needsRehash(hasher.hash("1234"))).isFalse();
+        assertThat(hasher.needsRehash("1234")).isTrue();
+    }
+
+    @Test
+    void plaintextPinsAreComparedWithoutHashing() {
+        try (PinVerifier verifier = verifier(60, TimeUnit.SECONDS)) {
+            assertThat(verifier.verify(CARD, "1234", "1234")).isTrue();
+            assertThat(verifier.verify(CARD, "4321", "1234")).isFalse();
+            assertThat(verifier.getHashVerifications()).isZero();
+        }
+    }
+
+    @Test
+    void successfulVerificationsAreRememberedUntilTheyExpire() throws InterruptedException {
+        try (PinVerifier verifier = verifier(300, TimeUnit.MILLISECONDS)) {
+            String hash = verifier.hash("1234");
+
+            assertThat(verifier.verify(CARD, "1234", hash)).isTrue();
+            assertThat(verifier.verify(CARD, "1234", hash)).isTrue();
+            assertThat(verifier.getHashVerifications()).isEqualTo(1);
+            assertThat(verifier.getSessionHits()).isEqualTo(1);
+
+            // A wrong PIN is never answered from the session
+            assertThat(verifier.verify(CARD, "4321", hash)).isFalse();
+            assertThat(verifier.getHashVerifications()).isEqualTo(2);
+
+            Thread.sleep(400);
+            assertThat(verifier.verify(CARD, "1234", hash)).isTrue();
+            assertThat(verifier.getHashVerifications()).isEqualTo(3);
+            assertThat(verifier.getSessionHits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void aChangedStoredHashIsVerifiedAgain() {
+        try (PinVerifier verifier = verifier(60, TimeUnit.SECONDS)) {
+            assertThat(verifier.verify(CARD, "1234", verifier.hash("1234"))).isTrue();
+            assertThat(verifier.verify(CARD, "1234", verifier.hash("1234"))).isTrue();
+
+            assertThat(verifier.getHashVerifications()).isEqualTo(2);
+            assertThat(verifier.getSessionHits()).isZero();
+        }
+    }
+
+    @Test
+    void plaintextPinsAreMigratedToHashes() {
+        InMemoryAccountStore store = new InMemoryAccountStore();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            accounts.add(new Account(CardGenerator.cardNumberOf(i + 1), String.format("%04d", i % 10_000), 100));
+        }
+        store.insertAccounts(accounts);
+
+        try (PinVerifier verifier = verifier(60, TimeUnit.SECONDS);
+             BankingSystem system = new BankingSystem(store, 16, verifier)) {
+            assertThat(system.migratePins()).isEqualTo(2500);
+            assertThat(system.migratePins()).isZero();
+
+            assertThat(store.getAccountsWithPlainPins("", 10)).isEmpty();
+            String stored = store.getAccount(CARD).orElseThrow().getPin();
+            assertThat(stored).startsWith("pbkdf2-sha256$");
+            assertThat(system.login(CARD, "0000").getNumber()).isEqualTo(CARD);
+            assertThatThrownBy(() -> system.login(CARD, "0001")).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void closingTheSystemOnlyStopsAVerifierItCreated() {
+        InMemoryAccountStore store = new InMemoryAccountStore();
+        try (PinVerifier verifier = verifier(60, TimeUnit.SECONDS)) {
+            new BankingSystem(store, 16, verifier).close();
+            assertThat(verifier.verify(CARD, "1234", verifier.hash("1234"))).isTrue();
+        }
+
+        BankingSystem owning = new BankingSystem(store, 16);
+        owning.close();
+        assertThatThrownBy(owning::createAccount).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    /**
+     * Creates a verifier with a cheap hasher, so the tests do not spend their time hashing.
+     */
+    private static PinVerifier verifier(long sessionTtl, TimeUnit unit) {
+        return new PinVerifier(new Pbkdf2PinHasher(1), 1, sessionTtl, unit);
+    }
+}
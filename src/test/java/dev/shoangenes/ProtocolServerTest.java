@@ -0,0 +1,127 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class ProtocolServerTest {
+    private static final int LINE_LENGTH = 1000;
+    private static final int LINES = 50_000;
+
+    /**
+     * A banking system that cannot issue accounts.
+     */
+    private static BankingSystem failingBank() {
+        return new BankingSystem(new InMemoryAccountStore()) {
+            @Override
+            public Account createAccount() {
+                throw new IllegalStateException("No account numbers left to issue.");
+            }
+        };
+    }
+
+    @Test
+    void unexpectedFailuresAreAnsweredWithAnError() {
+        BankProtocol protocol = new BankProtocol(failingBank());
+
+        assertThat(protocol.handle("CREATE")).isEqualTo("ERR Request failed.");
+    }
+
+    @Test
+    void connectionStaysUsableAfterAFailedRequest() throws IOException {
+        try (ProtocolServer server = start(failingBank());
+             Socket socket = connect(server)) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            BufferedReader in = reader(socket);
+
+            out.print("CREATE\nCREATE\nNOP\n");
+            out.flush();
+
+            assertThat(in.readLine()).isEqualTo("ERR Request failed.");
+            assertThat(in.readLine()).isEqualTo("ERR Request failed.");
+            assertThat(in.readLine()).isEqualTo("ERR Unknown command.");
+        }
+    }
+
+    @Test
+    void clientIsHeldBackWhileItsRequestsAreQueued() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        BankingSystem stalledBank = new BankingSystem(new InMemoryAccountStore()) {
+            @Override
+            public Account login(String cardNumber, String pin, String source) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalArgumentException("Wrong card number or PIN!");
+            }
+        };
+        String request = "LOGIN 4000001234567899 ";
+        byte[] line = (request + "x".repeat(LINE_LENGTH - request.length() - 1) + "\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        try (ProtocolServer server = start(stalledBank);
+             Socket socket = connect(server)) {
+            AtomicLong sent = new AtomicLong();
+            Thread writer = new Thread(() -> {
+                try {
+                    OutputStream out = socket.getOutputStream();
+                    for (int i = 0; i < LINES; i++) {
+                        out.write(line);
+                        sent.incrementAndGet();
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writer.start();
+
+            // Wait until the writer stalls or finishes
+            long last = -1;
+            while (writer.isAlive() && sent.get() != last) {
+                last = sent.get();
+                Thread.sleep(500);
+            }
+            assertThat(writer.isAlive()).as("writer blocked by the server").isTrue();
+            assertThat(sent.get()).isLessThan(LINES);
+
+            gate.countDown();
+            BufferedReader in = reader(socket);
+            for (int i = 0; i < LINES; i++) {
+                assertThat(in.readLine()).isEqualTo("ERR Wrong card number or PIN!");
+            }
+            writer.join(10_000);
+            assertThat(writer.isAlive()).isFalse();
+        } finally {
+            gate.countDown();
+        }
+    }
+
+    private static ProtocolServer start(BankingSystem bank) {
+        ProtocolServer server = new ProtocolServer(bank, new InetSocketAddress("127.0.0.1", 0), 2);
+        server.start();
+        return server;
+    }
+
+    private static Socket connect(ProtocolServer server) throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(30_000);
+        return socket;
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,159 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SettlementJobTest {
+    private static final int ACCOUNTS = 1_000;
+    private static final int HOT_ACCOUNTS = 10;
+    // More than one window of the job
+    private static final int ROWS = 80_000;
+    private static final long OPENING_BALANCE = 5_000;
+
+    @TempDir
+    Path dir;
+
+    private Path input;
+    private InMemoryAccountStore expected;
+    private long[] expectedCounts;
+    private List<String> expectedRejects;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        input = dir.resolve("transfers.csv");
+        writeSyntheticFile(input);
+
+        // Applies the rows one by one in file order, as the job must appear to
+        expected = withAccounts(new InMemoryAccountStore());
+        expectedCounts = new long[4];
+        expectedRejects = new ArrayList<>();
+        for (String line : Files.readAllLines(input)) {
+            if (line.isBlank()) continue;
+            String[] fields = line.split(",");
+            long amount = fields.length == 3 ? parseAmount(fields[2]) : -1;
+            if (fields.length != 3 || fields[0].equals(fields[1]) || amount <= 0
+                    || !LuhnValidator.validate(fields[0]) || !LuhnValidator.validate(fields[1])) {
+                expectedCounts[1]++;
+                expectedRejects.add(line + "\tINVALID");
+                continue;
+            }
+            TransferResult result = expected.transferAll(List.of(new Transfer(fields[0], fields[1], amount))).get(0);
+            switch (result.status()) {
+                case APPLIED -> expectedCounts[0]++;
+                case UNKNOWN_ACCOUNT -> {
+                    expectedCounts[2]++;
+                    expectedRejects.add(line + "\tUNKNOWN");
+                }
+                case INSUFFICIENT_FUNDS -> {
+                    expectedCounts[3]++;
+                    expectedRejects.add(line + "\tINSUFFICIENT_FUNDS");
+                }
+            }
+        }
+        assertThat(expectedCounts).doesNotContain(0);
+    }
+
+    @Test
+    void parallelSettlementMatchesFileOrder() throws IOException {
+        InMemoryAccountStore store = withAccounts(new InMemoryAccountStore());
+        Path rejects = dir.resolve("rejects.txt");
+
+        SettlementJob.Report report = new SettlementJob(store, 4, 512).settle(input, rejects);
+
+        assertReport(report);
+        assertThat(Files.readAllLines(rejects)).isEqualTo(expectedRejects);
+        assertSameBalances(store);
+    }
+
+    @Test
+    void sequentialSettlementIntoSqliteMatchesFileOrder() throws IOException {
+        DatabaseManager db = withAccounts(new DatabaseManager("jdbc:sqlite:" + dir.resolve("cards.s3db"), 2));
+        try {
+            Path rejects = dir.resolve("rejects.txt");
+
+            SettlementJob.Report report = new SettlementJob(db, 10_000).settle(input, rejects);
+
+            assertReport(report);
+            assertThat(Files.readAllLines(rejects)).isEqualTo(expectedRejects);
+            assertSameBalances(db);
+            assertThat(db.verifyBalances()).isEmpty();
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    private void assertReport(SettlementJob.Report report) {
+        assertThat(new long[]{report.applied(), report.invalid(), report.unknown(), report.insufficient()})
+                .containsExactly(expectedCounts);
+        assertThat(report.opsPerSecond()).isPositive();
+    }
+
+    private void assertSameBalances(AccountStore store) {
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            long balance = store.getAccount(card(i)).orElseThrow().getBalance();
+            assertThat(balance).as("balance of account %d", i)
+                    .isEqualTo(expected.getAccount(card(i)).orElseThrow().getBalance());
+            total += balance;
+        }
+        assertThat(total).isEqualTo(ACCOUNTS * OPENING_BALANCE);
+    }
+
+    /**
+     * Writes transfers between random accounts, a fifth of them touching one of a few hot accounts,
+     * mixed with malformed rows, rows naming unknown cards, and blank lines.
+     */
+    private static void writeSyntheticFile(Path path) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            for (int i = 0; i < ROWS; i++) {
+                int from = random.nextInt(10) < 2 ? random.nextInt(HOT_ACCOUNTS) : random.nextInt(ACCOUNTS);
+                int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                String amount = Money.format(1 + random.nextInt(8_000));
+                String line = switch (random.nextInt(200)) {
+                    case 0 -> "not a transfer";
+                    case 1 -> card(from) + "," + card(from) + ",1.00";
+                    case 2 -> card(from) + "," + card(to) + ",-3";
+                    case 3 -> card(from).substring(0, 15) + "0," + card(to) + "," + amount;
+                    case 4 -> card(ACCOUNTS + from) + "," + card(to) + "," + amount;
+                    case 5 -> "";
+                    default -> card(from) + "," + card(to) + "," + amount;
+                };
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+
+    private static <S extends AccountStore> S withAccounts(S store) {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account(card(i), "1234", OPENING_BALANCE));
+        }
+        store.insertAccounts(accounts);
+        return store;
+    }
+
+    private static long parseAmount(String text) {
+        try {
+            return Money.parse(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String card(int index) {
+        return CardGenerator.cardNumberOf(index + 1);
+    }
+}
@@ -0,0 +1,75 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StorageTelemetryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void slowStatementsGoToTheListener() {
+        DatabaseManager db = new DatabaseManager("jdbc:sqlite:" + dir.resolve("cards.s3db"), 2);
+        try {
+            StorageTelemetry telemetry = db.getTelemetry();
+            Queue<String> slow = new ConcurrentLinkedQueue<>();
+            telemetry.setSlowStatementListener((sql, nanos) -> slow.add(sql));
+            telemetry.setSlowStatementThreshold(0, TimeUnit.NANOSECONDS);
+
+            db.insertAccounts(List.of(new Account(CardGenerator.cardNumberOf(1), "1234", 100)));
+            db.getAccount(CardGenerator.cardNumberOf(1));
+
+            assertThat(slow).isNotEmpty();
+            assertThat(telemetry.getSlowStatements()).isEqualTo(slow.size());
+            assertThat(slow).noneMatch(sql -> sql.contains(CardGenerator.cardNumberOf(1)));
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void aFailingListenerDoesNotLeaveATransactionOpen() {
+        DatabaseManager db = new DatabaseManager("jdbc:sqlite:" + dir.resolve("cards.s3db"), 1);
+        try {
+            String card = CardGenerator.cardNumberOf(1);
+            db.insertAccounts(List.of(new Account(card, "1234", 100)));
+            StorageTelemetry telemetry = db.getTelemetry();
+            telemetry.setSlowStatementListener((sql, nanos) -> {
+                throw new IllegalStateException("Listener failed.");
+            });
+            telemetry.setSlowStatementThreshold(0, TimeUnit.NANOSECONDS);
+
+            assertThatThrownBy(() -> db.deposit(card, 50)).isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> db.insertAccounts(List.of(new Account(CardGenerator.cardNumberOf(2), "1234", 100))))
+                    .isInstanceOf(IllegalStateException.class);
+
+            telemetry.setSlowStatementListener((sql, nanos) -> { });
+            assertThat(db.deposit(card, 25)).hasValue(125);
+            assertThat(db.getAccount(CardGenerator.cardNumberOf(2))).isEmpty();
+            assertThat(db.verifyBalances()).isEmpty();
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void slowStatementsAreLoggedOnOneLineWithoutParameters() {
+        String sql = """
+                SELECT number, pin
+                  FROM cards
+                 WHERE number = ? AND pin = ?""";
+
+        assertThat(StorageTelemetry.describe(sql, TimeUnit.MILLISECONDS.toNanos(250)))
+                .isEqualTo("Slow statement (250 ms, 2 parameters redacted): "
+                        + "SELECT number, pin FROM cards WHERE number = ? AND pin = ?");
+    }
+}
@@ -0,0 +1,192 @@
+package dev.shoangenes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransferEngineTest {
+    private static final int ACCOUNTS = 50;
+    private static final int TRANSFERS = 2_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void journaledTransfersAreReplayedAfterACrash() throws Exception {
+        Path crashDir = Files.createDirectory(dir.resolve("crash"));
+        DatabaseManager db = openWithAccounts(dir);
+        // The database file as a crash would leave it: without anything committed since
+        db.disconnect();
+        Files.copy(dir.resolve("cards.s3db"), crashDir.resolve("cards.s3db"));
+
+        db = new DatabaseManager(url(dir), 4);
+        long[] expected = new long[ACCOUNTS];
+        long lastGroup;
+        try (TransferEngine engine = new TransferEngine(db, dir.resolve("transfers.journal"), 64, 0,
+                TimeUnit.MICROSECONDS)) {
+            List<CompletableFuture<Long>> results = new ArrayList<>();
+            Random random = new Random(7);
+            for (int i = 0; i < TRANSFERS; i++) {
+                int from = random.nextInt(ACCOUNTS);
+                int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                results.add(engine.submit(card(from), card(to), 1 + random.nextInt(3_000)));
+            }
+            for (CompletableFuture<Long> result : results) {
+                result.handle((balance, failure) -> null).join();
+            }
+            // Every acknowledged group is in the journal; a crash tears the record being written
+            Files.copy(dir.resolve("transfers.journal"), crashDir.resolve("transfers.journal"));
+            Files.write(crashDir.resolve("transfers.journal"), new byte[]{0, 0, 0, 40, 1, 2, 3},
+                    StandardOpenOption.APPEND);
+            for (int i = 0; i < ACCOUNTS; i++) {
+                expected[i] = balanceOf(db, i);
+            }
+            lastGroup = db.getLastAppliedTransferGroup();
+        } finally {
+            db.disconnect();
+        }
+
+        DatabaseManager recovered = new DatabaseManager(url(crashDir), 4);
+        try (TransferEngine engine = new TransferEngine(recovered, crashDir.resolve("transfers.journal"))) {
+            assertThat(recovered.getLastAppliedTransferGroup()).isEqualTo(lastGroup);
+            for (int i = 0; i < ACCOUNTS; i++) {
+                assertThat(balanceOf(recovered, i)).as("balance of account %d", i).isEqualTo(expected[i]);
+            }
+            assertThat(recovered.verifyBalances()).isEmpty();
+            assertThat(engine.transfer(card(0), card(1), 1)).isEqualTo(expected[0] - 1);
+        } finally {
+            recovered.disconnect();
+        }
+    }
+
+    @Test
+    void submitsRacingCloseAllComplete() throws Exception {
+        DatabaseManager db = openWithAccounts(dir);
+        try {
+            for (int round = 0; round < 20; round++) {
+                TransferEngine engine = new TransferEngine(db, dir.resolve("transfers.journal"));
+                List<CompletableFuture<Long>> results = new ArrayList<>();
+                Thread submitter = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        synchronized (results) {
+                            results.add(engine.submit(card(i % ACCOUNTS), card((i + 1) % ACCOUNTS), 1));
+                        }
+                    }
+                });
+                submitter.start();
+                engine.close();
+                submitter.join();
+
+                synchronized (results) {
+                    for (CompletableFuture<Long> result : results) {
+                        result.handle((balance, failure) -> null).get(10, TimeUnit.SECONDS);
+                    }
+                }
+            }
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void journalIsKeptWhileAReaderHoldsTheCheckpointBack() throws Exception {
+        DatabaseManager db = openWithAccounts(dir);
+        Path journal = dir.resolve("transfers.journal");
+        try (Connection reader = DriverManager.getConnection(url(dir))) {
+            TransferEngine engine = new TransferEngine(db, journal);
+            reader.setAutoCommit(false);
+            try (Statement stmt = reader.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM cards")) {
+                rs.next();
+            }
+            engine.transfer(card(0), card(1), 100);
+            engine.close();
+
+            assertThat(Files.size(journal)).isPositive();
+            reader.rollback();
+        }
+
+        try (TransferEngine engine = new TransferEngine(db, journal)) {
+            assertThat(balanceOf(db, 0)).isEqualTo(9_900);
+            assertThat(Files.size(journal)).isZero();
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void aFailedGroupDoesNotStopTheCommitter() throws Exception {
+        openWithAccounts(dir).disconnect();
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        DatabaseManager db = new DatabaseManager(url(dir), 4) {
+            @Override
+            public List<TransferResult> applyTransferGroup(long group, List<Transfer> transfers) {
+                List<TransferResult> results = super.applyTransferGroup(group, transfers);
+                if (!failNext.getAndSet(false)) {
+                    return results;
+                }
+                // Fails once the group is applied, while the committer hands out its results
+                return new AbstractList<>() {
+                    @Override
+                    public TransferResult get(int index) {
+                        throw new IllegalStateException("Simulated failure.");
+                    }
+
+                    @Override
+                    public int size() {
+                        return results.size();
+                    }
+                };
+            }
+        };
+        try (TransferEngine engine = new TransferEngine(db, dir.resolve("transfers.journal"))) {
+            assertThat(engine.submit(card(0), card(1), 100)).failsWithin(10, TimeUnit.SECONDS)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseInstanceOf(IllegalStateException.class);
+
+            assertThat(engine.submit(card(0), card(1), 100)).succeedsWithin(10, TimeUnit.SECONDS)
+                    .isEqualTo(9_800L);
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    private DatabaseManager openWithAccounts(Path directory) {
+        DatabaseManager db = new DatabaseManager(url(directory), 4);
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account(card(i), "1234", 10_000));
+        }
+        db.insertAccounts(accounts);
+        return db;
+    }
+
+    private static String url(Path directory) {
+        return "jdbc:sqlite:" + directory.resolve("cards.s3db");
+    }
+
+    private static String card(int index) {
+        return CardGenerator.cardNumberOf(index + 1);
+    }
+
+    private static long balanceOf(DatabaseManager db, int index) {
+        return db.getAccount(card(index)).orElseThrow().getBalance();
+    }
+}